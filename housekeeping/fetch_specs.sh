@@ -0,0 +1,5 @@
+#!/bin/sh -v
+# Download the OpenAPI specifications too big for the repository into target/specs. They are used by the benchmarks.
+cd $(dirname $0)/..
+mkdir -p target/specs
+curl -fsSL -o target/specs/api.github.com.json https://raw.githubusercontent.com/github/rest-api-description/main/descriptions/api.github.com/api.github.com.json
@@ -0,0 +1,9 @@
+#!/bin/sh -v
+# Run JMH benchmarks with the gc profiler. Compare target/jmh-result.json with housekeeping/benchmark-baseline.json.
+# Arguments are passed to JMH. For example: ./run_benchmarks.sh RequestBuildingBenchmark -prof gc
+cd $(dirname $0)/..
+if [ $# -eq 0 ]; then
+  mvn -Pbenchmark test-compile exec:exec
+else
+  mvn -Pbenchmark test-compile exec:exec -Djmh.args="$* -rf json -rff target/jmh-result.json"
+fi
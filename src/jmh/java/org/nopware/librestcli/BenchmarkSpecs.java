@@ -0,0 +1,70 @@
+package org.nopware.librestcli;
+
+import com.google.common.io.Resources;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * OpenAPI specifications for the benchmarks. They are the test resources, or the files in {@link #DOWNLOADED_SPECS}.
+ */
+class BenchmarkSpecs {
+    /**
+     * Path and method used by the benchmarks of argument parsing and request building. It has path, query and header parameters.
+     */
+    static final String[] ISSUES_ARGS = {
+            "/repos/{owner}/{repo}/issues", "get",
+            "--owner=naoshi-higuchi", "--repo=librestcli",
+            "--state=open", "--labels=bug,performance", "--sort=updated", "--direction=desc", "--per_page=100", "--page=3"
+    };
+
+    /**
+     * Directory of the specifications too big for the repository, like {@literal api.github.com.json}. Download them by housekeeping/fetch_specs.sh.
+     */
+    static final Path DOWNLOADED_SPECS = Paths.get("target", "specs");
+
+    private BenchmarkSpecs() {
+    }
+
+    static String load(String resourceName) {
+        try {
+            return Files.readString(file(resourceName), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return Path of the specification file. A test resource is copied to a temporary file if it is in a jar.
+     */
+    static Path file(String resourceName) throws IOException {
+        Path downloaded = DOWNLOADED_SPECS.resolve(resourceName);
+        if (Files.isRegularFile(downloaded)) {
+            return downloaded;
+        }
+        URL resource = Thread.currentThread().getContextClassLoader().getResource(resourceName);
+        if (resource == null) {
+            throw new IOException(resourceName + " is neither a test resource nor in " + DOWNLOADED_SPECS.toAbsolutePath() + ". Run housekeeping/fetch_specs.sh.");
+        }
+        if (resource.getProtocol().equals("file")) {
+            return Paths.get(URI.create(resource.toString()));
+        }
+        Path copy = Files.createTempFile("librestcli-benchmark", resourceName);
+        copy.toFile().deleteOnExit();
+        Files.write(copy, Resources.toByteArray(resource));
+        return copy;
+    }
+
+    /**
+     * GHES specifications have the server URL with variables like {@literal {protocol}://{hostname}/api/v3}. RestCli does not substitute them.
+     */
+    static String loadWithConcreteServer(String resourceName) {
+        return load(resourceName).replace("{protocol}://{hostname}", "https://ghe.example.com");
+    }
+}
@@ -0,0 +1,51 @@
+package org.nopware.librestcli;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import picocli.CommandLine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@code new CommandLine(restCliSpec.commandSpec)} in the constructor of {@link RestCli}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class CommandLineBenchmark {
+    @Param({"ghes-2.18.yaml", "ghes-3.3.yaml"})
+    public String specName;
+
+    @Param({"false", "true"})
+    public boolean lazy;
+
+    private RestCli.RestCliSpec restCliSpec;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        restCliSpec = new RestCli.RestCliSpec.Builder("ghes", BenchmarkSpecs.load(specName)).lazy(lazy).build();
+    }
+
+    @Benchmark
+    public CommandLine newCommandLine() {
+        return new CommandLine(restCliSpec.commandSpec());
+    }
+
+    @Benchmark
+    public RestCli buildRestCli() {
+        return new RestCli.Builder(restCliSpec).build();
+    }
+}
@@ -0,0 +1,64 @@
+package org.nopware.librestcli;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of building the whole command tree sequentially and in parallel by {@link RestCli.RestCliSpec.Builder#parallel(boolean)}.
+ * <p>
+ *     The specification is loaded from the {@link SpecCache}, so parsing it is not measured.
+ *     Run {@literal housekeeping/fetch_specs.sh} before benchmarking {@literal api.github.com.json}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class CommandTreeBenchmark {
+    @Param({"api.github.com.json", "ghes-3.3.yaml"})
+    public String specName;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private String spec;
+    private Path cacheDirectory;
+    private SpecCache specCache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        spec = BenchmarkSpecs.load(specName);
+        cacheDirectory = Files.createTempDirectory("librestcli-benchmark");
+        specCache = SpecCache.of(cacheDirectory);
+        new RestCli.RestCliSpec.Builder("github", spec).specCache(specCache).lazy(true).build(); // Store the snapshot.
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(cacheDirectory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public RestCli.RestCliSpec buildCommandTree() {
+        return new RestCli.RestCliSpec.Builder("github", spec).specCache(specCache).parallel(parallel).build();
+    }
+}
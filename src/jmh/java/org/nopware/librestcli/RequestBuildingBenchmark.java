@@ -0,0 +1,66 @@
+package org.nopware.librestcli;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import picocli.CommandLine;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the stages from a typical argv to the HTTP request: picocli parsing, URI building and the whole preparation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class RequestBuildingBenchmark {
+    private CommandLine commandLine;
+    private RestCli restCli;
+    private OperationPlan plan;
+    private CommandLine.ParseResult methodCommand;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String spec = BenchmarkSpecs.loadWithConcreteServer("ghes-3.3.yaml");
+        // A CommandSpec is bound to the last CommandLine created from it. So RestCli has its own RestCliSpec.
+        restCli = new RestCli.Builder(new RestCli.RestCliSpec.Builder("ghes", spec).build()).build();
+        RestCli.RestCliSpec restCliSpec = new RestCli.RestCliSpec.Builder("ghes", spec).build();
+        commandLine = new CommandLine(restCliSpec.commandSpec());
+
+        plan = restCliSpec.plan(BenchmarkSpecs.ISSUES_ARGS[0], BenchmarkSpecs.ISSUES_ARGS[1]);
+        List<CommandLine.ParseResult> pathCommands = commandLine.parseArgs(BenchmarkSpecs.ISSUES_ARGS).subcommands();
+        methodCommand = pathCommands.get(0).subcommands().get(0);
+    }
+
+    @Benchmark
+    public CommandLine.ParseResult parseArgs() {
+        return commandLine.parseArgs(BenchmarkSpecs.ISSUES_ARGS);
+    }
+
+    /**
+     * The option values of the last {@link #parseArgs()} are used. All benchmarks of this class have the same arguments.
+     */
+    @Benchmark
+    public URI buildUri() {
+        return plan.uri(methodCommand, null);
+    }
+
+    @Benchmark
+    public RestCli.PreparedRequest prepareRequest() {
+        return restCli.prepareRequest(BenchmarkSpecs.ISSUES_ARGS, HttpRequest.BodyPublishers.noBody());
+    }
+}
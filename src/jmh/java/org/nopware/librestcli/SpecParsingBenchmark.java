@@ -0,0 +1,73 @@
+package org.nopware.librestcli;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link RestCli#createRestCliSpec(String, String)}: parsing the OpenAPI specification and building the command tree.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class SpecParsingBenchmark {
+    @Param({"ghes-2.18.yaml", "ghes-2.19.yaml", "ghes-3.3.yaml"})
+    public String specName;
+
+    private String spec;
+    private Path cacheDirectory;
+    private SpecCache specCache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        spec = BenchmarkSpecs.load(specName);
+        cacheDirectory = Files.createTempDirectory("librestcli-benchmark");
+        specCache = SpecCache.of(cacheDirectory);
+        new RestCli.RestCliSpec.Builder("ghes", spec).specCache(specCache).build(); // Store the snapshot.
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(cacheDirectory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public RestCli.RestCliSpec createRestCliSpec() {
+        return RestCli.createRestCliSpec("ghes", spec);
+    }
+
+    @Benchmark
+    public RestCli.RestCliSpec createLazyRestCliSpec() {
+        return new RestCli.RestCliSpec.Builder("ghes", spec).lazy(true).build();
+    }
+
+    @Benchmark
+    public RestCli.RestCliSpec createRestCliSpecFromSnapshot() {
+        return new RestCli.RestCliSpec.Builder("ghes", spec).specCache(specCache).build();
+    }
+
+    @Benchmark
+    public RestCli.RestCliSpec createLazyRestCliSpecFromSnapshot() {
+        return new RestCli.RestCliSpec.Builder("ghes", spec).specCache(specCache).lazy(true).build();
+    }
+}
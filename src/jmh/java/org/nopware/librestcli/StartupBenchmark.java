@@ -0,0 +1,131 @@
+package org.nopware.librestcli;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Benchmark of the startup of a CLI: a new JVM runs {@link RestCliLauncher} to print the usage help of an operation.
+ * <p>
+ *     With {@code cds}, the JVM maps the AppCDS archive created by the training run of {@link RestCliLauncher}.
+ *     With {@code specCache}, the compiled specification is loaded from the {@link SpecCache}.
+ *     Run {@literal housekeeping/fetch_specs.sh} before benchmarking {@literal api.github.com.json}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    @Param({"ghes-2.18.yaml", "ghes-3.3.yaml", "api.github.com.json"})
+    public String specName;
+
+    @Param({"false", "true"})
+    public boolean cds;
+
+    @Param({"false", "true"})
+    public boolean specCache;
+
+    private Path directory;
+    private List<String> command;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        directory = Files.createTempDirectory("librestcli-startup");
+        Path specFile = BenchmarkSpecs.file(specName);
+        Path java = Paths.get(System.getProperty("java.home"), "bin", "java");
+        String classPath = jarDirectories(System.getProperty("java.class.path"));
+
+        List<String> jvmArgs = new ArrayList<>(List.of(java.toString(), "--enable-preview", "-Xshare:auto"));
+        if (cds) {
+            jvmArgs.add("-XX:+AutoCreateSharedArchive");
+            jvmArgs.add("-XX:SharedArchiveFile=" + directory.resolve("librestcli.jsa"));
+        }
+        jvmArgs.addAll(List.of("-cp", classPath, RestCliLauncher.class.getName()));
+        List<String> launcherArgs = specCache ? List.of("--spec-cache") : List.of();
+
+        command = new ArrayList<>(jvmArgs);
+        command.addAll(launcherArgs);
+        command.addAll(List.of("bench", specFile.toString(), BenchmarkSpecs.ISSUES_ARGS[0], BenchmarkSpecs.ISSUES_ARGS[1], "--help"));
+
+        if (cds) {
+            List<String> training = new ArrayList<>(jvmArgs);
+            training.addAll(launcherArgs);
+            training.addAll(List.of("--train", "bench", specFile.toString()));
+            run(training);
+        } else if (specCache) {
+            run(command); // Store the snapshot.
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int startAndPrintUsage() throws IOException, InterruptedException {
+        return run(command);
+    }
+
+    /**
+     * Replace the class directories like target/classes with jars. Classes in directories are not archived.
+     */
+    private String jarDirectories(String classPath) throws IOException {
+        List<String> entries = new ArrayList<>();
+        for (String entry : classPath.split(File.pathSeparator)) {
+            Path path = Paths.get(entry);
+            if (!Files.isDirectory(path)) {
+                entries.add(entry);
+                continue;
+            }
+            Path jar = directory.resolve("classes-" + entries.size() + ".jar");
+            try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(jar)); var files = Files.walk(path)) {
+                for (Path file : files.filter(Files::isRegularFile).toList()) {
+                    output.putNextEntry(new JarEntry(path.relativize(file).toString().replace(File.separatorChar, '/')));
+                    Files.copy(file, output);
+                    output.closeEntry();
+                }
+            }
+            entries.add(jar.toString());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private int run(List<String> command) throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+        processBuilder.environment().put("XDG_CACHE_HOME", directory.resolve("cache").toString()); // Isolate the spec cache.
+        Process process = processBuilder.start();
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IllegalStateException("Exit code " + exitCode + ": " + String.join(" ", command));
+        }
+        return exitCode;
+    }
+}
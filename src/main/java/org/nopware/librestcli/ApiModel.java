@@ -0,0 +1,304 @@
+package org.nopware.librestcli;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.media.MediaType;
+import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.oas.models.parameters.Parameter;
+import io.swagger.v3.oas.models.parameters.RequestBody;
+import io.swagger.v3.oas.models.servers.Server;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The part of OpenAPI specification which RestCli needs.
+ * <p>
+ *     It is created from {@link OpenAPI} object or from a snapshot written by {@link SpecSnapshot}.
+ *     Iteration order of the maps is the order in the OpenAPI specification.
+ * <p>
+ *     It is a compact table: schemas, responses and examples are not kept, equal strings and parameters are shared, and the maps and lists are immutable arrays.
+ *     So the {@link OpenAPI} object can be released after RestCliSpec is created.
+ *
+ * @param version Version of the API. It is the value of the field "version" in the OpenAPI specification.
+ * @param summary Summary of the API. Nullable.
+ * @param servers Servers in the order of the specification.
+ * @param paths   Map path -> path model. The path includes leading slash '/'.
+ */
+record ApiModel(String version, String summary, List<ServerModel> servers, Map<String, PathModel> paths) {
+    /**
+     * @param url       URL template of the server. For example, {@literal https://{region}.api.example.com/v1}.
+     * @param variables Map variable name -> default value.
+     */
+    record ServerModel(String url, Map<String, String> variables) {
+        /**
+         * @param overrides Map variable name -> value overriding the default. Variables which the server does not declare are ignored.
+         * @return URL whose variables are substituted. Undeclared variables are left as they are.
+         */
+        String resolve(Map<String, String> overrides) {
+            if (url == null || url.indexOf('{') < 0) {
+                return url;
+            }
+            StringBuilder resolved = new StringBuilder(url.length());
+            int begin = 0;
+            for (int open = url.indexOf('{'); open >= 0; open = url.indexOf('{', begin)) {
+                int close = url.indexOf('}', open);
+                if (close < 0) {
+                    break;
+                }
+                String name = url.substring(open + 1, close);
+                String value = variables.containsKey(name) ? overrides.getOrDefault(name, variables.get(name)) : null;
+                resolved.append(url, begin, open).append(value != null ? value : url.substring(open, close + 1));
+                begin = close + 1;
+            }
+            return resolved.append(url, begin, url.length()).toString();
+        }
+
+        ServerModel intern(Interner<Object> interner) {
+            Map<String, String> internedVariables = new LinkedHashMap<>();
+            variables.forEach((name, value) -> internedVariables.put(ApiModel.intern(interner, name), ApiModel.intern(interner, value)));
+            return ApiModel.intern(interner, new ServerModel(ApiModel.intern(interner, url), ImmutableMap.copyOf(internedVariables)));
+        }
+    }
+
+    /**
+     * @param path       Path template. For example, {@literal /repos/{owner}/{repo}/issues}.
+     * @param summary    Nullable.
+     * @param operations Map method -> operation model. Method is one of get, head, post, put, delete, options, trace, patch.
+     */
+    record PathModel(String path, String summary, Map<String, OperationModel> operations) {
+        PathModel intern(Interner<Object> interner) {
+            Map<String, OperationModel> internedOperations = new LinkedHashMap<>();
+            operations.forEach((method, operation) -> internedOperations.put(ApiModel.intern(interner, method), operation.intern(interner)));
+            return ApiModel.intern(interner, new PathModel(ApiModel.intern(interner, path), ApiModel.intern(interner, summary), ImmutableMap.copyOf(internedOperations)));
+        }
+    }
+
+    /**
+     * @param method      It is one of get, head, post, put, delete, options, trace, patch.
+     * @param summary     Nullable.
+     * @param parameters  Parameters of path-item and operation. A parameter for operation overrides a parameter for path-item.
+     * @param requestBody Nullable.
+     */
+    record OperationModel(String method, String summary, List<ParameterModel> parameters, RequestBodyModel requestBody) {
+        OperationModel(String method, String summary, List<ParameterModel> parameters) {
+            this(method, summary, parameters, null);
+        }
+
+        OperationModel intern(Interner<Object> interner) {
+            List<ParameterModel> internedParameters = parameters.stream().map(parameter -> parameter.intern(interner)).toList();
+            return ApiModel.intern(interner, new OperationModel(ApiModel.intern(interner, method), ApiModel.intern(interner, summary),
+                    ApiModel.intern(interner, internedParameters), requestBody == null ? null : requestBody.intern(interner)));
+        }
+    }
+
+    /**
+     * @param mediaTypes Media types of the request body. For example, {@literal application/json} and {@literal multipart/form-data}.
+     * @param parts      Properties of the {@literal multipart/form-data} schema. Empty if the media type is not declared.
+     */
+    record RequestBodyModel(List<String> mediaTypes, List<PartModel> parts) {
+        static final String MULTIPART_FORM_DATA = "multipart/form-data";
+        static final String OCTET_STREAM = "application/octet-stream";
+
+        boolean accepts(String mediaType) {
+            return mediaTypes.contains(mediaType);
+        }
+
+        RequestBodyModel intern(Interner<Object> interner) {
+            List<String> internedMediaTypes = mediaTypes.stream().map(mediaType -> ApiModel.intern(interner, mediaType)).toList();
+            List<PartModel> internedParts = parts.stream().map(part -> part.intern(interner)).toList();
+            return ApiModel.intern(interner, new RequestBodyModel(ApiModel.intern(interner, internedMediaTypes), ApiModel.intern(interner, internedParts)));
+        }
+    }
+
+    /**
+     * @param name        Name of the part.
+     * @param description Nullable.
+     * @param required    Whether the part is required.
+     * @param binary      Whether the part is a file, i.e. its schema is a string in binary format.
+     * @param array       Whether the part can be repeated.
+     */
+    record PartModel(String name, String description, boolean required, boolean binary, boolean array) {
+        PartModel intern(Interner<Object> interner) {
+            return ApiModel.intern(interner, new PartModel(ApiModel.intern(interner, name), ApiModel.intern(interner, description), required, binary, array));
+        }
+    }
+
+    /**
+     * @param name        Name of the parameter.
+     * @param location    One of "path", "query", "header", "cookie".
+     * @param description Nullable.
+     * @param required    Whether the parameter is required.
+     * @param type        Type of the schema. Nullable.
+     */
+    record ParameterModel(String name, String location, String description, boolean required, String type) {
+        ParameterModel intern(Interner<Object> interner) {
+            return ApiModel.intern(interner, new ParameterModel(ApiModel.intern(interner, name), ApiModel.intern(interner, location),
+                    ApiModel.intern(interner, description), required, ApiModel.intern(interner, type)));
+        }
+    }
+
+    Optional<OperationModel> operation(String path, String method) {
+        return Optional.ofNullable(paths.get(path))
+                .map(pathModel -> pathModel.operations().get(method));
+    }
+
+    /**
+     * Share the strings and the models equal to the ones of other specifications, for example other versions of the same API.
+     * <p>
+     *     Models are interned bottom-up, so a path whose operations are all equal to another specification's is one shared object.
+     *
+     * @param interner Interner shared by the specifications. Use a weak interner, so the objects of unloaded specifications are collected.
+     * @return Equal model made of the interned objects.
+     */
+    ApiModel intern(Interner<Object> interner) {
+        Map<String, PathModel> internedPaths = new LinkedHashMap<>();
+        paths.forEach((path, pathModel) -> internedPaths.put(intern(interner, path), pathModel.intern(interner)));
+        List<ServerModel> internedServers = servers.stream().map(server -> server.intern(interner)).toList();
+        return new ApiModel(intern(interner, version), intern(interner, summary), intern(interner, internedServers), ImmutableMap.copyOf(internedPaths));
+    }
+
+    /**
+     * @return Null if the value is null.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T intern(Interner<Object> interner, T value) {
+        return value == null ? null : (T) interner.intern(value);
+    }
+
+    /**
+     * @return Model whose equal strings and models are shared.
+     */
+    static ApiModel from(OpenAPI openAPI) {
+        return build(openAPI).intern(Interners.newStrongInterner()); // The interner is dropped with the duplicates.
+    }
+
+    private static ApiModel build(OpenAPI openAPI) {
+        List<ServerModel> servers = emptyListIfNull(openAPI.getServers()).stream()
+                .map(ApiModel::server)
+                .toList();
+
+        Map<String, PathModel> paths = new LinkedHashMap<>();
+        openAPI.getPaths().forEach((path, pathItem) -> {
+            Map<String, OperationModel> operations = new LinkedHashMap<>();
+            pathItem.readOperationsMap().forEach((method, operation) -> {
+                String methodName = method.toString().toLowerCase();
+                operations.put(methodName, new OperationModel(methodName, operation.getSummary(), parameters(pathItem, operation), requestBody(openAPI, operation)));
+            });
+            paths.put(path, new PathModel(path, pathItem.getSummary(), Collections.unmodifiableMap(operations)));
+        });
+
+        return new ApiModel(openAPI.getInfo().getVersion(), openAPI.getInfo().getSummary(), servers, Collections.unmodifiableMap(paths));
+    }
+
+    private static ServerModel server(Server server) {
+        Map<String, String> variables = new LinkedHashMap<>();
+        if (server.getVariables() != null) {
+            server.getVariables().forEach((name, variable) -> {
+                if (variable.getDefault() != null) { // The default is required, but be lenient.
+                    variables.put(name, variable.getDefault());
+                }
+            });
+        }
+        return new ServerModel(server.getUrl(), Collections.unmodifiableMap(variables));
+    }
+
+    private static <T> List<T> emptyListIfNull(List<T> list) {
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    private static RequestBodyModel requestBody(OpenAPI openAPI, Operation operation) {
+        RequestBody requestBody = operation.getRequestBody();
+        if (requestBody == null || requestBody.getContent() == null) {
+            return null;
+        }
+
+        List<PartModel> parts = Optional.ofNullable(requestBody.getContent().get(RequestBodyModel.MULTIPART_FORM_DATA))
+                .map(MediaType::getSchema)
+                .map(schema -> resolve(openAPI, schema))
+                .map(ApiModel::parts)
+                .orElse(List.of());
+        return new RequestBodyModel(List.copyOf(requestBody.getContent().keySet()), parts);
+    }
+
+    /**
+     * @return Parts in the order of the properties.
+     */
+    private static List<PartModel> parts(Schema<?> schema) {
+        if (schema.getProperties() == null) {
+            return List.of();
+        }
+        List<String> required = emptyListIfNull(schema.getRequired());
+        return schema.getProperties().entrySet().stream()
+                .map(property -> {
+                    Schema<?> propertySchema = property.getValue();
+                    boolean array = "array".equals(propertySchema.getType()) && propertySchema.getItems() != null;
+                    Schema<?> valueSchema = array ? propertySchema.getItems() : propertySchema;
+                    return new PartModel(property.getKey(), propertySchema.getDescription(), required.contains(property.getKey()),
+                            "binary".equals(valueSchema.getFormat()), array);
+                })
+                .toList();
+    }
+
+    /**
+     * Resolve the reference to a schema in the components.
+     */
+    private static Schema<?> resolve(OpenAPI openAPI, Schema<?> schema) {
+        String ref = schema.get$ref();
+        if (ref == null || !ref.startsWith("#/components/schemas/") || openAPI.getComponents() == null || openAPI.getComponents().getSchemas() == null) {
+            return schema;
+        }
+        Schema<?> resolved = openAPI.getComponents().getSchemas().get(ref.substring("#/components/schemas/".length()));
+        return resolved == null ? schema : resolved;
+    }
+
+    /**
+     * Merge parameters for path-item and operation.
+     * Parameter has name and location.
+     * Location is one of "path", "query", "header", "cookie". (See <a href="https://spec.openapis.org/oas/v3.1.0#parameterIn">the OpenAPI spec</a>.)
+     *
+     * @param pathItem
+     * @param operation
+     * @return Parameters ordered by name, then by location.
+     */
+    private static List<ParameterModel> parameters(PathItem pathItem, Operation operation) {
+        List<Parameter> pathItemParameters = emptyListIfNull(pathItem.getParameters());
+        List<Parameter> operationParameters = emptyListIfNull(operation.getParameters());
+
+        // name -> location -> parameter.
+        Map<String, Map<String, Parameter>> mergedParameters = new LinkedHashMap<>();
+
+        pathItemParameters.forEach(parameter -> {
+            String name = parameter.getName();
+            Map<String, Parameter> locatedParameters = mergedParameters.computeIfAbsent(name, (_name) -> new LinkedHashMap<>());
+            locatedParameters.put(parameter.getIn(), parameter);
+        });
+
+        /*
+         * A parameter for operation overrides a parameter for path-item if it has same name and location.
+         * See https://spec.openapis.org/oas/v3.1.0#fixed-fields-7
+         */
+        operationParameters.forEach(overridingParameter -> {
+            String name = overridingParameter.getName();
+            Map<String, Parameter> locatedParameters = mergedParameters.computeIfAbsent(name, (_name) -> new LinkedHashMap<>());
+            locatedParameters.put(overridingParameter.getIn(), overridingParameter);
+        });
+
+        return mergedParameters.values().stream()
+                .flatMap(locatedParameters -> locatedParameters.values().stream())
+                .map(parameter -> new ParameterModel(
+                        parameter.getName(),
+                        parameter.getIn(),
+                        parameter.getDescription(),
+                        Boolean.TRUE.equals(parameter.getRequired()),
+                        parameter.getSchema() == null ? null : parameter.getSchema().getType()))
+                .toList();
+    }
+}
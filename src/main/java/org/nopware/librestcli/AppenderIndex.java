@@ -0,0 +1,105 @@
+package org.nopware.librestcli;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.Multimap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Option and header appenders applicable to each operation.
+ * <p>
+ *     Path matchers run against a path template once, when the index is built or when the path is first used.
+ *     So a request only runs the appenders of its operation.
+ */
+final class AppenderIndex {
+    /**
+     * Appenders of an operation.
+     */
+    record Appenders(List<RestCli.OptionAppender.Appender> optionAppenders, List<RestCli.HeaderAppender.Appender> headerAppenders) {
+        static final Appenders EMPTY = new Appenders(List.of(), List.of());
+
+        /**
+         * @return Options to append. Empty if there is no option appender.
+         */
+        List<String> options() {
+            if (optionAppenders.isEmpty()) {
+                return List.of();
+            }
+            List<String> options = new ArrayList<>();
+            optionAppenders.forEach(appender -> appender.accept(options));
+            return options;
+        }
+
+        void forEachHeader(BiConsumer<String, String> consumer) {
+            if (headerAppenders.isEmpty()) {
+                return;
+            }
+            Multimap<String, String> headers = LinkedListMultimap.create();
+            headerAppenders.forEach(appender -> appender.accept(headers));
+            headers.forEach(consumer);
+        }
+    }
+
+    private final ApiModel apiModel;
+    private final List<RestCli.OptionAppender> optionAppenders;
+    private final List<RestCli.HeaderAppender> headerAppenders;
+
+    /**
+     * Map path -> method -> appenders. Operations without appenders are not in the map.
+     */
+    private final Map<String, Map<String, Appenders>> index = new ConcurrentHashMap<>();
+
+    /**
+     * @param precompute If true, all paths are indexed now. Otherwise, paths are indexed when they are first used.
+     */
+    AppenderIndex(ApiModel apiModel, List<RestCli.OptionAppender> optionAppenders, List<RestCli.HeaderAppender> headerAppenders, boolean precompute) {
+        this.apiModel = apiModel;
+        this.optionAppenders = List.copyOf(optionAppenders);
+        this.headerAppenders = List.copyOf(headerAppenders);
+        if (precompute && !isEmpty()) {
+            apiModel.paths().keySet().forEach(path -> index.computeIfAbsent(path, this::compute));
+        }
+    }
+
+    boolean isEmpty() {
+        return optionAppenders.isEmpty() && headerAppenders.isEmpty();
+    }
+
+    boolean hasOptionAppenders() {
+        return !optionAppenders.isEmpty();
+    }
+
+    /**
+     * @param path   Path template.
+     * @param method Method.
+     * @return Appenders of the operation. Empty if the operation is not in the specification.
+     */
+    Appenders appenders(String path, String method) {
+        if (isEmpty() || !apiModel.paths().containsKey(path)) {
+            return Appenders.EMPTY;
+        }
+        return index.computeIfAbsent(path, this::compute).getOrDefault(method, Appenders.EMPTY);
+    }
+
+    private Map<String, Appenders> compute(String path) {
+        Map<String, Appenders> appendersByMethod = new ConcurrentHashMap<>();
+        for (String method : apiModel.paths().get(path).operations().keySet()) {
+            List<RestCli.OptionAppender.Appender> matchedOptionAppenders = optionAppenders.stream()
+                    .filter(optionAppender -> optionAppender.appliesTo(path, method))
+                    .map(RestCli.OptionAppender::appender)
+                    .toList();
+            List<RestCli.HeaderAppender.Appender> matchedHeaderAppenders = headerAppenders.stream()
+                    .filter(headerAppender -> headerAppender.appliesTo(path, method))
+                    .map(RestCli.HeaderAppender::appender)
+                    .toList();
+            if (!matchedOptionAppenders.isEmpty() || !matchedHeaderAppenders.isEmpty()) {
+                appendersByMethod.put(method, new Appenders(matchedOptionAppenders, matchedHeaderAppenders));
+            }
+        }
+        return appendersByMethod;
+    }
+}
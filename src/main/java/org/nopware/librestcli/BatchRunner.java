@@ -0,0 +1,203 @@
+package org.nopware.librestcli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execute requests described in NDJSON, concurrently on virtual threads.
+ * <p>
+ *     Each input line is an invocation like:
+ *     <pre>{@literal {"path": "/repos/{owner}/{repo}/issues", "method": "get", "parameters": {"owner": "naoshi-higuchi", "repo": "flist"}}}</pre>
+ *     Optional fields are "id" (copied to the result), "body" (request body), "inputFile" (request body from the file) and "outputFile" (response body to the file).
+ * <p>
+ *     Each result is written as a NDJSON line as soon as the request completes, so the order of results is the completion order.
+ *     A result has "line", "id", "path", "method", "status", "elapsedMillis", and "body" or "outputFile", or "error".
+ * <p>
+ *     Input lines are read only when a permit of parallelism is available, so the batch is never held in memory.
+ */
+@Slf4j
+class BatchRunner {
+    /**
+     * Create HTTP request from command line arguments of path and method sub-commands.
+     * It is called only by the thread calling {@link #run(BufferedReader, Writer)}, because parsing arguments is not thread-safe.
+     */
+    @FunctionalInterface
+    interface RequestFactory {
+        RestCli.PreparedRequest create(String[] args, HttpRequest.BodyPublisher bodyPublisher);
+    }
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final RequestFactory requestFactory;
+    private final Retrier retrier;
+    private final int parallelism;
+    private final Metering metering;
+    private final Compression compression;
+
+    BatchRunner(RequestFactory requestFactory, Retrier retrier, int parallelism, Metering metering, Compression compression) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.requestFactory = requestFactory;
+        this.retrier = retrier;
+        this.parallelism = parallelism;
+        this.metering = metering;
+        this.compression = compression;
+    }
+
+    /**
+     * @return Exit code. 0 if all requests succeeded with 2xx status code, 1 otherwise.
+     */
+    int run(BufferedReader input, Writer output) throws IOException, InterruptedException {
+        Semaphore permits = new Semaphore(parallelism);
+        AtomicLong failures = new AtomicLong();
+        long count = 0;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            String line;
+            long lineNumber = 0;
+            while ((line = input.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                count++;
+
+                permits.acquire();
+                ObjectNode result = OBJECT_MAPPER.createObjectNode();
+                result.put("line", lineNumber);
+
+                RestCli.PreparedRequest request;
+                Path outputFile;
+                try {
+                    JsonNode item = OBJECT_MAPPER.readTree(line);
+                    copy(item, result, "id");
+                    copy(item, result, "path");
+                    copy(item, result, "method");
+                    outputFile = item.hasNonNull("outputFile") ? Session.path(item.get("outputFile").asText()) : null;
+                    request = requestFactory.create(args(item), bodyPublisher(item));
+                } catch (IOException | RuntimeException e) {
+                    failures.incrementAndGet();
+                    result.put("error", e.getMessage());
+                    write(output, result);
+                    permits.release();
+                    continue;
+                }
+
+                executor.submit(() -> {
+                    try {
+                        if (!send(request, outputFile, result)) {
+                            failures.incrementAndGet();
+                        }
+                        write(output, result);
+                    } catch (IOException e) {
+                        log.error("Failed to write the result.", e);
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                });
+            }
+        } // Closing the executor waits for all requests.
+
+        output.flush();
+        log.info("Batch: {} requests, {} failed.", count, failures.get());
+        return failures.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * @return True if the status code is 2xx.
+     */
+    private boolean send(RestCli.PreparedRequest request, Path outputFile, ObjectNode result) {
+        long begin = System.nanoTime();
+        Metering.Timer timer = metering.start(request.plan().path(), request.plan().method(), request.httpRequest());
+        try {
+            HttpResponse<InputStream> response = retrier.send(request.httpRequest(), HttpResponse.BodyHandlers.ofInputStream(), timer);
+            int statusCode = response.statusCode();
+            try (InputStream body = compression.decode(response.headers(), timer.body(response))) {
+                if (outputFile != null) {
+                    Files.copy(body, outputFile, StandardCopyOption.REPLACE_EXISTING);
+                    result.put("status", statusCode);
+                    result.put("outputFile", outputFile.toString());
+                } else {
+                    result.put("status", statusCode);
+                    result.put("body", new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+            return statusCode >= 200 && statusCode < 300;
+        } catch (IOException | InterruptedException e) {
+            timer.failed();
+            result.put("error", e.toString());
+            return false;
+        } finally {
+            result.put("elapsedMillis", (System.nanoTime() - begin) / 1_000_000);
+        }
+    }
+
+    private static void write(Writer output, ObjectNode result) throws IOException {
+        String json = OBJECT_MAPPER.writeValueAsString(result);
+        synchronized (output) {
+            output.write(json);
+            output.write('\n');
+            output.flush();
+        }
+    }
+
+    private static void copy(JsonNode item, ObjectNode result, String field) {
+        if (item.has(field)) {
+            result.set(field, item.get(field));
+        }
+    }
+
+    private static String[] args(JsonNode item) {
+        if (!item.hasNonNull("path") || !item.hasNonNull("method")) {
+            throw new IllegalArgumentException("\"path\" and \"method\" are required.");
+        }
+
+        List<String> args = new ArrayList<>();
+        args.add(item.get("path").asText());
+        args.add(item.get("method").asText().toLowerCase());
+
+        JsonNode parameters = item.path("parameters");
+        for (Map.Entry<String, JsonNode> parameter : (Iterable<Map.Entry<String, JsonNode>>) parameters::fields) {
+            if (parameter.getValue().isArray()) {
+                parameter.getValue().forEach(value -> args.add(String.format("--%s=%s", parameter.getKey(), value.asText())));
+            } else {
+                args.add(String.format("--%s=%s", parameter.getKey(), parameter.getValue().asText()));
+            }
+        }
+
+        return args.toArray(String[]::new);
+    }
+
+    private static HttpRequest.BodyPublisher bodyPublisher(JsonNode item) throws IOException {
+        if (item.hasNonNull("body")) {
+            JsonNode body = item.get("body");
+            return HttpRequest.BodyPublishers.ofString(body.isTextual() ? body.asText() : OBJECT_MAPPER.writeValueAsString(body));
+        }
+        if (item.hasNonNull("inputFile")) {
+            return HttpRequest.BodyPublishers.ofFile(Session.path(item.get("inputFile").asText()));
+        }
+        return HttpRequest.BodyPublishers.noBody();
+    }
+}
@@ -0,0 +1,308 @@
+package org.nopware.librestcli;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+/**
+ * Content codings of requests and responses by {@link ContentCodec}s.
+ * <p>
+ *     Responses are decoded as streams. The sizes on the wire and decoded are logged at info level when the decoded stream is closed.
+ * <p>
+ *     A decoder stops at the end of the encoded data, and may not read the end of the body. So the rest of the body is read when the decoded stream
+ *     is closed after its end. The body ends as if it were not encoded: {@link HttpCache} stores it, and the connection is reused.
+ */
+@Slf4j
+final class Compression {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final List<ContentCodec> codecs;
+    private final String acceptEncoding;
+
+    Compression(List<ContentCodec> codecs) {
+        this.codecs = List.copyOf(codecs);
+        this.acceptEncoding = codecs.isEmpty() ? null : codecs.stream().map(ContentCodec::name).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * @return Value of Accept-Encoding. Null if there is no codec.
+     */
+    String acceptEncoding() {
+        return acceptEncoding;
+    }
+
+    Optional<ContentCodec> codec(String name) {
+        return codecs.stream()
+                .filter(codec -> codec.name().equalsIgnoreCase(name))
+                .findFirst();
+    }
+
+    /**
+     * @return Content codings applied to the body, in the order they were applied. "identity" is omitted.
+     */
+    private static List<String> codings(HttpHeaders headers) {
+        List<String> codings = new ArrayList<>();
+        for (String value : headers.allValues("Content-Encoding")) {
+            Arrays.stream(value.split(","))
+                    .map(coding -> coding.trim().toLowerCase(Locale.ROOT))
+                    .filter(coding -> !coding.isEmpty() && !coding.equals("identity"))
+                    .forEach(codings::add);
+        }
+        return codings;
+    }
+
+    /**
+     * @return True if the body is encoded by a known codec, so {@link #decode(HttpHeaders, InputStream)} decodes it.
+     */
+    boolean decodes(HttpHeaders headers) {
+        List<String> codings = codings(headers);
+        return !codings.isEmpty() && codings.stream().allMatch(coding -> codec(coding).isPresent());
+    }
+
+    /**
+     * Decode the body by Content-Encoding. If a coding is unknown, the body is returned as is.
+     *
+     * @param headers Response headers.
+     * @param body    Response body as received.
+     * @return Decoded body. Closing it closes {@code body}, after reading the rest of {@code body} if the decoded body has been read to the end.
+     */
+    InputStream decode(HttpHeaders headers, InputStream body) {
+        if (!decodes(headers)) {
+            List<String> codings = codings(headers);
+            if (!codings.isEmpty()) {
+                log.warn("Unknown content coding: {}. The body is not decoded.", codings);
+            }
+            return body;
+        }
+
+        List<String> codings = codings(headers);
+        CountingInputStream wire = new CountingInputStream(body);
+        InputStream decoded = wire;
+        for (int i = codings.size() - 1; i >= 0; i--) { // Decode in the reverse order of application.
+            decoded = new LazyDecodingInputStream(decoded, codec(codings.get(i)).orElseThrow());
+        }
+        return new CountingInputStream(decoded) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    if (ended) {
+                        drain(wire);
+                    }
+                    super.close();
+                } finally {
+                    log.info("Decoded {} response: {} bytes on the wire, {} bytes decoded ({} saved).",
+                            String.join(", ", codings), wire.bytes, bytes, savings(wire.bytes, bytes));
+                }
+            }
+        };
+    }
+
+    /**
+     * @return Headers without Content-Encoding and Content-Length if {@link #decode(HttpHeaders, InputStream)} decodes the body.
+     */
+    HttpHeaders decodedHeaders(HttpHeaders headers) {
+        if (!decodes(headers)) {
+            return headers;
+        }
+        return HttpHeaders.of(headers.map(), (name, value) -> !name.equalsIgnoreCase("Content-Encoding") && !name.equalsIgnoreCase("Content-Length"));
+    }
+
+    /**
+     * Encode the body while it is sent. The length of the body is unknown, so it is sent in chunks.
+     *
+     * @param source Opens the body to encode. It is called for each subscription.
+     */
+    HttpRequest.BodyPublisher encode(ContentCodec codec, Callable<InputStream> source) {
+        return HttpRequest.BodyPublishers.ofInputStream(() -> {
+            try {
+                return new EncodingInputStream(source.call(), codec);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * Read the rest of the body after the encoded data, so the end of the body is read. No bytes are expected, so at most a chunk is read.
+     */
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        long drained = 0;
+        int n;
+        while (drained < CHUNK_SIZE && (n = in.read(buffer)) >= 0) {
+            drained += n;
+        }
+    }
+
+    private static String savings(long encodedBytes, long decodedBytes) {
+        return decodedBytes == 0 ? "0%" : String.format("%.1f%%", 100.0 * (decodedBytes - encodedBytes) / decodedBytes);
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long bytes;
+        boolean ended;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytes++;
+            } else {
+                ended = true;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                bytes += n;
+            } else if (n < 0) {
+                ended = true;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Decoder created when the first byte arrives, because an empty body, like the body of HEAD, has no header of the coding.
+     */
+    private static final class LazyDecodingInputStream extends InputStream {
+        private final PushbackInputStream encoded;
+        private final ContentCodec codec;
+        private InputStream decoded;
+
+        LazyDecodingInputStream(InputStream encoded, ContentCodec codec) {
+            this.encoded = new PushbackInputStream(encoded, 1);
+            this.codec = codec;
+        }
+
+        private InputStream decoded() throws IOException {
+            if (decoded == null) {
+                int first = encoded.read();
+                if (first < 0) {
+                    decoded = InputStream.nullInputStream();
+                } else {
+                    encoded.unread(first);
+                    decoded = codec.decode(encoded);
+                }
+            }
+            return decoded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return decoded().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return decoded().read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (decoded != null) {
+                    decoded.close();
+                }
+            } finally {
+                encoded.close();
+            }
+        }
+    }
+
+    /**
+     * Stream of the encoded source. It encodes a chunk of the source when its buffer is empty, so it does not need another thread.
+     */
+    private static final class EncodingInputStream extends InputStream {
+        private final InputStream source;
+        private final String codecName;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(CHUNK_SIZE);
+        private final OutputStream encoder;
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private long sourceBytes;
+        private long encodedBytes;
+        private boolean finished;
+        private byte[] pending = new byte[0];
+        private int position;
+
+        EncodingInputStream(InputStream source, ContentCodec codec) throws IOException {
+            this.source = source;
+            this.codecName = codec.name();
+            this.encoder = codec.encode(buffer);
+        }
+
+        /**
+         * @return False if all the encoded bytes have been read.
+         */
+        private boolean fill() throws IOException {
+            while (position == pending.length) {
+                if (finished) {
+                    return false;
+                }
+                int n = source.read(chunk);
+                if (n < 0) {
+                    encoder.close();
+                    finished = true;
+                    log.info("Encoded the request body by {}: {} bytes, {} bytes encoded ({} saved).",
+                            codecName, sourceBytes, encodedBytes + buffer.size(), savings(encodedBytes + buffer.size(), sourceBytes));
+                } else {
+                    sourceBytes += n;
+                    encoder.write(chunk, 0, n);
+                }
+                pending = buffer.toByteArray();
+                position = 0;
+                encodedBytes += pending.length;
+                buffer.reset();
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? pending[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, pending.length - position);
+            System.arraycopy(pending, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+}
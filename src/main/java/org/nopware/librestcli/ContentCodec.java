@@ -0,0 +1,102 @@
+package org.nopware.librestcli;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content coding of HTTP, like gzip. See <a href="https://www.rfc-editor.org/rfc/rfc9110#section-8.4.1">RFC 9110</a>.
+ * <p>
+ *     RestCli sends the names of its codecs in Accept-Encoding, and decodes the responses as streams.
+ *     Register other codecs, like br or zstd, by {@link RestCli.Builder#contentCodecs(ContentCodec...)}.
+ *     Implementations must be thread-safe.
+ */
+public interface ContentCodec {
+    /**
+     * gzip by {@link GZIPInputStream} and {@link GZIPOutputStream}.
+     */
+    ContentCodec GZIP = new ContentCodec() {
+        @Override
+        public String name() {
+            return "gzip";
+        }
+
+        @Override
+        public InputStream decode(InputStream encoded) throws IOException {
+            return new GZIPInputStream(encoded, 64 * 1024);
+        }
+
+        @Override
+        public OutputStream encode(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, 64 * 1024);
+        }
+    };
+
+    /**
+     * deflate, i.e. zlib format. Raw deflate data without zlib header, sent by some servers, is also decoded.
+     */
+    ContentCodec DEFLATE = new ContentCodec() {
+        @Override
+        public String name() {
+            return "deflate";
+        }
+
+        @Override
+        public InputStream decode(InputStream encoded) throws IOException {
+            InputStream buffered = new BufferedInputStream(encoded, 64 * 1024);
+            buffered.mark(2);
+            int cmf = buffered.read();
+            int flg = buffered.read();
+            buffered.reset();
+            boolean zlib = (cmf & 0x0F) == 8 && flg >= 0 && ((cmf << 8) | flg) % 31 == 0;
+            Inflater inflater = new Inflater(!zlib);
+            return new InflaterInputStream(buffered, inflater, 64 * 1024) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end(); // Not ended by InflaterInputStream because it is given.
+                    }
+                }
+            };
+        }
+
+        @Override
+        public OutputStream encode(OutputStream out) {
+            Deflater deflater = new Deflater();
+            return new DeflaterOutputStream(out, deflater, 64 * 1024) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end(); // Not ended by DeflaterOutputStream because it is given.
+                    }
+                }
+            };
+        }
+    };
+
+    /**
+     * @return Token of Accept-Encoding and Content-Encoding. Case-insensitive.
+     */
+    String name();
+
+    /**
+     * @return Stream reading the decoded content from {@code encoded}. Closing it closes {@code encoded}.
+     */
+    InputStream decode(InputStream encoded) throws IOException;
+
+    /**
+     * @return Stream encoding the content written to it into {@code out}. Closing it finishes the encoding and closes {@code out}.
+     */
+    OutputStream encode(OutputStream out) throws IOException;
+}
@@ -0,0 +1,246 @@
+package org.nopware.librestcli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Send one request per value of a parameter concurrently, and merge the responses.
+ * <p>
+ *     Requests are sent on virtual threads in a scope of an executor, so all of them complete before {@link #run(List, List, OutputStream)} returns.
+ *     A permit is held from the fork until the response is written, so at most {@link #parallelism} responses are in flight or waiting to be written.
+ * <p>
+ *     {@link Order#INPUT} writes the response bodies in the order of the values, as if the requests were sent one by one.
+ *     {@link Order#COMPLETION} writes an NDJSON line per response as soon as it is received, tagged with the value.
+ */
+@Slf4j
+final class FanOut {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    enum Order {
+        INPUT, COMPLETION
+    }
+
+    /**
+     * Parameter and its values given by {@literal --fan-out}.
+     *
+     * @param parameter Option name of the parameter without leading dashes. For example, {@literal repo}.
+     * @param values    Values in the input order.
+     */
+    record Spec(String parameter, List<String> values) {
+        /**
+         * @param spec Like {@literal repo=flist,librestcli}, or {@literal repo=@repos.txt} for a file with a value per line. Blank lines are ignored.
+         * @throws IllegalArgumentException If the spec is invalid or has no value.
+         * @throws IOException              If the file cannot be read.
+         */
+        static Spec parse(String spec) throws IOException {
+            int equals = spec.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("--fan-out must be like <parameter>=<value>,<value>... or <parameter>=@<file>: " + spec);
+            }
+            String parameter = spec.substring(0, equals).replaceFirst("^--", "");
+            String values = spec.substring(equals + 1);
+            List<String> list = values.startsWith("@")
+                    ? Files.readAllLines(Session.path(values.substring(1)), StandardCharsets.UTF_8).stream().map(String::strip).filter(value -> !value.isEmpty()).toList()
+                    : Arrays.stream(values.split(",")).filter(value -> !value.isEmpty()).toList();
+            if (list.isEmpty()) {
+                throw new IllegalArgumentException("No value for --fan-out: " + spec);
+            }
+            return new Spec(parameter, list);
+        }
+
+        /**
+         * @return Option giving the value to the parameter.
+         */
+        String option(String value) {
+            return "--" + parameter + "=" + value;
+        }
+    }
+
+    /**
+     * Response of a value. Either {@code statusCode} and {@code body}, or {@code error} is set.
+     */
+    private record Result(int index, String value, int statusCode, byte[] body, String error) {
+        boolean succeeded() {
+            return error == null && statusCode / 100 == 2;
+        }
+    }
+
+    private final BatchRunner.RequestFactory requestFactory;
+    private final Retrier retrier;
+    private final int parallelism;
+    private final Order order;
+    private final Metering metering;
+    private final Compression compression;
+
+    FanOut(BatchRunner.RequestFactory requestFactory, Retrier retrier, int parallelism, Order order, Metering metering, Compression compression) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.requestFactory = requestFactory;
+        this.retrier = retrier;
+        this.parallelism = parallelism;
+        this.order = order;
+        this.metering = metering;
+        this.compression = compression;
+    }
+
+    /**
+     * @param argsList Command line arguments of the path and method sub-commands per value. They are parsed by the calling thread.
+     * @param values   Values in the order of {@code argsList}.
+     * @param output   Responses are written here. It is not closed.
+     * @return Exit code. 0 if all requests succeeded with 2xx status code, 1 otherwise.
+     */
+    int run(List<String[]> argsList, List<String> values, OutputStream output) throws InterruptedException {
+        Semaphore permits = new Semaphore(parallelism);
+        ResultWriter writer = new ResultWriter(output, permits);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < argsList.size(); i++) {
+                int index = i;
+                String value = values.get(i);
+                permits.acquire(); // Released when the result is written.
+
+                RestCli.PreparedRequest request;
+                try {
+                    request = requestFactory.create(argsList.get(i), null);
+                } catch (RuntimeException e) {
+                    writer.write(new Result(index, value, 0, null, e.getMessage()));
+                    continue;
+                }
+                executor.submit(() -> {
+                    writer.write(send(index, value, request));
+                    return null;
+                });
+            }
+        } // Closing the executor waits for all requests, even if the loop is interrupted.
+
+        return writer.exitCode(argsList.size());
+    }
+
+    private Result send(int index, String value, RestCli.PreparedRequest request) {
+        Metering.Timer timer = metering.start(request.plan().path(), request.plan().method(), request.httpRequest());
+        try {
+            HttpResponse<InputStream> response = retrier.send(request.httpRequest(), HttpResponse.BodyHandlers.ofInputStream(), timer);
+            try (InputStream body = compression.decode(response.headers(), timer.body(response))) {
+                return new Result(index, value, response.statusCode(), body.readAllBytes(), null);
+            }
+        } catch (IOException e) {
+            timer.failed();
+            return new Result(index, value, 0, null, e.toString());
+        } catch (InterruptedException e) {
+            timer.failed();
+            Thread.currentThread().interrupt();
+            return new Result(index, value, 0, null, e.toString());
+        }
+    }
+
+    /**
+     * Write the results in the order, and release their permits.
+     */
+    private final class ResultWriter {
+        private final OutputStream output;
+        private final Semaphore permits;
+        private final Map<Integer, Result> pending = new HashMap<>(); // Guarded by this.
+        private int next; // Guarded by this. Index of the next result written in the input order.
+        private long failures; // Guarded by this.
+        private IOException ioException; // Guarded by this. First failure to write.
+
+        ResultWriter(OutputStream output, Semaphore permits) {
+            this.output = output;
+            this.permits = permits;
+        }
+
+        synchronized void write(Result result) {
+            if (!result.succeeded()) {
+                failures++;
+                log.warn("Fan-out request for {} failed: {}", result.value(), result.error() != null ? result.error() : "status code " + result.statusCode());
+            }
+            if (order == Order.COMPLETION) {
+                writeLine(result);
+                permits.release();
+                return;
+            }
+            pending.put(result.index(), result);
+            for (Result ready = pending.remove(next); ready != null; ready = pending.remove(next)) {
+                writeBody(ready);
+                next++;
+                permits.release();
+            }
+        }
+
+        synchronized int exitCode(int count) {
+            log.info("Fan-out: {} requests, {} failed.", count, failures);
+            return failures == 0 && ioException == null ? 0 : 1;
+        }
+
+        private void writeBody(Result result) {
+            if (result.body() == null || ioException != null) {
+                return;
+            }
+            try {
+                output.write(result.body());
+                if (result.body().length > 0 && result.body()[result.body().length - 1] != '\n') {
+                    output.write('\n');
+                }
+                output.flush();
+            } catch (IOException e) {
+                ioException = e;
+                log.error("Failed to write the response for {}.", result.value(), e);
+            }
+        }
+
+        private void writeLine(Result result) {
+            if (ioException != null) {
+                return;
+            }
+            ObjectNode line = OBJECT_MAPPER.createObjectNode();
+            line.put("index", result.index());
+            line.put("value", result.value());
+            if (result.error() != null) {
+                line.put("error", result.error());
+            } else {
+                line.put("status", result.statusCode());
+                line.set("body", body(result.body()));
+            }
+            try {
+                output.write(OBJECT_MAPPER.writeValueAsBytes(line));
+                output.write('\n');
+                output.flush();
+            } catch (IOException e) {
+                ioException = e;
+                log.error("Failed to write the response for {}.", result.value(), e);
+            }
+        }
+    }
+
+    /**
+     * @return The body as JSON if it is JSON, or as a string.
+     */
+    private static JsonNode body(byte[] body) {
+        try {
+            JsonNode json = OBJECT_MAPPER.readTree(body);
+            if (json != null && !json.isMissingNode()) {
+                return json;
+            }
+        } catch (IOException e) {
+            // Not JSON.
+        }
+        return OBJECT_MAPPER.getNodeFactory().textNode(new String(body, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,513 @@
+package org.nopware.librestcli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import dev.dirs.ProjectDirectories;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of HTTP responses for GET and HEAD.
+ * <p>
+ *     A response with 200 status code is stored if it has a validator (ETag or Last-Modified) or a max-age, and its Cache-Control does not have no-store.
+ *     A fresh entry (within max-age and without no-cache) is served without a request.
+ *     A stale entry is revalidated by If-None-Match and If-Modified-Since, and served from the disk if the server responds 304 Not Modified.
+ * <p>
+ *     Entries are keyed by the method, the URI and the hash of the Authorization header, so users do not share responses.
+ *     An entry is a single file written atomically, so several processes can share the cache directory.
+ *     When the cache exceeds its size, the least recently used entries are evicted under a file lock.
+ */
+@Slf4j
+public final class HttpCache {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int MAGIC = 0x52434843; // "RCHC"
+    private static final int FORMAT_VERSION = 1;
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    // Hop-by-hop headers are not stored. See https://www.rfc-editor.org/rfc/rfc9110#section-7.6.1
+    private static final Set<String> HOP_BY_HOP_HEADERS = Set.of("connection", "keep-alive", "proxy-connection", "te", "transfer-encoding", "upgrade", ":status");
+
+    private final Path directory;
+    private final long maxBytes;
+
+    private HttpCache(Path directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Max bytes must be positive: " + maxBytes);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Cache in the user cache directory. For example, {@literal ~/.cache/librestcli/http} on Linux. Its size is 256 MiB.
+     *
+     * @return HttpCache object.
+     */
+    public static HttpCache defaultCache() {
+        ProjectDirectories projectDirectories = ProjectDirectories.from("org", "nopware", "librestcli");
+        return new HttpCache(Paths.get(projectDirectories.cacheDir, "http"), DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Cache in the specified directory.
+     *
+     * @param directory Cache directory. It is created if it does not exist.
+     * @param maxBytes  Max total size of the entries.
+     * @return HttpCache object.
+     */
+    public static HttpCache of(@NonNull Path directory, long maxBytes) {
+        return new HttpCache(directory, maxBytes);
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Stored response.
+     *
+     * @param file       Entry file.
+     * @param statusCode Status code of the stored response.
+     * @param headers    Headers of the stored response.
+     * @param storedAt   When the response was stored.
+     */
+    record Entry(Path file, int statusCode, HttpHeaders headers, Instant storedAt) {
+        /**
+         * @return True if the entry can be served without revalidation.
+         */
+        boolean isFresh(Instant now) {
+            Map<String, String> cacheControl = cacheControl(headers);
+            if (cacheControl.containsKey("no-cache") || !cacheControl.containsKey("max-age")) {
+                return false;
+            }
+            long maxAge = parseSeconds(cacheControl.get("max-age"));
+            long age = headers.firstValue("Age").map(HttpCache::parseSeconds).orElse(0L);
+            long ageMillis = age * 1000 + (now.toEpochMilli() - storedAt.toEpochMilli());
+            return ageMillis < maxAge * 1000;
+        }
+
+        /**
+         * @return Request with the validators of the entry.
+         */
+        HttpRequest conditional(HttpRequest request) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(request, (name, value) -> true);
+            headers.firstValue("ETag").ifPresent(etag -> builder.header("If-None-Match", etag));
+            headers.firstValue("Last-Modified").ifPresent(lastModified -> builder.header("If-Modified-Since", lastModified));
+            return builder.build();
+        }
+    }
+
+    /**
+     * @return Entry for the request. Empty if there is no valid entry or the request is not cacheable.
+     */
+    Optional<Entry> lookup(HttpRequest request) {
+        if (!isCacheableMethod(request)) {
+            return Optional.empty();
+        }
+
+        Path file = entryFile(request);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            byte[] metaBytes = new byte[in.readInt()];
+            in.readFully(metaBytes);
+            JsonNode meta = OBJECT_MAPPER.readTree(metaBytes);
+
+            // The response varies by the request headers listed in Vary.
+            for (Map.Entry<String, JsonNode> vary : (Iterable<Map.Entry<String, JsonNode>>) () -> meta.path("vary").fields()) {
+                String requestValue = String.join(",", request.headers().allValues(vary.getKey()));
+                if (!requestValue.equals(vary.getValue().asText())) {
+                    return Optional.empty();
+                }
+            }
+
+            Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            meta.path("headers").fields().forEachRemaining(header -> {
+                List<String> values = new ArrayList<>();
+                header.getValue().forEach(value -> values.add(value.asText()));
+                headers.put(header.getKey(), values);
+            });
+
+            return Optional.of(new Entry(file, meta.path("statusCode").asInt(), HttpHeaders.of(headers, (name, value) -> true),
+                    Instant.ofEpochMilli(meta.path("storedAt").asLong())));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignore invalid cache entry: {}", file, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Open the body of the entry. It marks the entry as recently used.
+     * <p>
+     *     Another process may have replaced the entry after {@link #lookup(HttpRequest)}. The header is read again, so the body is always of the opened file.
+     */
+    InputStream open(Entry entry) throws IOException {
+        InputStream in = Files.newInputStream(entry.file()); // Keep reading even if another process replaces or evicts the entry.
+        try {
+            DataInputStream dataIn = new DataInputStream(in);
+            if (dataIn.readInt() != MAGIC || dataIn.readInt() != FORMAT_VERSION) {
+                throw new IOException("Invalid cache entry: " + entry.file());
+            }
+            in.skipNBytes(dataIn.readInt());
+            touch(entry.file());
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Store the response while the caller reads its body.
+     * The entry is committed when the body is read to the end and closed. If the body is not read to the end, nothing is stored.
+     *
+     * @param body Body of the response.
+     * @return Body to be read by the caller. It is the original body if the response is not cacheable.
+     */
+    InputStream store(HttpRequest request, HttpResponse<?> response, InputStream body) {
+        if (!isCacheableMethod(request) || !isCacheable(response)) {
+            return body;
+        }
+
+        Path file = entryFile(request);
+        try {
+            Files.createDirectories(directory);
+            Path tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile));
+            try {
+                writeHeader(out, request, response.statusCode(), response.headers(), Instant.now());
+            } catch (IOException e) {
+                out.close();
+                Files.deleteIfExists(tempFile);
+                throw e;
+            }
+            return new TeeInputStream(body, out, tempFile, file);
+        } catch (IOException e) {
+            log.warn("Failed to store the response: {}", file, e);
+            return body;
+        }
+    }
+
+    /**
+     * Update the stored headers by the headers of a 304 Not Modified response, and restart the age of the entry. See RFC 9111 section 4.3.4.
+     * So an entry with max-age becomes fresh again after it is revalidated.
+     *
+     * @param request     The request without the conditional headers.
+     * @param notModified Headers of the 304 response.
+     * @return Updated entry. The given entry if it cannot be rewritten.
+     */
+    Entry refresh(HttpRequest request, Entry entry, HttpHeaders notModified) {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(entry.headers().map());
+        headers.remove("Age"); // The age restarts at the new storedAt unless the 304 response tells it.
+        notModified.map().forEach((name, values) -> {
+            String lowerCaseName = name.toLowerCase(Locale.ROOT);
+            if (!HOP_BY_HOP_HEADERS.contains(lowerCaseName) && !lowerCaseName.equals("content-length")) { // Content-Length of a 304 is not of the stored body.
+                headers.put(name, values);
+            }
+        });
+        HttpHeaders updatedHeaders = HttpHeaders.of(headers, (name, value) -> true);
+        Instant storedAt = Instant.now();
+
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(directory, entry.file().getFileName().toString(), ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile)); InputStream body = open(entry)) {
+                writeHeader(out, request, entry.statusCode(), updatedHeaders, storedAt);
+                body.transferTo(out);
+            }
+            Files.move(tempFile, entry.file(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return new Entry(entry.file(), entry.statusCode(), updatedHeaders, storedAt);
+        } catch (IOException e) {
+            log.warn("Failed to update the cache entry: {}", entry.file(), e);
+            return entry;
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    log.debug("Failed to delete: {}", tempFile, e);
+                }
+            }
+        }
+    }
+
+    private void writeHeader(OutputStream out, HttpRequest request, int statusCode, HttpHeaders responseHeaders, Instant storedAt) throws IOException {
+        ObjectNode meta = OBJECT_MAPPER.createObjectNode();
+        meta.put("uri", request.uri().toString());
+        meta.put("statusCode", statusCode);
+        meta.put("storedAt", storedAt.toEpochMilli());
+        ObjectNode headers = meta.putObject("headers");
+        responseHeaders.map().forEach((name, values) -> {
+            if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                values.forEach(headers.withArray(name)::add);
+            }
+        });
+        ObjectNode vary = meta.putObject("vary");
+        for (String name : varyHeaderNames(responseHeaders)) {
+            vary.put(name, String.join(",", request.headers().allValues(name)));
+        }
+
+        byte[] metaBytes = OBJECT_MAPPER.writeValueAsBytes(meta);
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(FORMAT_VERSION);
+        dataOut.writeInt(metaBytes.length);
+        dataOut.write(metaBytes);
+    }
+
+    /**
+     * Tee the response body into the temporary file, and commit it at the end.
+     */
+    private final class TeeInputStream extends FilterInputStream {
+        private final OutputStream out;
+        private final Path tempFile;
+        private final Path file;
+        private boolean failed;
+        private boolean ended;
+        private boolean closed;
+
+        TeeInputStream(InputStream in, OutputStream out, Path tempFile, Path file) {
+            super(in);
+            this.out = out;
+            this.tempFile = tempFile;
+            this.file = file;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                ended = true;
+            } else {
+                tee(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) {
+                ended = true;
+            } else {
+                tee(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            failed = true; // Skipped bytes are not stored.
+            return 0;
+        }
+
+        private void tee(byte[] b, int off, int len) {
+            if (failed) {
+                return;
+            }
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                log.warn("Failed to store the response: {}", file, e);
+                failed = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                commit();
+            }
+        }
+
+        private void commit() {
+            try {
+                out.close();
+                if (ended && !failed) {
+                    Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    evict();
+                }
+            } catch (IOException e) {
+                log.warn("Failed to store the response: {}", file, e);
+            } finally {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    log.debug("Failed to delete: {}", tempFile, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evict the least recently used entries until the total size is within the max.
+     * Only one process evicts at a time. If another process is evicting, this does nothing.
+     */
+    void evict() throws IOException {
+        try (FileChannel lockChannel = FileChannel.open(directory.resolve("evict.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.tryLock()) {
+            if (lock == null) {
+                return;
+            }
+
+            record FileStat(Path file, long size, FileTime lastModifiedTime) {
+            }
+            List<FileStat> entries = new ArrayList<>();
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (file.getFileName().toString().endsWith(ENTRY_SUFFIX)) {
+                        try {
+                            entries.add(new FileStat(file, Files.size(file), Files.getLastModifiedTime(file)));
+                        } catch (NoSuchFileException e) {
+                            // Replaced by another process.
+                        }
+                    }
+                }
+            }
+
+            long total = entries.stream().mapToLong(FileStat::size).sum();
+            if (total <= maxBytes) {
+                return;
+            }
+            entries.sort(Comparator.comparing(FileStat::lastModifiedTime));
+            for (FileStat entry : entries) {
+                if (total <= maxBytes) {
+                    break;
+                }
+                try {
+                    Files.deleteIfExists(entry.file());
+                } catch (IOException e) {
+                    log.debug("Failed to evict: {}", entry.file(), e); // For example, it is open on Windows.
+                }
+                total -= entry.size();
+            }
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            log.debug("Failed to touch: {}", file, e);
+        }
+    }
+
+    private Path entryFile(HttpRequest request) {
+        String authorization = request.headers().firstValue("Authorization").orElse("");
+        HashCode key = Hashing.sha256().newHasher()
+                .putString(request.method(), StandardCharsets.UTF_8)
+                .putChar('\n')
+                .putString(request.uri().toString(), StandardCharsets.UTF_8)
+                .putChar('\n')
+                .putString(authorization, StandardCharsets.UTF_8)
+                .hash();
+        return directory.resolve(key + ENTRY_SUFFIX);
+    }
+
+    private static boolean isCacheableMethod(HttpRequest request) {
+        return request.method().equals("GET") || request.method().equals("HEAD");
+    }
+
+    private static boolean isCacheable(HttpResponse<?> response) {
+        if (response.statusCode() != 200) {
+            return false;
+        }
+        HttpHeaders headers = response.headers();
+        Map<String, String> cacheControl = cacheControl(headers);
+        if (cacheControl.containsKey("no-store") || varyHeaderNames(headers).contains("*")) {
+            return false;
+        }
+        return headers.firstValue("ETag").isPresent() || headers.firstValue("Last-Modified").isPresent() || cacheControl.containsKey("max-age");
+    }
+
+    /**
+     * @return Map directive -> argument. Directive names are in lower case. The argument is empty if there is none.
+     */
+    static Map<String, String> cacheControl(HttpHeaders headers) {
+        Map<String, String> directives = new HashMap<>();
+        for (String value : headers.allValues("Cache-Control")) {
+            for (String directive : value.split(",")) {
+                String trimmed = directive.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                int equal = trimmed.indexOf('=');
+                String name = (equal < 0 ? trimmed : trimmed.substring(0, equal)).trim().toLowerCase(Locale.ROOT);
+                String argument = equal < 0 ? "" : trimmed.substring(equal + 1).trim().replace("\"", "");
+                directives.putIfAbsent(name, argument);
+            }
+        }
+        return directives;
+    }
+
+    private static List<String> varyHeaderNames(HttpHeaders headers) {
+        List<String> names = new ArrayList<>();
+        for (String value : headers.allValues("Vary")) {
+            for (String name : value.split(",")) {
+                if (!name.isBlank()) {
+                    names.add(name.trim());
+                }
+            }
+        }
+        return names;
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
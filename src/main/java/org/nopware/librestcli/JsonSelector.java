@@ -0,0 +1,175 @@
+package org.nopware.librestcli;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Select values from a JSON body while it is read, and print them as NDJSON.
+ * <p>
+ *     A selector is a JSON Pointer (<a href="https://www.rfc-editor.org/rfc/rfc6901">RFC 6901</a>), like {@code /items/0/name},
+ *     or a subset of JSONPath (<a href="https://www.rfc-editor.org/rfc/rfc9535">RFC 9535</a>): {@code $}, {@code .name}, {@code ['name']}, {@code [0]}, {@code [*]} and {@code .*},
+ *     like {@code $.items[*].name}.
+ * <p>
+ *     The body is read token by token. Subtrees which cannot match are skipped, and a matched value is copied token by token.
+ *     So memory stays constant whatever the size of the body, and each value is printed as soon as it has been read.
+ *     If the body is a sequence of JSON values, like NDJSON, the selector is applied to each of them.
+ */
+final class JsonSelector {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    // .name, .*, ['name'], ["name"], [0], [*]
+    private static final Pattern JSON_PATH_STEP = Pattern.compile("\\.([^.\\[\\]]+)|\\[\\s*(?:'((?:[^'\\\\]|\\\\.)*)'|\"((?:[^\"\\\\]|\\\\.)*)\"|(\\d+)|(\\*))\\s*]");
+
+    /**
+     * Step of a selector.
+     *
+     * @param name  Member name. Null for a wildcard or an index.
+     * @param index Array index. -1 if it matches no element.
+     */
+    private record Step(String name, int index) {
+        static final Step WILDCARD = new Step(null, -1);
+
+        boolean matchesName(String name) {
+            return this == WILDCARD || name.equals(this.name);
+        }
+
+        boolean matchesIndex(int index) {
+            return this == WILDCARD || index == this.index;
+        }
+    }
+
+    private final String selector;
+    private final List<Step> steps;
+
+    private JsonSelector(String selector, List<Step> steps) {
+        this.selector = selector;
+        this.steps = List.copyOf(steps);
+    }
+
+    /**
+     * @param selector JSON Pointer or JSONPath.
+     * @throws IllegalArgumentException If the selector is invalid.
+     */
+    static JsonSelector parse(String selector) {
+        if (selector.isEmpty() || selector.startsWith("/")) {
+            return new JsonSelector(selector, pointerSteps(selector));
+        }
+        if (selector.startsWith("$")) {
+            return new JsonSelector(selector, jsonPathSteps(selector));
+        }
+        throw new IllegalArgumentException("Selector must be a JSON Pointer starting with '/' or a JSONPath starting with '$': " + selector);
+    }
+
+    private static List<Step> pointerSteps(String pointer) {
+        List<Step> steps = new ArrayList<>();
+        if (pointer.isEmpty()) {
+            return steps;
+        }
+        for (String token : pointer.substring(1).split("/", -1)) {
+            String name = token.replace("~1", "/").replace("~0", "~");
+            // A token is a member name, or an array index if it is a non-negative integer without leading zeros.
+            int index = name.matches("0|[1-9]\\d{0,8}") ? Integer.parseInt(name) : -1;
+            steps.add(new Step(name, index));
+        }
+        return steps;
+    }
+
+    private static List<Step> jsonPathSteps(String path) {
+        List<Step> steps = new ArrayList<>();
+        Matcher matcher = JSON_PATH_STEP.matcher(path);
+        int position = 1; // After '$'.
+        while (position < path.length()) {
+            if (!matcher.find(position) || matcher.start() != position) {
+                throw new IllegalArgumentException("Unsupported JSONPath at " + position + ": " + path);
+            }
+            if (matcher.group(1) != null) {
+                steps.add(matcher.group(1).equals("*") ? Step.WILDCARD : new Step(matcher.group(1), -1));
+            } else if (matcher.group(2) != null || matcher.group(3) != null) {
+                String quoted = matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+                steps.add(new Step(quoted.replaceAll("\\\\(.)", "$1"), -1));
+            } else if (matcher.group(4) != null) {
+                steps.add(new Step(null, Integer.parseInt(matcher.group(4))));
+            } else {
+                steps.add(Step.WILDCARD);
+            }
+            position = matcher.end();
+        }
+        return steps;
+    }
+
+    /**
+     * Print the selected values in the body as lines. The output is flushed after each value if {@code flush} is true.
+     *
+     * @return Number of values printed.
+     * @throws IOException If the body is not JSON.
+     */
+    long select(InputStream body, OutputStream output, boolean flush) throws IOException {
+        long count = 0;
+        try (JsonParser parser = JSON_FACTORY.createParser(body);
+             JsonGenerator generator = JSON_FACTORY.createGenerator(output)) {
+            generator.setRootValueSeparator(null);
+            while (parser.nextToken() != null) {
+                count += select(parser, 0, generator, flush);
+            }
+            generator.flush();
+        }
+        return count;
+    }
+
+    /**
+     * @param parser At the first token of a value.
+     * @param depth  Number of steps matched by the path to the value.
+     */
+    private long select(JsonParser parser, int depth, JsonGenerator generator, boolean flush) throws IOException {
+        if (depth == steps.size()) {
+            generator.copyCurrentStructure(parser);
+            generator.writeRaw('\n');
+            if (flush) {
+                generator.flush();
+            }
+            return 1;
+        }
+
+        Step step = steps.get(depth);
+        long count = 0;
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                if (step.matchesName(name)) {
+                    count += select(parser, depth + 1, generator, flush);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            int index = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (step.matchesIndex(index++)) {
+                    count += select(parser, depth + 1, generator, flush);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return selector;
+    }
+}
@@ -0,0 +1,106 @@
+package org.nopware.librestcli;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds.
+ * <p>
+ *     Buckets are log-linear: each power of two is divided into 2^subBucketBits sub-buckets, 8 by default.
+ *     So the relative error of a percentile is at most 1/2^subBucketBits, and the histogram is a fixed array of counters.
+ */
+final class LatencyHistogram {
+    private static final int DEFAULT_SUB_BUCKET_BITS = 3;
+
+    private final int subBucketBits;
+    private final AtomicLongArray counts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        this(DEFAULT_SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @param subBucketBits For example, 7 for the relative error less than 1%.
+     */
+    LatencyHistogram(int subBucketBits) {
+        if (subBucketBits < 1 || subBucketBits > 10) {
+            throw new IllegalArgumentException("Sub-bucket bits must be in [1, 10]: " + subBucketBits);
+        }
+        this.subBucketBits = subBucketBits;
+        this.counts = new AtomicLongArray(64 << subBucketBits);
+    }
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value, subBucketBits));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    long mean() {
+        long count = count();
+        return count == 0 ? 0 : sum.sum() / count;
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile For example, 99.0.
+     * @return Upper bound of the bucket including the percentile. 0 if empty.
+     */
+    long percentile(double percentile) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i, subBucketBits), max());
+            }
+        }
+        return max();
+    }
+
+    static int index(long value) {
+        return index(value, DEFAULT_SUB_BUCKET_BITS);
+    }
+
+    static long upperBound(int index) {
+        return upperBound(index, DEFAULT_SUB_BUCKET_BITS);
+    }
+
+    static int index(long value, int subBucketBits) {
+        int subBuckets = 1 << subBucketBits;
+        if (value < subBuckets) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - subBucketBits)) & (subBuckets - 1);
+        return ((exponent - subBucketBits + 1) << subBucketBits) + subBucket;
+    }
+
+    static long upperBound(int index, int subBucketBits) {
+        int subBuckets = 1 << subBucketBits;
+        if (index < subBuckets) {
+            return index;
+        }
+        int exponent = (index >>> subBucketBits) + subBucketBits - 1;
+        long subBucket = index & (subBuckets - 1);
+        long lowerBound = (subBuckets + subBucket) << (exponent - subBucketBits);
+        return lowerBound + (1L << (exponent - subBucketBits)) - 1;
+    }
+}
@@ -0,0 +1,232 @@
+package org.nopware.librestcli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Send a prepared request repeatedly, and report the latency percentiles, the throughput, the status codes and the bytes transferred as JSON.
+ * <p>
+ *     Without a rate, the load is a closed model: {@link #concurrency} workers send the next request as soon as they receive the response.
+ * <p>
+ *     With a rate, the load is an open model: requests are scheduled at the fixed rate, and at most {@link #concurrency} of them are in flight.
+ *     The latency is measured from the scheduled time, not from the time the request is actually sent.
+ *     So the time a request waits because the server or the client falls behind is included, and the percentiles are corrected for coordinated omission.
+ *     The latency from the actual send is reported as the service time.
+ * <p>
+ *     Response bodies are read and discarded. The bytes are counted on the wire, before decoding.
+ */
+@Slf4j
+final class LoadTester {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * Relative error of the percentiles is less than 1%.
+     */
+    private static final int SUB_BUCKET_BITS = 7;
+
+    private final Retrier retrier;
+    private final Metering metering;
+    private final int concurrency;
+    private final long requests; // Long.MAX_VALUE if limited only by the duration.
+    private final Duration duration; // Nullable.
+    private final double rate; // Requests per second. 0 for the closed model.
+
+    private final LatencyHistogram latency = new LatencyHistogram(SUB_BUCKET_BITS);
+    private final LatencyHistogram serviceTime = new LatencyHistogram(SUB_BUCKET_BITS);
+    private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+
+    /**
+     * @param requests Number of requests. 0 if limited only by the duration.
+     * @param duration Nullable if limited only by the number of requests.
+     * @param rate     Requests per second. 0 for the closed model.
+     */
+    LoadTester(Retrier retrier, Metering metering, int concurrency, long requests, Duration duration, double rate) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        }
+        if (requests < 0 || rate < 0 || (duration != null && (duration.isNegative() || duration.isZero()))) {
+            throw new IllegalArgumentException(String.format("Invalid load: %d requests in %s at %s requests/s", requests, duration, rate));
+        }
+        if (requests == 0 && duration == null) {
+            throw new IllegalArgumentException("Either the number of requests or the duration is required.");
+        }
+        this.retrier = retrier;
+        this.metering = metering;
+        this.concurrency = concurrency;
+        this.requests = requests == 0 ? Long.MAX_VALUE : requests;
+        this.duration = duration;
+        this.rate = rate;
+    }
+
+    /**
+     * @param request The request. Its body must be replayable.
+     * @param output  The report is written here. It is not closed.
+     * @return Exit code. 0 if all requests succeeded with 2xx status code, 1 otherwise.
+     */
+    int run(RestCli.PreparedRequest request, Writer output) throws IOException, InterruptedException {
+        log.info("Load test of {} {}: {} model, concurrency {}, {} requests, duration {}, rate {}/s.", request.plan().method(), request.plan().path(),
+                rate > 0 ? "open" : "closed", concurrency, requests == Long.MAX_VALUE ? "unlimited" : requests, duration, rate);
+        long begin = System.nanoTime();
+        long deadline = duration == null ? Long.MAX_VALUE : begin + duration.toNanos();
+        long sent = rate > 0 ? runOpen(request, begin, deadline) : runClosed(request, deadline);
+        long elapsed = System.nanoTime() - begin;
+
+        ObjectNode report = report(request, sent, elapsed);
+        output.write(OBJECT_MAPPER.writeValueAsString(report));
+        output.write(System.lineSeparator());
+        output.flush();
+
+        long succeeded = statusCodes.entrySet().stream()
+                .filter(entry -> entry.getKey() / 100 == 2)
+                .mapToLong(entry -> entry.getValue().sum())
+                .sum();
+        return succeeded == sent ? 0 : 1;
+    }
+
+    private long runClosed(RestCli.PreparedRequest request, long deadline) throws InterruptedException {
+        AtomicLong remaining = new AtomicLong(requests);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                executor.submit(() -> {
+                    while (System.nanoTime() < deadline && remaining.getAndDecrement() > 0) {
+                        long start = System.nanoTime();
+                        send(request, start, start);
+                    }
+                    return null;
+                });
+            }
+        } // Closing the executor waits for all workers.
+        return requests - Math.max(0, remaining.get());
+    }
+
+    private long runOpen(RestCli.PreparedRequest request, long begin, long deadline) throws InterruptedException {
+        double intervalNanos = 1e9 / rate;
+        Semaphore permits = new Semaphore(concurrency);
+        long count = 0;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (; count < requests; count++) {
+                long scheduled = begin + (long) (count * intervalNanos);
+                if (scheduled >= deadline) {
+                    break;
+                }
+                for (long now = System.nanoTime(); now < scheduled; now = System.nanoTime()) {
+                    LockSupport.parkNanos(scheduled - now);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+                permits.acquire(); // Waiting here delays the actual send, but not the scheduled time.
+                executor.submit(() -> {
+                    try {
+                        send(request, scheduled, System.nanoTime());
+                    } finally {
+                        permits.release();
+                    }
+                    return null;
+                });
+            }
+        } // Closing the executor waits for all requests.
+        return count;
+    }
+
+    /**
+     * @param scheduled Time the request should have been sent.
+     * @param start     Time the request is actually sent.
+     */
+    private void send(RestCli.PreparedRequest prepared, long scheduled, long start) throws InterruptedException {
+        HttpRequest httpRequest = withNewIdempotencyKey(prepared.httpRequest());
+        Metering.Timer timer = metering.start(prepared.plan().path(), prepared.plan().method(), httpRequest);
+        int statusCode;
+        try {
+            HttpResponse<InputStream> response = retrier.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream(), timer);
+            try (InputStream body = timer.body(response)) {
+                responseBytes.add(body.transferTo(OutputStream.nullOutputStream()));
+            }
+            statusCode = response.statusCode();
+        } catch (IOException e) {
+            timer.failed();
+            failures.computeIfAbsent(e.getClass().getName(), name -> new LongAdder()).increment();
+            statusCode = 0;
+        }
+        long end = System.nanoTime();
+        latency.record(end - scheduled);
+        serviceTime.record(end - start);
+        statusCodes.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+        requestBytes.add(Math.max(0, httpRequest.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L)));
+    }
+
+    /**
+     * Requests of a load test are different requests, so they must not share an Idempotency-Key.
+     */
+    private static HttpRequest withNewIdempotencyKey(HttpRequest request) {
+        if (request.headers().firstValue("Idempotency-Key").isEmpty()) {
+            return request;
+        }
+        return HttpRequest.newBuilder(request, (name, value) -> !name.equalsIgnoreCase("Idempotency-Key"))
+                .header("Idempotency-Key", UUID.randomUUID().toString())
+                .build();
+    }
+
+    private ObjectNode report(RestCli.PreparedRequest request, long sent, long elapsedNanos) {
+        ObjectNode report = OBJECT_MAPPER.createObjectNode();
+        report.put("path", request.plan().path());
+        report.put("method", request.plan().method());
+        report.put("model", rate > 0 ? "open" : "closed");
+        report.put("concurrency", concurrency);
+        if (rate > 0) {
+            report.put("targetRate", rate);
+        }
+        report.put("requests", sent);
+        report.put("elapsedMillis", elapsedNanos / 1_000_000);
+        report.put("throughput", elapsedNanos == 0 ? 0 : sent * 1e9 / elapsedNanos);
+
+        ObjectNode statusCodesNode = report.putObject("statusCodes");
+        new TreeMap<>(statusCodes).forEach((statusCode, count) -> statusCodesNode.put(String.valueOf(statusCode), count.sum()));
+        ObjectNode failuresNode = report.putObject("failures");
+        new TreeMap<>(failures).forEach((name, count) -> failuresNode.put(name, count.sum()));
+        report.put("requestBytes", requestBytes.sum());
+        report.put("responseBytes", responseBytes.sum());
+
+        percentiles(report.putObject("latencyMillis"), latency);
+        if (rate > 0) {
+            percentiles(report.putObject("serviceTimeMillis"), serviceTime);
+        }
+        return report;
+    }
+
+    private static void percentiles(ObjectNode node, LatencyHistogram histogram) {
+        node.put("mean", millis(histogram.mean()));
+        node.put("p50", millis(histogram.percentile(50)));
+        node.put("p90", millis(histogram.percentile(90)));
+        node.put("p99", millis(histogram.percentile(99)));
+        node.put("p99.9", millis(histogram.percentile(99.9)));
+        node.put("max", millis(histogram.max()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
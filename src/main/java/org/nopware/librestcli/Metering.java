@@ -0,0 +1,193 @@
+package org.nopware.librestcli;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measure HTTP exchanges and report them to the {@link MetricsListener}.
+ * <p>
+ *     Upload throughput of each request body is logged at info level.
+ */
+@Slf4j
+final class Metering {
+    private final MetricsListener listener;
+
+    Metering(MetricsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return Body publisher counting the bytes sent.
+     */
+    HttpRequest.BodyPublisher meter(HttpRequest.BodyPublisher bodyPublisher) {
+        return new CountingBodyPublisher(bodyPublisher);
+    }
+
+    /**
+     * Start measuring an exchange. Call this just before sending the request.
+     */
+    Timer start(String path, String method, HttpRequest request) {
+        return new Timer(path, method, request);
+    }
+
+    /**
+     * Measurement of an exchange. The exchange is reported once, by one of {@link #body(HttpResponse)}, {@link #completed(int, long)} or {@link #failed()}.
+     */
+    final class Timer {
+        private final String path;
+        private final String method;
+        private final HttpRequest request;
+        private final long begin = System.nanoTime();
+        private final AtomicBoolean reported = new AtomicBoolean();
+        private int retries;
+
+        private Timer(String path, String method, HttpRequest request) {
+            this.path = path;
+            this.method = method;
+            this.request = request;
+        }
+
+        void retries(int retries) {
+            this.retries = retries;
+        }
+
+        /**
+         * @return Response body reporting the exchange when it is closed.
+         */
+        InputStream body(HttpResponse<InputStream> response) {
+            return body(response.statusCode(), response.body());
+        }
+
+        /**
+         * @return Response body reporting the exchange when it is closed.
+         */
+        InputStream body(int statusCode, InputStream body) {
+            return new CountingInputStream(body, (bytes) -> completed(statusCode, bytes));
+        }
+
+        void completed(int statusCode, long responseBytes) {
+            report(statusCode, responseBytes);
+        }
+
+        void failed() {
+            report(0, 0);
+        }
+
+        private void report(int statusCode, long responseBytes) {
+            if (reported.compareAndSet(false, true)) {
+                long requestBytes = request.bodyPublisher()
+                        .map((publisher) -> publisher instanceof CountingBodyPublisher counting ? counting.bytes.get() : Math.max(0, publisher.contentLength()))
+                        .orElse(0L);
+                listener.onExchange(new MetricsListener.Exchange(path, method, statusCode, Duration.ofNanos(System.nanoTime() - begin), requestBytes, responseBytes, retries));
+            }
+        }
+    }
+
+    private interface CloseListener {
+        void closed(long bytes);
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final CloseListener closeListener;
+        private long bytes;
+        private boolean closed;
+
+        CountingInputStream(InputStream in, CloseListener closeListener) {
+            super(in);
+            this.closeListener = closeListener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            bytes += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    closeListener.closed(bytes);
+                }
+            }
+        }
+    }
+
+    private static final class CountingBodyPublisher implements HttpRequest.BodyPublisher {
+        private final HttpRequest.BodyPublisher delegate;
+        private final AtomicLong bytes = new AtomicLong();
+
+        CountingBodyPublisher(HttpRequest.BodyPublisher delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            long begin = System.nanoTime();
+            delegate.subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscriber.onSubscribe(subscription);
+                }
+
+                @Override
+                public void onNext(ByteBuffer item) {
+                    bytes.addAndGet(item.remaining());
+                    subscriber.onNext(item);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    subscriber.onError(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    long sent = bytes.get();
+                    if (sent > 0) {
+                        double seconds = Math.max(1, System.nanoTime() - begin) / 1e9;
+                        log.info("Sent {} bytes in {} ms ({} MiB/s).", sent, String.format("%.1f", seconds * 1000), String.format("%.2f", sent / seconds / (1024 * 1024)));
+                    }
+                    subscriber.onComplete();
+                }
+            });
+        }
+    }
+}
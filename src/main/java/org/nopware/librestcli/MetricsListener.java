@@ -0,0 +1,36 @@
+package org.nopware.librestcli;
+
+import java.time.Duration;
+
+/**
+ * Listener of the metrics of HTTP exchanges.
+ * <p>
+ *     It is called once per exchange when the response body is consumed, or when the exchange fails.
+ *     It may be called concurrently by the threads of the batch and the asynchronous execution, so it must be thread-safe and quick.
+ * <p>
+ *     {@link MetricsRegistry} is the default implementation.
+ */
+@FunctionalInterface
+public interface MetricsListener {
+    /**
+     * Listener ignoring all exchanges.
+     */
+    MetricsListener NONE = (exchange) -> {
+    };
+
+    void onExchange(Exchange exchange);
+
+    /**
+     * Metrics of an HTTP exchange.
+     *
+     * @param path          Path template. For example, {@literal /repos/{owner}/{repo}/issues}.
+     * @param method        One of get, head, post, put, delete, options, trace, patch.
+     * @param statusCode    HTTP status code. 0 if no response is received.
+     * @param latency       Time from sending the request to consuming the response body.
+     * @param requestBytes  Size of the request body sent.
+     * @param responseBytes Size of the response body received.
+     * @param retries       Number of retries before this exchange.
+     */
+    record Exchange(String path, String method, int statusCode, Duration latency, long requestBytes, long responseBytes, int retries) {
+    }
+}
@@ -0,0 +1,172 @@
+package org.nopware.librestcli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory registry of the metrics per operation, i.e. (path template, method).
+ * <p>
+ *     Recording is lock-free. Counters are {@link LongAdder}s and latencies are recorded in log-linear histograms.
+ *     Read the metrics by {@link #snapshot()}, or dump them as JSON by {@link #writeJson(Writer)} or {@link #dumpAtExit(Path)}.
+ */
+@Slf4j
+public final class MetricsRegistry implements MetricsListener {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private static final class DefaultHolder {
+        private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+    }
+
+    private record OperationKey(String path, String method) {
+    }
+
+    private static final class OperationMetrics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+        final LongAdder requestBytes = new LongAdder();
+        final LongAdder responseBytes = new LongAdder();
+        final LongAdder retries = new LongAdder();
+    }
+
+    private final Map<OperationKey, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+    public MetricsRegistry() {
+    }
+
+    /**
+     * The registry used by RestCli if no {@link MetricsListener} is specified.
+     *
+     * @return Process-wide MetricsRegistry.
+     */
+    public static MetricsRegistry defaultRegistry() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    @Override
+    public void onExchange(@NonNull Exchange exchange) {
+        OperationKey key = new OperationKey(exchange.path(), exchange.method());
+        OperationMetrics metrics = operations.get(key);
+        if (metrics == null) {
+            metrics = operations.computeIfAbsent(key, (_key) -> new OperationMetrics());
+        }
+
+        metrics.latency.record(exchange.latency().toNanos());
+        LongAdder statusCodeCount = metrics.statusCodes.get(exchange.statusCode());
+        if (statusCodeCount == null) {
+            statusCodeCount = metrics.statusCodes.computeIfAbsent(exchange.statusCode(), (_statusCode) -> new LongAdder());
+        }
+        statusCodeCount.increment();
+        metrics.requestBytes.add(Math.max(0, exchange.requestBytes()));
+        metrics.responseBytes.add(Math.max(0, exchange.responseBytes()));
+        metrics.retries.add(exchange.retries());
+    }
+
+    /**
+     * Snapshot of the metrics of an operation.
+     *
+     * @param path          Path template.
+     * @param method        Method.
+     * @param count         Number of exchanges.
+     * @param statusCodes   Map status code -> count. Status code 0 is for the exchanges without response.
+     * @param requestBytes  Total size of the request bodies.
+     * @param responseBytes Total size of the response bodies.
+     * @param retries       Total number of retries.
+     * @param meanLatency   Mean latency.
+     * @param p50Latency    Median latency.
+     * @param p90Latency    90th percentile latency.
+     * @param p99Latency    99th percentile latency.
+     * @param maxLatency    Max latency.
+     */
+    public record OperationSnapshot(String path, String method, long count, Map<Integer, Long> statusCodes,
+                                    long requestBytes, long responseBytes, long retries,
+                                    Duration meanLatency, Duration p50Latency, Duration p90Latency, Duration p99Latency, Duration maxLatency) {
+    }
+
+    /**
+     * @return Snapshots ordered by path and method.
+     */
+    public List<OperationSnapshot> snapshot() {
+        return operations.entrySet().stream()
+                .map(entry -> snapshot(entry.getKey(), entry.getValue()))
+                .sorted(Comparator.comparing(OperationSnapshot::path).thenComparing(OperationSnapshot::method))
+                .toList();
+    }
+
+    public Optional<OperationSnapshot> snapshot(@NonNull String path, @NonNull String method) {
+        OperationKey key = new OperationKey(path, method);
+        return Optional.ofNullable(operations.get(key)).map(metrics -> snapshot(key, metrics));
+    }
+
+    private static OperationSnapshot snapshot(OperationKey key, OperationMetrics metrics) {
+        Map<Integer, Long> statusCodes = new TreeMap<>();
+        metrics.statusCodes.forEach((statusCode, count) -> statusCodes.put(statusCode, count.sum()));
+        LatencyHistogram latency = metrics.latency;
+        return new OperationSnapshot(key.path(), key.method(), latency.count(), statusCodes,
+                metrics.requestBytes.sum(), metrics.responseBytes.sum(), metrics.retries.sum(),
+                Duration.ofNanos(latency.mean()), Duration.ofNanos(latency.percentile(50)), Duration.ofNanos(latency.percentile(90)),
+                Duration.ofNanos(latency.percentile(99)), Duration.ofNanos(latency.max()));
+    }
+
+    public void clear() {
+        operations.clear();
+    }
+
+    /**
+     * Write the snapshot as JSON. Latencies are in milliseconds.
+     */
+    public void writeJson(@NonNull Writer writer) throws IOException {
+        ArrayNode array = OBJECT_MAPPER.createArrayNode();
+        for (OperationSnapshot snapshot : snapshot()) {
+            ObjectNode node = array.addObject();
+            node.put("path", snapshot.path());
+            node.put("method", snapshot.method());
+            node.put("count", snapshot.count());
+            ObjectNode statusCodes = node.putObject("statusCodes");
+            snapshot.statusCodes().forEach((statusCode, count) -> statusCodes.put(statusCode.toString(), count));
+            node.put("requestBytes", snapshot.requestBytes());
+            node.put("responseBytes", snapshot.responseBytes());
+            node.put("retries", snapshot.retries());
+            ObjectNode latency = node.putObject("latencyMillis");
+            latency.put("mean", millis(snapshot.meanLatency()));
+            latency.put("p50", millis(snapshot.p50Latency()));
+            latency.put("p90", millis(snapshot.p90Latency()));
+            latency.put("p99", millis(snapshot.p99Latency()));
+            latency.put("max", millis(snapshot.maxLatency()));
+        }
+        OBJECT_MAPPER.writeValue(writer, array);
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1_000_000.0;
+    }
+
+    /**
+     * Write the snapshot as JSON to the file when the JVM exits.
+     */
+    public void dumpAtExit(@NonNull Path file) {
+        Runtime.getRuntime().addShutdownHook(Thread.ofPlatform().unstarted(() -> {
+            try (Writer writer = Files.newBufferedWriter(file)) {
+                writeJson(writer);
+            } catch (IOException e) {
+                log.warn("Failed to dump metrics: {}", file, e);
+            }
+        }));
+    }
+}
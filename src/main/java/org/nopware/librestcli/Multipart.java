@@ -0,0 +1,75 @@
+package org.nopware.librestcli;
+
+import java.io.FileNotFoundException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Streaming {@literal multipart/form-data} body. See <a href="https://www.rfc-editor.org/rfc/rfc7578">RFC 7578</a>.
+ * <p>
+ *     The body is a concatenation of publishers. Part headers are small strings, and file parts are read from the disk while the body is sent.
+ *     So a file is never held in memory, and the content length is known if all the files exist.
+ */
+final class Multipart {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final String boundary = newBoundary();
+    private final List<HttpRequest.BodyPublisher> publishers = new ArrayList<>();
+
+    private static String newBoundary() {
+        byte[] bytes = new byte[12];
+        RANDOM.nextBytes(bytes);
+        return "----librestcli" + HexFormat.of().formatHex(bytes);
+    }
+
+    String contentType() {
+        return ApiModel.RequestBodyModel.MULTIPART_FORM_DATA + "; boundary=" + boundary;
+    }
+
+    Multipart text(String name, String value) {
+        publishers.add(HttpRequest.BodyPublishers.ofString(
+                partHeader(String.format("form-data; name=\"%s\"", escape(name)), "text/plain; charset=UTF-8") + value,
+                StandardCharsets.UTF_8));
+        return this;
+    }
+
+    /**
+     * @throws FileNotFoundException If the file does not exist.
+     */
+    Multipart file(String name, Path file) throws FileNotFoundException {
+        HttpRequest.BodyPublisher filePublisher = HttpRequest.BodyPublishers.ofFile(file);
+        publishers.add(HttpRequest.BodyPublishers.ofString(
+                partHeader(String.format("form-data; name=\"%s\"; filename=\"%s\"", escape(name), escape(file.getFileName().toString())), "application/octet-stream"),
+                StandardCharsets.UTF_8));
+        publishers.add(filePublisher);
+        return this;
+    }
+
+    HttpRequest.BodyPublisher bodyPublisher() {
+        List<HttpRequest.BodyPublisher> body = new ArrayList<>(publishers);
+        body.add(HttpRequest.BodyPublishers.ofString((publishers.isEmpty() ? "--" : "\r\n--") + boundary + "--\r\n", StandardCharsets.UTF_8));
+        return HttpRequest.BodyPublishers.concat(body.toArray(HttpRequest.BodyPublisher[]::new));
+    }
+
+    /**
+     * @return Delimiter and headers of a part. The delimiter of a later part ends the previous part.
+     */
+    private String partHeader(String contentDisposition, String contentType) {
+        return (publishers.isEmpty() ? "--" : "\r\n--") + boundary + "\r\n"
+                + "Content-Disposition: " + contentDisposition + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "\r\n";
+    }
+
+    /**
+     * Percent-encode quotes and line breaks in a quoted string, as browsers do.
+     */
+    private static String escape(String string) {
+        return string.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+    }
+}
@@ -0,0 +1,321 @@
+package org.nopware.librestcli;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Model.OptionSpec;
+
+import java.io.FileNotFoundException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * Precompiled plan to build a request for an operation.
+ * <p>
+ *     OperationPlan is compiled once per (path, method) when the options of the method sub-command are built.
+ *     It holds the path template split into literal segments and parameter slots, the query and header parameter slots bound to their {@link OptionSpec}s,
+ *     the parts of {@literal multipart/form-data} body bound to their options, and the base URL of the server. So building a request does not look up the specification, compile regular expressions nor parse URI strings.
+ * <p>
+ *     OperationPlan is immutable.
+ */
+final class OperationPlan {
+    /**
+     * Parameter bound to its option.
+     *
+     * @param name       Name of the parameter.
+     * @param optionSpec Option of the method sub-command. Null if the parameter is not defined in the specification.
+     */
+    record Slot(String name, OptionSpec optionSpec) {
+    }
+
+    /**
+     * Part of {@literal multipart/form-data} body bound to its option.
+     */
+    record Part(ApiModel.PartModel model, OptionSpec optionSpec) {
+    }
+
+    private final String path;
+    private final String method;
+    private final String scheme; // For example, "https://". Empty if the server URL has no scheme.
+    private final String authorityAndBasePath; // For example, "api.github.com". Null if no server is specified.
+    private final String[] literals; // Path template is literals[0] + slot[0] + literals[1] + ... + literals[n].
+    private final Slot[] pathSlots;
+    private final Slot[] querySlots;
+    private final Slot[] headerSlots;
+    private final Part[] parts;
+    private final String contentType; // Content type of a body from the request body options. Null if it is not determined by the specification.
+    private final boolean hasRequestBody;
+
+    private OperationPlan(String path, String method, String serverUrl, String[] literals, Slot[] pathSlots, Slot[] querySlots, Slot[] headerSlots, Part[] parts, String contentType, boolean hasRequestBody) {
+        this.path = path;
+        this.method = method;
+        int schemeEnd = serverUrl == null ? -1 : serverUrl.indexOf("://");
+        this.scheme = schemeEnd < 0 ? "" : serverUrl.substring(0, schemeEnd + 3);
+        this.authorityAndBasePath = schemeEnd < 0 ? serverUrl : serverUrl.substring(schemeEnd + 3);
+        this.literals = literals;
+        this.pathSlots = pathSlots;
+        this.querySlots = querySlots;
+        this.headerSlots = headerSlots;
+        this.parts = parts;
+        this.contentType = contentType;
+        this.hasRequestBody = hasRequestBody;
+    }
+
+    /**
+     * Compile the plan.
+     *
+     * @param serverUrl URL of the server. Trailing slash is removed. Nullable.
+     * @param path      Path template. For example, {@literal /repos/{owner}/{repo}/issues}.
+     * @param operation Operation model.
+     * @param options   Map parameter -> option of the method sub-command.
+     */
+    static OperationPlan compile(String serverUrl, String path, ApiModel.OperationModel operation, Map<ApiModel.ParameterModel, OptionSpec> options) {
+        return compile(serverUrl, path, operation, options, Map.of());
+    }
+
+    /**
+     * Compile the plan.
+     *
+     * @param serverUrl   URL of the server. Trailing slash is removed. Nullable.
+     * @param path        Path template. For example, {@literal /repos/{owner}/{repo}/issues}.
+     * @param operation   Operation model.
+     * @param options     Map parameter -> option of the method sub-command.
+     * @param partOptions Map part of {@literal multipart/form-data} body -> option of the method sub-command.
+     */
+    static OperationPlan compile(String serverUrl, String path, ApiModel.OperationModel operation, Map<ApiModel.ParameterModel, OptionSpec> options, Map<ApiModel.PartModel, OptionSpec> partOptions) {
+        List<String> literals = new ArrayList<>();
+        List<Slot> pathSlots = new ArrayList<>();
+
+        int literalBegin = 0;
+        int open;
+        while ((open = path.indexOf('{', literalBegin)) >= 0) {
+            int close = path.indexOf('}', open);
+            if (close < 0) {
+                break;
+            }
+            String name = path.substring(open + 1, close);
+            literals.add(path.substring(literalBegin, open));
+            pathSlots.add(new Slot(name, option(options, name, "path")));
+            literalBegin = close + 1;
+        }
+        literals.add(path.substring(literalBegin));
+
+        String baseUrl = serverUrl != null && serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+
+        return new OperationPlan(path, operation.method(), baseUrl,
+                literals.toArray(String[]::new),
+                pathSlots.toArray(Slot[]::new),
+                slots(options, "query"),
+                slots(options, "header"),
+                partOptions.entrySet().stream().map(entry -> new Part(entry.getKey(), entry.getValue())).toArray(Part[]::new),
+                contentType(operation.requestBody()),
+                operation.requestBody() != null);
+    }
+
+    /**
+     * Raw bodies are sent as {@literal application/octet-stream} if it is the only media type of the operation. Otherwise, the content type is not sent as before.
+     */
+    private static String contentType(ApiModel.RequestBodyModel requestBody) {
+        if (requestBody != null && requestBody.mediaTypes().equals(List.of(ApiModel.RequestBodyModel.OCTET_STREAM))) {
+            return ApiModel.RequestBodyModel.OCTET_STREAM;
+        }
+        return null;
+    }
+
+    private static OptionSpec option(Map<ApiModel.ParameterModel, OptionSpec> options, String name, String location) {
+        return options.entrySet().stream()
+                .filter(entry -> entry.getKey().name().equals(name) && entry.getKey().location().equals(location))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static Slot[] slots(Map<ApiModel.ParameterModel, OptionSpec> options, String location) {
+        return options.entrySet().stream()
+                .filter(entry -> entry.getKey().location().equals(location))
+                .map(entry -> new Slot(entry.getKey().name(), entry.getValue()))
+                .toArray(Slot[]::new);
+    }
+
+    String path() {
+        return path;
+    }
+
+    String method() {
+        return method;
+    }
+
+    /**
+     * Build the URI of the request.
+     *
+     * @param methodCommand Parse result of the method sub-command.
+     * @param userInfo      User information inserted into the authority. Nullable.
+     * @return URI for the request.
+     * @throws CommandLine.ParameterException If a path parameter is missing.
+     */
+    URI uri(CommandLine.ParseResult methodCommand, String userInfo) {
+        if (authorityAndBasePath == null) {
+            throw new IllegalStateException("No server specified in OpenAPI spec.");
+        }
+
+        StringBuilder uri = new StringBuilder(128);
+        uri.append(scheme);
+        if (userInfo != null) {
+            uri.append(userInfo).append('@');
+        }
+        uri.append(authorityAndBasePath);
+
+        uri.append(literals[0]);
+        for (int i = 0; i < pathSlots.length; i++) {
+            Object value = value(methodCommand, pathSlots[i]);
+            if (value == null) { // All path parameters are required. picocli rejects missing required options, so it happens only if the parameter is not defined.
+                throw new CommandLine.ParameterException(methodCommand.commandSpec().commandLine(),
+                        String.format("Missing path parameter: %s", pathSlots[i].name()));
+            }
+            appendEncoded(uri, value);
+            uri.append(literals[i + 1]);
+        }
+
+        char separator = '?';
+        for (Slot querySlot : querySlots) {
+            Object value = value(methodCommand, querySlot);
+            if (value == null) {
+                continue;
+            }
+            // The default "form" style of OpenAPI explodes arrays: name=a&name=b.
+            for (Object element : value instanceof Collection<?> collection ? collection : List.of(value)) {
+                uri.append(separator);
+                appendEncoded(uri, querySlot.name());
+                uri.append('=');
+                appendEncoded(uri, element);
+                separator = '&';
+            }
+        }
+
+        return URI.create(uri.toString());
+    }
+
+    /**
+     * @return Content type of a body given by the request body options. Null if unknown.
+     */
+    String contentType() {
+        return contentType;
+    }
+
+    /**
+     * @return True if the specification declares a request body of the operation.
+     */
+    boolean hasRequestBody() {
+        return hasRequestBody;
+    }
+
+    /**
+     * Build the {@literal multipart/form-data} body from the part options. The parts are in the order of the schema.
+     *
+     * @param methodCommand Parse result of the method sub-command.
+     * @return Empty if no part option is given.
+     * @throws FileNotFoundException          If a file of a binary part does not exist.
+     * @throws CommandLine.ParameterException If a required part is missing.
+     */
+    Optional<Multipart> multipart(CommandLine.ParseResult methodCommand) throws FileNotFoundException {
+        if (Arrays.stream(parts).noneMatch(part -> methodCommand.hasMatchedOption(part.optionSpec()))) {
+            return Optional.empty();
+        }
+
+        Multipart multipart = new Multipart();
+        for (Part part : parts) {
+            if (!methodCommand.hasMatchedOption(part.optionSpec())) {
+                if (part.model().required()) {
+                    throw new CommandLine.ParameterException(methodCommand.commandSpec().commandLine(),
+                            String.format("Missing part: %s", part.optionSpec().longestName()));
+                }
+                continue;
+            }
+            Object value = part.optionSpec().getValue();
+            for (Object element : value instanceof Collection<?> collection ? collection : List.of(value)) {
+                if (part.model().binary()) {
+                    multipart.file(part.model().name(), Session.path(element.toString()));
+                } else {
+                    multipart.text(part.model().name(), element.toString());
+                }
+            }
+        }
+        return Optional.of(multipart);
+    }
+
+    /**
+     * Pass the resolved header parameters to the consumer.
+     */
+    void forEachHeader(CommandLine.ParseResult methodCommand, BiConsumer<String, String> consumer) {
+        for (Slot headerSlot : headerSlots) {
+            Object value = value(methodCommand, headerSlot);
+            if (value != null) {
+                consumer.accept(headerSlot.name(), stringValue(value));
+            }
+        }
+    }
+
+    private static Object value(CommandLine.ParseResult methodCommand, Slot slot) {
+        OptionSpec optionSpec = slot.optionSpec();
+        if (optionSpec == null || !methodCommand.hasMatchedOption(optionSpec)) {
+            return null;
+        }
+        return optionSpec.getValue();
+    }
+
+    /**
+     * Array values are joined with comma. It is the default "simple" style of OpenAPI for path and header parameters.
+     */
+    private static String stringValue(Object value) {
+        if (value instanceof Collection<?> collection) {
+            StringBuilder joined = new StringBuilder();
+            for (Object element : collection) {
+                if (!joined.isEmpty()) {
+                    joined.append(',');
+                }
+                joined.append(element);
+            }
+            return joined.toString();
+        }
+        return value.toString();
+    }
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Percent-encode except unreserved characters of RFC 3986. Elements of an array value are encoded one by one and joined with comma.
+     */
+    static void appendEncoded(StringBuilder builder, Object value) {
+        if (value instanceof Collection<?> collection) {
+            boolean first = true;
+            for (Object element : collection) {
+                if (!first) {
+                    builder.append(',');
+                }
+                appendEncoded(builder, element);
+                first = false;
+            }
+            return;
+        }
+        String string = value.toString();
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_' || c == '~') {
+                builder.append(c);
+            } else if (c < 0x80) {
+                builder.append('%').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            } else {
+                int end = Character.isHighSurrogate(c) && i + 1 < string.length() ? i + 2 : i + 1;
+                for (byte b : string.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                    builder.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+                }
+                i = end - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package org.nopware.librestcli;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Follow the pages of a paginated response and print the items as NDJSON.
+ * <p>
+ *     Pages are linked by the Link header (<a href="https://www.rfc-editor.org/rfc/rfc8288">RFC 8288</a>) like GitHub API:
+ *     <pre>{@literal Link: <https://api.github.com/repositories/1/issues?page=2>; rel="next", <https://api.github.com/repositories/1/issues?page=5>; rel="last"}</pre>
+ *     If a page is a JSON array, each element is printed as a line. Otherwise, the page is printed as a line.
+ *     Items are copied token by token from the response, so neither a page nor the whole result is held in memory.
+ * <p>
+ *     If the links "next" and "last" differ only in an integer query parameter, the remaining pages are known.
+ *     They are fetched concurrently up to the parallelism, and printed in order.
+ *     Otherwise, the link "next" is followed page by page.
+ * <p>
+ *     Authorization, Cookie, the header parameters and the appended headers are sent only to the origin of the first request.
+ */
+@Slf4j
+class Paginator {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    // <uri-reference>; param1; param2=value, ...
+    private static final Pattern LINK_VALUE_PATTERN = Pattern.compile("<([^>]*)>([^<]*)");
+    private static final Pattern REL_PATTERN = Pattern.compile(";\\s*rel\\s*=\\s*(?:\"([^\"]*)\"|([^\\s;,]+))", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Headers of the first request sent to a link to another origin. Other headers may carry credentials.
+     */
+    private static final Set<String> CROSS_ORIGIN_HEADERS = Set.of("accept", "accept-encoding", "user-agent");
+
+    /**
+     * Response of a page. The body is metered and decoded.
+     */
+    private record Page(HttpResponse<InputStream> response, InputStream body) {
+    }
+
+    private final Retrier retrier;
+    private final int parallelism;
+    private final Metering metering;
+    private final Compression compression;
+
+    Paginator(Retrier retrier, int parallelism, Metering metering, Compression compression) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.retrier = retrier;
+        this.parallelism = parallelism;
+        this.metering = metering;
+        this.compression = compression;
+    }
+
+    /**
+     * @param first  Request of the first page.
+     * @param output NDJSON is written here. It is not closed.
+     * @return Exit code. 0 if all pages are received with 2xx status code, 1 otherwise.
+     */
+    int run(RestCli.PreparedRequest first, OutputStream output) throws IOException, InterruptedException {
+        OperationPlan plan = first.plan();
+        HttpRequest firstRequest = first.httpRequest();
+        Statistics statistics = new Statistics();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output)) {
+            generator.setRootValueSeparator(null); // Lines are separated by writeRaw('\n').
+
+            Page page = send(plan, firstRequest);
+            if (!emit(page, generator, statistics)) {
+                return 1;
+            }
+
+            Map<String, URI> links = links(page.response());
+            URI next = links.get("next");
+            URI last = links.get("last");
+            PageRange pageRange = next != null && last != null ? PageRange.of(next, last) : null;
+
+            boolean succeeded = pageRange != null
+                    ? fetchRange(plan, firstRequest, pageRange, generator, statistics)
+                    : follow(plan, firstRequest, next, generator, statistics);
+
+            log.info("Pagination: {} pages, {} items.", statistics.pages, statistics.items);
+            return succeeded ? 0 : 1;
+        }
+    }
+
+    /**
+     * Follow the link "next" page by page.
+     */
+    private boolean follow(OperationPlan plan, HttpRequest template, URI next, JsonGenerator generator, Statistics statistics) throws IOException, InterruptedException {
+        while (next != null) {
+            Page page = send(plan, pageRequest(template, next));
+            if (!emit(page, generator, statistics)) {
+                return false;
+            }
+            next = links(page.response()).get("next");
+        }
+        return true;
+    }
+
+    private Page send(OperationPlan plan, HttpRequest request) throws IOException, InterruptedException {
+        Metering.Timer timer = metering.start(plan.path(), plan.method(), request);
+        try {
+            HttpResponse<InputStream> response = retrier.send(request, HttpResponse.BodyHandlers.ofInputStream(), timer);
+            return new Page(response, compression.decode(response.headers(), timer.body(response)));
+        } catch (IOException | InterruptedException e) {
+            timer.failed();
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Page> sendAsync(OperationPlan plan, HttpRequest request) {
+        Metering.Timer timer = metering.start(plan.path(), plan.method(), request);
+        return retrier.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream(), timer)
+                .whenComplete((response, throwable) -> {
+                    if (throwable != null) {
+                        timer.failed();
+                    }
+                })
+                .thenApply((response) -> new Page(response, compression.decode(response.headers(), timer.body(response))));
+    }
+
+    /**
+     * Fetch the known pages concurrently, and print them in order.
+     * At most {@link #parallelism} pages are in flight or waiting to be printed.
+     * The body of a waiting page is not read until it is printed, so HTTP flow control keeps the memory flat.
+     */
+    private boolean fetchRange(OperationPlan plan, HttpRequest template, PageRange pageRange, JsonGenerator generator, Statistics statistics) throws IOException, InterruptedException {
+        ArrayDeque<CompletableFuture<Page>> window = new ArrayDeque<>(parallelism);
+        long pageNumber = pageRange.first();
+        try {
+            while (pageNumber <= pageRange.last() || !window.isEmpty()) {
+                while (window.size() < parallelism && pageNumber <= pageRange.last()) {
+                    window.add(sendAsync(plan, pageRequest(template, pageRange.uri(pageNumber))));
+                    pageNumber++;
+                }
+
+                Page page;
+                try {
+                    page = window.poll().get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+                }
+                if (!emit(page, generator, statistics)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            // Release the connections of the pages which will not be printed.
+            // Cancelling the futures would not abort the exchanges, so close the bodies when the pages arrive.
+            window.forEach(future -> future.whenComplete((page, throwable) -> {
+                if (page != null) {
+                    closeQuietly(page.body());
+                }
+            }));
+        }
+    }
+
+    private static HttpRequest pageRequest(HttpRequest template, URI uri) {
+        boolean sameOrigin = sameOrigin(uri, template.uri());
+        return HttpRequest.newBuilder(template, (name, value) -> sameOrigin || CROSS_ORIGIN_HEADERS.contains(name.toLowerCase(Locale.ROOT)))
+                .uri(sameOrigin ? withUserInfo(uri, template.uri()) : uri)
+                .GET()
+                .build();
+    }
+
+    private static boolean sameOrigin(URI uri, URI original) {
+        return uri.getScheme() != null && uri.getScheme().equalsIgnoreCase(original.getScheme())
+                && uri.getHost() != null && uri.getHost().equalsIgnoreCase(original.getHost())
+                && port(uri) == port(original);
+    }
+
+    private static int port(URI uri) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return uri.getScheme().equalsIgnoreCase("https") ? 443 : 80;
+    }
+
+    /**
+     * Links do not have user information. Keep the user information of the first request. The link must be to the same origin.
+     */
+    private static URI withUserInfo(URI uri, URI original) {
+        String userInfo = original.getRawUserInfo();
+        if (userInfo == null || uri.getRawUserInfo() != null) {
+            return uri;
+        }
+        String string = uri.toString();
+        int authorityBegin = string.indexOf("://") + 3;
+        return URI.create(string.substring(0, authorityBegin) + userInfo + "@" + string.substring(authorityBegin));
+    }
+
+    /**
+     * Print the items of the page.
+     *
+     * @return False if the status code is not 2xx.
+     */
+    private static boolean emit(Page page, JsonGenerator generator, Statistics statistics) throws IOException {
+        HttpResponse<InputStream> response = page.response();
+        try (InputStream body = page.body()) {
+            log.info("Page: {} {}", response.statusCode(), response.uri());
+            if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                System.err.printf("Failed to get the page %s: HTTP status code %d%n", response.uri(), response.statusCode());
+                return false;
+            }
+
+            try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        generator.copyCurrentStructure(parser);
+                        generator.writeRaw('\n');
+                        statistics.items++;
+                    }
+                } else if (token != null) {
+                    generator.copyCurrentStructure(parser);
+                    generator.writeRaw('\n');
+                    statistics.items++;
+                }
+            }
+            generator.flush();
+            statistics.pages++;
+            return true;
+        }
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            log.debug("Failed to close the response body.", e);
+        }
+    }
+
+    /**
+     * @return Map relation type -> URI. Relative URIs are resolved against the URI of the response.
+     */
+    static Map<String, URI> links(HttpResponse<?> response) {
+        Map<String, URI> links = new HashMap<>();
+        for (String header : response.headers().allValues("Link")) {
+            links.putAll(parseLinks(header, response.uri()));
+        }
+        return links;
+    }
+
+    static Map<String, URI> parseLinks(String header, URI base) {
+        Map<String, URI> links = new LinkedHashMap<>();
+        Matcher linkValue = LINK_VALUE_PATTERN.matcher(header);
+        while (linkValue.find()) {
+            Matcher rel = REL_PATTERN.matcher(linkValue.group(2));
+            if (!rel.find()) {
+                continue;
+            }
+            URI uri = base.resolve(linkValue.group(1).trim());
+            String relationTypes = rel.group(1) != null ? rel.group(1) : rel.group(2);
+            for (String relationType : relationTypes.trim().split("\\s+")) {
+                links.putIfAbsent(relationType.toLowerCase(), uri);
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Pages from the link "next" to the link "last".
+     *
+     * @param template      URI of the link "next".
+     * @param parameterName Name of the query parameter of the page number. Raw (percent-encoded).
+     * @param first         Page number of the link "next".
+     * @param last          Page number of the link "last".
+     */
+    record PageRange(URI template, String parameterName, long first, long last) {
+        /**
+         * @return Null if the links do not differ only in an integer query parameter.
+         */
+        static PageRange of(URI next, URI last) {
+            if (!Objects.equals(next.getRawAuthority(), last.getRawAuthority()) || !Objects.equals(next.getRawPath(), last.getRawPath())) {
+                return null;
+            }
+            Map<String, String> nextQuery = query(next);
+            Map<String, String> lastQuery = query(last);
+            if (nextQuery == null || lastQuery == null || !nextQuery.keySet().equals(lastQuery.keySet())) {
+                return null;
+            }
+
+            PageRange pageRange = null;
+            for (Map.Entry<String, String> entry : nextQuery.entrySet()) {
+                String lastValue = lastQuery.get(entry.getKey());
+                if (entry.getValue().equals(lastValue)) {
+                    continue;
+                }
+                Long firstPage = parsePage(entry.getValue());
+                Long lastPage = parsePage(lastValue);
+                if (pageRange != null || firstPage == null || lastPage == null || firstPage > lastPage) {
+                    return null;
+                }
+                pageRange = new PageRange(next, entry.getKey(), firstPage, lastPage);
+            }
+            return pageRange;
+        }
+
+        URI uri(long page) {
+            StringBuilder query = new StringBuilder();
+            for (String parameter : template.getRawQuery().split("&")) {
+                if (!query.isEmpty()) {
+                    query.append('&');
+                }
+                int equal = parameter.indexOf('=');
+                String name = equal < 0 ? parameter : parameter.substring(0, equal);
+                query.append(name.equals(parameterName) ? name + "=" + page : parameter);
+            }
+            String string = template.toString();
+            int queryBegin = string.indexOf('?');
+            int fragmentBegin = string.indexOf('#', queryBegin);
+            return URI.create(string.substring(0, queryBegin + 1) + query + (fragmentBegin < 0 ? "" : string.substring(fragmentBegin)));
+        }
+
+        /**
+         * @return Map name -> value. Null if a parameter is repeated.
+         */
+        private static Map<String, String> query(URI uri) {
+            Map<String, String> query = new HashMap<>();
+            if (uri.getRawQuery() == null) {
+                return query;
+            }
+            for (String parameter : uri.getRawQuery().split("&")) {
+                int equal = parameter.indexOf('=');
+                String name = equal < 0 ? parameter : parameter.substring(0, equal);
+                String value = equal < 0 ? "" : parameter.substring(equal + 1);
+                if (query.put(name, value) != null) {
+                    return null;
+                }
+            }
+            return query;
+        }
+
+        private static Long parsePage(String value) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final class Statistics {
+        long pages;
+        long items;
+    }
+}
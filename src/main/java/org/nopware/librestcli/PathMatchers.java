@@ -2,10 +2,9 @@ package org.nopware.librestcli;
 
 import lombok.NonNull;
 
-import java.nio.file.FileSystems;
-import java.nio.file.Paths;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 class PathMatchers {
 
@@ -38,19 +37,125 @@ class PathMatchers {
     /**
      * PathMatcher by glob pattern.
      * <p>
-     *     It uses {@link java.nio.file.FileSystem#getPathMatcher(String)}.
+     *     The syntax is the same as {@link java.nio.file.FileSystem#getPathMatcher(String)} on Unix-like platforms.
+     *     The pattern is compiled to a regular expression, so matching does not depend on the platform file system.
      */
     static final class GlobMatcher implements RestCli.PathMatcher {
-        private final java.nio.file.PathMatcher pathMatcher;
+        private final Pattern pattern;
 
         GlobMatcher(String globPattern) {
-            this.pathMatcher = FileSystems.getDefault().getPathMatcher(String.format("glob:%s", globPattern)); // It may not work on Windows.
+            this.pattern = Pattern.compile(globToRegex(globPattern));
         }
 
         @Override
         public boolean matches(@NonNull String path) {
-            return this.pathMatcher.matches(Paths.get(path));
+            return this.pattern.matcher(path).matches();
+        }
+    }
+
+    private static final String REGEX_META_CHARS = ".^$+{[]|()";
+    private static final String GLOB_META_CHARS = "\\*?[{";
+
+    /**
+     * Convert glob pattern to regular expression.
+     * <p>
+     *     {@code *} matches any characters except '/', {@code **} matches any characters, {@code ?} matches a character except '/',
+     *     {@code [...]} is a bracket expression ({@code [!...]} negates), {@code {a,b}} is a group of alternatives, and {@code \} escapes a character.
+     *
+     * @throws java.util.regex.PatternSyntaxException If the pattern is invalid.
+     */
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder("^");
+        boolean inGroup = false;
+
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i++);
+            switch (c) {
+                case '\\' -> {
+                    if (i == glob.length()) {
+                        throw new PatternSyntaxException("No character to escape", glob, i - 1);
+                    }
+                    char next = glob.charAt(i++);
+                    if (GLOB_META_CHARS.indexOf(next) >= 0 || REGEX_META_CHARS.indexOf(next) >= 0) {
+                        regex.append('\\');
+                    }
+                    regex.append(next);
+                }
+                case '/' -> regex.append(c);
+                case '[' -> {
+                    regex.append("[[^/]&&[");
+                    if (i < glob.length() && glob.charAt(i) == '^') {
+                        regex.append("\\^"); // Escape the regex negation char if it appears.
+                        i++;
+                    } else {
+                        if (i < glob.length() && glob.charAt(i) == '!') {
+                            regex.append('^');
+                            i++;
+                        }
+                        if (i < glob.length() && glob.charAt(i) == '-') {
+                            regex.append('-'); // Hyphen allowed at start.
+                            i++;
+                        }
+                    }
+                    boolean closed = false;
+                    while (i < glob.length()) {
+                        c = glob.charAt(i++);
+                        if (c == ']') {
+                            closed = true;
+                            break;
+                        }
+                        if (c == '/') {
+                            throw new PatternSyntaxException("Explicit 'name separator' in class", glob, i - 1);
+                        }
+                        if (c == '\\' || c == '[' || (c == '&' && i < glob.length() && glob.charAt(i) == '&')) {
+                            regex.append('\\'); // Escape '\', '[' or "&&" for regex class.
+                        }
+                        regex.append(c);
+                    }
+                    if (!closed) {
+                        throw new PatternSyntaxException("Missing ']", glob, i - 1);
+                    }
+                    regex.append("]]");
+                }
+                case '{' -> {
+                    if (inGroup) {
+                        throw new PatternSyntaxException("Cannot nest groups", glob, i - 1);
+                    }
+                    regex.append("(?:(?:");
+                    inGroup = true;
+                }
+                case '}' -> {
+                    if (inGroup) {
+                        regex.append("))");
+                        inGroup = false;
+                    } else {
+                        regex.append('}');
+                    }
+                }
+                case ',' -> regex.append(inGroup ? ")|(?:" : ",");
+                case '*' -> {
+                    if (i < glob.length() && glob.charAt(i) == '*') {
+                        regex.append(".*"); // Crosses directory boundaries.
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                }
+                case '?' -> regex.append("[^/]");
+                default -> {
+                    if (REGEX_META_CHARS.indexOf(c) >= 0) {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+                }
+            }
+        }
+
+        if (inGroup) {
+            throw new PatternSyntaxException("Missing '}", glob, i - 1);
         }
+        return regex.append('$').toString();
     }
 
     /**
@@ -0,0 +1,388 @@
+package org.nopware.librestcli;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Destinations of response bodies: stdout and files.
+ */
+@Slf4j
+final class ResponseSinks {
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    private ResponseSinks() {
+    }
+
+    /**
+     * Copy the body to stdout. It is written in large chunks and flushed once, instead of a write and a flush per 16 KiB by {@link InputStream#transferTo(OutputStream)}.
+     *
+     * @return Number of bytes written.
+     */
+    static long toStdout(InputStream body) throws IOException {
+        OutputStream stdout = new BufferedOutputStream(System.out, BUFFER_SIZE); // Do not close stdout.
+        long bytes = body.transferTo(stdout);
+        stdout.flush();
+        return bytes;
+    }
+
+    /**
+     * Pool of direct buffers, so each download does not allocate its own off-heap buffer.
+     */
+    private static final class BufferPool {
+        private static final BlockingQueue<ByteBuffer> POOL = new ArrayBlockingQueue<>(8);
+
+        static ByteBuffer acquire() {
+            ByteBuffer buffer = POOL.poll();
+            return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+
+        static void release(ByteBuffer buffer) {
+            buffer.clear();
+            POOL.offer(buffer); // Dropped if the pool is full.
+        }
+    }
+
+    /**
+     * Download to a file.
+     * <p>
+     *     The body is written to {@literal <file>.part} and moved to the file atomically when it is complete, so the file never has a partial body.
+     *     If the download fails and the response had a validator (ETag or Last-Modified), the part file is kept with {@literal <file>.part.meta}.
+     *     The next download of the same URI to the same file resumes it by Range and If-Range.
+     *     If the resource has been changed, the server sends the whole body and it overwrites the part file.
+     * <p>
+     *     The part file is locked while downloading, so concurrent downloads to the same file fail.
+     */
+    static final class FileSink implements Closeable {
+        private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-\\d+/(?:\\d+|\\*)");
+
+        private final Path file;
+        private final Path partFile;
+        private final Path metaFile;
+        private final FileChannel channel;
+        private final FileLock lock;
+        private final String uri;
+
+        private String resumeValidator; // Validator of the part file, or null if it cannot be resumed.
+        private long resumeOffset;
+        private boolean resumable; // True if the part file can be resumed after failure.
+        private boolean committed;
+        private volatile long receivedBytes;
+
+        private FileSink(Path file, HttpRequest request) throws IOException {
+            if (Files.exists(file)) {
+                throw new FileAlreadyExistsException(file.toString());
+            }
+            this.file = file;
+            this.partFile = file.resolveSibling(file.getFileName() + ".part");
+            this.metaFile = file.resolveSibling(file.getFileName() + ".part.meta");
+            this.uri = request.uri().toString();
+            this.channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                this.lock = channel.tryLock();
+                if (lock == null) {
+                    throw new IOException("Another download to the file is in progress: " + file);
+                }
+                if (request.method().equals("GET")) {
+                    readMeta();
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @param file    Destination. It must not exist.
+         * @param request Request of the body.
+         */
+        static FileSink open(Path file, HttpRequest request) throws IOException {
+            return new FileSink(file, request);
+        }
+
+        private void readMeta() throws IOException {
+            if (!Files.exists(metaFile)) {
+                return;
+            }
+            List<String> lines = Files.readAllLines(metaFile, StandardCharsets.UTF_8);
+            long size = channel.size();
+            if (lines.size() == 2 && lines.get(0).equals(uri) && size > 0) {
+                resumeValidator = lines.get(1);
+                resumeOffset = size;
+                log.info("Resume the download to {} from {} bytes.", file, size);
+            }
+        }
+
+        /**
+         * @return Range request resuming the part file, or empty if there is nothing to resume.
+         */
+        Optional<HttpRequest> rangeRequest(HttpRequest request) {
+            if (resumeValidator == null) {
+                return Optional.empty();
+            }
+            return Optional.of(HttpRequest.newBuilder(request, (name, value) -> !name.equalsIgnoreCase("Accept-Encoding"))
+                    .header("Accept-Encoding", "identity") // The range is of the bytes in the part file, i.e. decoded.
+                    .header("Range", "bytes=" + resumeOffset + "-")
+                    .header("If-Range", resumeValidator)
+                    .build());
+        }
+
+        /**
+         * Forget the part file, for example if the server does not satisfy the range.
+         */
+        void discardPartial() throws IOException {
+            resumeValidator = null;
+            resumeOffset = 0;
+            channel.truncate(0);
+            Files.deleteIfExists(metaFile);
+        }
+
+        /**
+         * Handler writing the body to the part file as received, unless the body is encoded by a content coding.
+         * An encoded body is not written but returned, so the caller decodes it and writes it by {@link #write(InputStream)}.
+         *
+         * @return Handler. The body of the response is empty if it has been written to the part file.
+         */
+        HttpResponse.BodyHandler<Optional<InputStream>> bodyHandler(Compression compression) {
+            return responseInfo -> compression.decodes(responseInfo.headers())
+                    ? HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofInputStream(), Optional::of)
+                    : HttpResponse.BodySubscribers.mapping(new FileBodySubscriber(responseInfo), bytes -> Optional.empty());
+        }
+
+        /**
+         * @return Number of bytes received by the last handler writing to the part file.
+         */
+        long receivedBytes() {
+            return receivedBytes;
+        }
+
+        /**
+         * Write the whole body to the part file.
+         *
+         * @return Number of bytes written.
+         */
+        long write(InputStream body) throws IOException {
+            return body.transferTo(outputStream());
+        }
+
+        /**
+         * Stream writing the whole body to the part file. Do not close it; closing it closes the part file.
+         */
+        OutputStream outputStream() throws IOException {
+            discardPartial();
+            channel.position(0);
+            return Channels.newOutputStream(channel);
+        }
+
+        /**
+         * Move the part file to the file.
+         */
+        void commit() throws IOException {
+            lock.release();
+            channel.close();
+            if (Files.exists(file)) {
+                throw new FileAlreadyExistsException(file.toString());
+            }
+            try {
+                Files.move(partFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partFile, file);
+            }
+            Files.deleteIfExists(metaFile);
+            committed = true;
+        }
+
+        /**
+         * Remove the part file unless it is committed or resumable.
+         */
+        @Override
+        public void close() throws IOException {
+            if (committed) {
+                return;
+            }
+            if (channel.isOpen()) {
+                channel.close(); // Releases the lock.
+            }
+            if (resumable) {
+                System.err.printf("The partial download is kept in %s. Run the same command to resume it.%n", partFile);
+            } else {
+                Files.deleteIfExists(partFile);
+                Files.deleteIfExists(metaFile);
+            }
+        }
+
+        private void begin(HttpResponse.ResponseInfo responseInfo) throws IOException {
+            int statusCode = responseInfo.statusCode();
+            HttpHeaders headers = responseInfo.headers();
+            if (statusCode == 206 && resumeValidator != null) {
+                if (contentRangeStart(headers) != resumeOffset) {
+                    throw new IOException("Unexpected Content-Range: " + headers.firstValue("Content-Range").orElse(""));
+                }
+                channel.position(resumeOffset);
+            } else {
+                channel.truncate(0);
+                channel.position(0);
+                resumeValidator = null;
+                Files.deleteIfExists(metaFile);
+                if (statusCode != 200) {
+                    return;
+                }
+                Optional<String> validator = headers.firstValue("ETag")
+                        .filter(etag -> !etag.startsWith("W/")) // If-Range requires a strong validator.
+                        .or(() -> headers.firstValue("Last-Modified"));
+                if (validator.isEmpty()) {
+                    return;
+                }
+                Files.writeString(metaFile, uri + "\n" + validator.get() + "\n", StandardCharsets.UTF_8);
+                resumeValidator = validator.get();
+            }
+            resumable = true;
+        }
+
+        private static long contentRangeStart(HttpHeaders headers) {
+            return headers.firstValue("Content-Range")
+                    .map(CONTENT_RANGE::matcher)
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .orElse(-1L);
+        }
+
+        /**
+         * Subscriber writing the received buffers to the part file through a pooled direct buffer.
+         * <p>
+         *     Buffers received from {@link java.net.http.HttpClient} are small. They are gathered in the direct buffer, and written when it is full.
+         */
+        private final class FileBodySubscriber implements HttpResponse.BodySubscriber<Long> {
+            private final HttpResponse.ResponseInfo responseInfo;
+            private final CompletableFuture<Long> result = new CompletableFuture<>();
+            private Flow.Subscription subscription;
+            private ByteBuffer buffer;
+            private long bytes;
+            private boolean discard;
+
+            FileBodySubscriber(HttpResponse.ResponseInfo responseInfo) {
+                this.responseInfo = responseInfo;
+            }
+
+            @Override
+            public CompletionStage<Long> getBody() {
+                return result;
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                if (responseInfo.statusCode() == 416 && resumeValidator != null) {
+                    discard = true; // The part file is kept for the caller to discard it.
+                } else {
+                    try {
+                        begin(responseInfo);
+                    } catch (IOException e) {
+                        subscription.cancel();
+                        result.completeExceptionally(e);
+                        return;
+                    }
+                    buffer = BufferPool.acquire();
+                }
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> items) {
+                if (discard || result.isDone()) {
+                    return;
+                }
+                try {
+                    for (ByteBuffer item : items) {
+                        bytes += item.remaining();
+                        while (item.hasRemaining()) {
+                            if (!buffer.hasRemaining()) {
+                                flush();
+                            }
+                            int length = Math.min(item.remaining(), buffer.remaining());
+                            buffer.put(item.slice(item.position(), length));
+                            item.position(item.position() + length);
+                        }
+                    }
+                } catch (IOException e) {
+                    subscription.cancel();
+                    release();
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                if (buffer != null) {
+                    try {
+                        flush(); // Keep the received bytes for resuming.
+                    } catch (IOException e) {
+                        throwable.addSuppressed(e);
+                    }
+                }
+                release();
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    if (buffer != null) {
+                        flush();
+                    }
+                    receivedBytes = bytes;
+                    result.complete(bytes);
+                } catch (IOException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    release();
+                }
+            }
+
+            private void flush() throws IOException {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+
+            private void release() {
+                if (buffer != null) {
+                    BufferPool.release(buffer);
+                    buffer = null;
+                }
+            }
+        }
+    }
+}
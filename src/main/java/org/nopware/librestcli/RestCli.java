@@ -1,21 +1,21 @@
 package org.nopware.librestcli;
 
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closer;
 import io.swagger.v3.oas.models.OpenAPI;
-import io.swagger.v3.oas.models.Operation;
-import io.swagger.v3.oas.models.PathItem;
-import io.swagger.v3.oas.models.media.Schema;
-import io.swagger.v3.oas.models.parameters.Parameter;
-import io.swagger.v3.oas.models.servers.Server;
 import io.swagger.v3.parser.OpenAPIV3Parser;
 import io.swagger.v3.parser.core.models.ParseOptions;
 import io.swagger.v3.parser.core.models.SwaggerParseResult;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.http.client.utils.URIBuilder;
 import org.nopware.librestcli.RestCli.Authorization.None;
 import picocli.AutoComplete;
 import picocli.CommandLine;
@@ -23,21 +23,24 @@ import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Model.OptionSpec;
 
 import java.io.*;
-import java.net.ProxySelector;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.nio.file.FileSystems;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.IntSupplier;
 import java.util.function.Predicate;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 @Slf4j
@@ -76,29 +79,288 @@ public class RestCli {
      * Specification of RestCli.<br>
      * RestCliSpec object is created from specified OpenAPI specification, and defines the behavior of your rest client.
      * <p>
-     * Create it by {@link #createRestCliSpec(String, String)}.<br>
+     * Create it by {@link #createRestCliSpec(String, String)} or {@link RestCliSpec.Builder}.<br>
      * Use it by {@link #execute(RestCliSpec, String...)}.<br>
      * <p>
      * RestCliSpec object is immutable.
      * Reuse the object as much as possible.
+     * <p>
+     * Two RestCliSpec objects are equal if they have the same command name and are created from the same content of OpenAPI specification.
      */
     public static class RestCliSpec {
         // `delombok` by lombok-maven-plugin does not work with Java 21 now. So, I use the old style for generating appropriate javadoc.
         // `record` is not good for RestCliSpec because it must be a public class, but it should have private accessors.
         private final CommandSpec commandSpec;
-        private final OpenAPI openAPI;
+        private final ApiModel apiModel;
+        private final HashCode fingerprint;
+        private final OpenAPI openAPI; // Nullable. Kept only if requested.
+
+        private final boolean lazy;
+
+        /**
+         * Map path -> sub-tree of the path. Sub-trees of the unchanged paths are shared with the RestCliSpec reloaded from this one.
+         */
+        private final Map<String, PathTree> pathTrees;
+
+        /**
+         * Root command. The sub-commands refer to it as their parent while parsing, so it is shared by all RestCli objects of this RestCliSpec.
+         * Each RestCli configures it for itself under the parse lock.
+         */
+        private final CommandLine commandLine;
 
-        private RestCliSpec(@NonNull CommandSpec commandSpec, @NonNull OpenAPI openAPI) {
+        private RestCliSpec(@NonNull CommandSpec commandSpec, @NonNull ApiModel apiModel, @NonNull HashCode fingerprint, OpenAPI openAPI, boolean lazy, boolean parallel,
+                            @NonNull Map<String, PathTree> pathTrees) {
             this.commandSpec = commandSpec;
+            this.apiModel = apiModel;
+            this.fingerprint = fingerprint;
             this.openAPI = openAPI;
+            this.lazy = lazy;
+            this.pathTrees = pathTrees;
+            this.commandLine = new CommandLine(commandSpec);
+            if (!lazy) {
+                materializeAll(parallel);
+            }
+        }
+
+        /**
+         * Build the options of all paths. Paths are independent sub-trees, so they can be built in parallel.
+         * The sub-commands are already attached to the root in the order of the specification, so the result is same as the sequential build.
+         */
+        private void materializeAll(boolean parallel) {
+            if (parallel) {
+                apiModel.paths().keySet().parallelStream().forEach(this::materialize);
+            } else {
+                apiModel.paths().keySet().forEach(this::materialize);
+            }
+        }
+
+        /**
+         * Build the options of the method sub-commands which the arguments may resolve.
+         * <p>
+         *     Lazy RestCliSpec has placeholder sub-commands without options. Options of a path are built only once, even if RestCliSpec is shared by threads.
+         *
+         * @param args Command line arguments.
+         */
+        private void materialize(String... args) {
+            if (!lazy) {
+                return;
+            }
+
+            for (String arg : args) {
+                if (arg.startsWith(generateBashAutoCompletionScriptOption.longestName())) {
+                    materializeAll(true); // Auto-completion script covers all options.
+                    return;
+                }
+            }
+
+            for (String arg : args) {
+                if (apiModel.paths().containsKey(arg)) {
+                    materialize(arg);
+                }
+            }
+        }
+
+        private Map<String, OperationPlan> materialize(String path) {
+            return pathTrees.get(path).plans().get();
+        }
+
+        /**
+         * Attach the sub-commands of the paths which the arguments may resolve to this root. Call it under the parse lock.
+         * <p>
+         *     Sub-trees of the unchanged paths are shared with the reloaded RestCliSpec, which attaches them to its own root.
+         *     picocli refers to the parent of a sub-command while parsing, so it must be of the RestCliSpec parsing the arguments.
+         *
+         * @param args Command line arguments.
+         */
+        private void attach(String... args) {
+            for (String arg : args) {
+                CommandLine pathCommand = commandSpec.subcommands().get(arg);
+                if (pathCommand != null) {
+                    pathCommand.getCommandSpec().parent(commandSpec);
+                    pathCommand.getSubcommands().values().forEach(methodCommand -> methodCommand.getCommandSpec().parent(pathCommand.getCommandSpec()));
+                }
+            }
+        }
+
+        CommandSpec commandSpec() {
+            return commandSpec;
+        }
+
+        ApiModel apiModel() {
+            return apiModel;
+        }
+
+        boolean lazy() {
+            return lazy;
+        }
+
+        /**
+         * @return The parsed OpenAPI specification if it is kept by {@link Builder#keepOpenApi(boolean)}. Otherwise, empty.
+         */
+        public Optional<OpenAPI> openAPI() {
+            return Optional.ofNullable(openAPI);
+        }
+
+        /**
+         * Rough estimates of the heap retained by picocli objects. They are for the memory budget of {@link SpecRegistry}, not exact.
+         */
+        private static final long COMMAND_BYTES = 4096;
+        private static final long OPTION_BYTES = 1024;
+
+        /**
+         * Estimate the heap retained only by this RestCliSpec, as if all paths were materialized.
+         * <p>
+         *     It is the size of the command tree. The {@link ApiModel} is not counted, because it may be shared with other specifications by interning.
+         *
+         * @return Estimated size in bytes.
+         */
+        long estimatedSize() {
+            long size = COMMAND_BYTES;
+            for (ApiModel.PathModel pathModel : apiModel.paths().values()) {
+                size += COMMAND_BYTES;
+                for (ApiModel.OperationModel operation : pathModel.operations().values()) {
+                    int parts = operation.requestBody() == null ? 0 : operation.requestBody().parts().size();
+                    size += COMMAND_BYTES + OPTION_BYTES * (operation.parameters().size() + parts);
+                }
+            }
+            return size;
+        }
+
+        /**
+         * @return Plan of the operation. The path is materialized if it is not yet.
+         */
+        OperationPlan plan(String path, String method) {
+            return materialize(path).get(method);
+        }
+
+        public static class Builder {
+            String commandName;
+            String openApiJsonOrYaml;
+            SpecCache specCache;
+            boolean lazy;
+            boolean parallel = true;
+            boolean keepOpenApi;
+            Interner<Object> interner;
+            RestCliSpec previous;
+
+            /**
+             * @param commandName       Command name.
+             * @param openApiJsonOrYaml OpenAPI specification in JSON or YAML format.
+             */
+            public Builder(@NonNull String commandName, @NonNull String openApiJsonOrYaml) {
+                this.commandName = commandName;
+                this.openApiJsonOrYaml = openApiJsonOrYaml;
+            }
+
+            /**
+             * Use the cache of compiled specifications. If not specified, the specification is always parsed.
+             *
+             * @param specCache For example, {@link SpecCache#defaultCache()}.
+             */
+            public Builder specCache(@NonNull SpecCache specCache) {
+                this.specCache = specCache;
+                return this;
+            }
+
+            /**
+             * Build the options of path and method sub-commands lazily.
+             * <p>
+             *     In the lazy mode, sub-commands are placeholders with names and descriptions at first.
+             *     Their options are built when an execution resolves the path.
+             *     It makes creating RestCliSpec much faster and smaller for a big specification. Default is false.
+             */
+            public Builder lazy(boolean lazy) {
+                this.lazy = lazy;
+                return this;
+            }
+
+            /**
+             * Build the command tree on the cores of the common {@link java.util.concurrent.ForkJoinPool}. Default is true.
+             * <p>
+             *     Path sub-commands and their method sub-commands are created in parallel and attached to the root in the order of the specification,
+             *     and then their options are built in parallel. The result is same as the sequential build.
+             */
+            public Builder parallel(boolean parallel) {
+                this.parallel = parallel;
+                return this;
+            }
+
+            /**
+             * Keep the parsed {@link OpenAPI} object in RestCliSpec. See {@link RestCliSpec#openAPI()}.
+             * <p>
+             *     By default, it is released after RestCliSpec is created, because RestCli needs only the compact model of the operations.
+             *     The OpenAPI object is big. For example, it is tens of megabytes for the GitHub API.
+             *     If true, the specification is parsed even if the compiled specification is in the {@link SpecCache}.
+             */
+            public Builder keepOpenApi(boolean keepOpenApi) {
+                this.keepOpenApi = keepOpenApi;
+                return this;
+            }
+
+            /**
+             * Reuse the sub-commands of the previous RestCliSpec for the paths and operations unchanged in the new specification.
+             * <p>
+             *     The specifications are compared path by path and operation by operation. Only the sub-commands of the added or changed ones are built.
+             *     If the servers are changed, nothing is reused, because the plans of all operations depend on them.
+             *     The previous RestCliSpec keeps working, so requests in flight are not affected. See {@link SpecReloader}.
+             */
+            public Builder previous(@NonNull RestCliSpec previous) {
+                this.previous = previous;
+                return this;
+            }
+
+            /**
+             * Intern the model, so it shares equal objects with the other specifications interned by the same interner. See {@link SpecRegistry}.
+             */
+            Builder interner(@NonNull Interner<Object> interner) {
+                this.interner = interner;
+                return this;
+            }
+
+            /**
+             * Create {@link RestCliSpec}.
+             * <p>
+             * <strong>This method is heavy</strong> unless the compiled specification is in the {@link SpecCache}.
+             *
+             * @return {@link RestCliSpec} object.
+             */
+            public RestCliSpec build() {
+                HashCode fingerprint = Hashing.sha256().hashString(openApiJsonOrYaml, StandardCharsets.UTF_8);
+
+                OpenAPI openAPI = null;
+                Optional<ApiModel> cachedApiModel = specCache == null || keepOpenApi ? Optional.empty() : specCache.load(fingerprint);
+                ApiModel apiModel;
+                if (cachedApiModel.isPresent()) {
+                    apiModel = cachedApiModel.get();
+                } else {
+                    openAPI = parseOpenApi(openApiJsonOrYaml);
+                    apiModel = ApiModel.from(openAPI);
+                    if (specCache != null) {
+                        specCache.store(fingerprint, apiModel);
+                    }
+                }
+                if (interner != null) {
+                    apiModel = apiModel.intern(interner);
+                }
+
+                boolean reusable = previous != null && previous.apiModel.servers().equals(apiModel.servers());
+                Map<String, PathTree> pathTrees = pathTrees(apiModel, reusable ? previous.pathTrees : Map.of(), parallel);
+                if (previous != null) {
+                    long reusedPaths = pathTrees.values().stream().filter(pathTree -> pathTree == previous.pathTrees.get(pathTree.model().path())).count();
+                    log.info("Reloaded {}: reused {} of {} paths.", commandName, reusedPaths, pathTrees.size());
+                }
+
+                CommandSpec commandSpec = createCommandSpec(commandName, apiModel, pathTrees.values());
+                return new RestCliSpec(commandSpec, apiModel, fingerprint, keepOpenApi ? openAPI : null, lazy, parallel, pathTrees);
+            }
         }
 
         public int hashCode() {
-            return Objects.hash(commandSpec, openAPI);
+            return Objects.hash(commandSpec.name(), fingerprint);
         }
 
         public String toString() {
-            return "RestCli.RestCliSpec(commandSpec=" + this.commandSpec + ", openAPI=" + this.openAPI + ")";
+            return "RestCli.RestCliSpec(name=" + this.commandSpec.name() + ", fingerprint=" + this.fingerprint + ")";
         }
 
         public boolean equals(final Object o) {
@@ -107,8 +369,8 @@ public class RestCli {
 
             RestCliSpec other = (RestCliSpec) o;
 
-            return Objects.equals(commandSpec, other.commandSpec) &&
-                    Objects.equals(openAPI, other.openAPI);
+            return Objects.equals(commandSpec.name(), other.commandSpec.name()) &&
+                    Objects.equals(fingerprint, other.fingerprint);
         }
     }
 
@@ -200,9 +462,17 @@ public class RestCli {
             this.appender = appender;
         }
 
+        boolean appliesTo(String path, String operation) {
+            return operations.contains(operation) && pathMatcher.matches(path);
+        }
+
+        Appender appender() {
+            return appender;
+        }
+
         Optional<List<String>> getOptions(String path, String operation) {
-            List<String> options = new LinkedList<>();
-            if (pathMatcher.matches(path) && operations.contains(operation)) {
+            if (appliesTo(path, operation)) {
+                List<String> options = new ArrayList<>();
                 appender.accept(options);
                 return Optional.of(options);
             } else {
@@ -233,9 +503,17 @@ public class RestCli {
             this.appender = appender;
         }
 
+        boolean appliesTo(String path, String operation) {
+            return operations.contains(operation) && pathMatcher.matches(path);
+        }
+
+        Appender appender() {
+            return appender;
+        }
+
         Optional<Multimap<String, String>> getHeaders(String path, String operation) {
-            Multimap<String, String> headers = LinkedListMultimap.create();
-            if (pathMatcher.matches(path) && operations.contains(operation)) {
+            if (appliesTo(path, operation)) {
+                Multimap<String, String> headers = LinkedListMultimap.create();
                 appender.accept(headers);
                 return Optional.of(headers);
             } else {
@@ -244,13 +522,30 @@ public class RestCli {
         }
     }
 
-    private final CommandLine commandLine;
-    private final OpenAPI openAPI;
+    private final RestCliSpec restCliSpec;
+    private final CommandLine commandLine; // Shared by the RestCli objects of restCliSpec. Configured by bind().
+    private final PrintWriter out;
+    private final PrintWriter err;
     private final Authorization authorization;
+    private final String userInfo;
+    private final String userAgent;
+    private final Retrier retrier;
+    private final Metering metering;
+    private final HttpCache httpCache; // Nullable.
+    private final Compression compression;
+
+    private static final List<ContentCodec> DEFAULT_CONTENT_CODECS = List.of(ContentCodec.GZIP, ContentCodec.DEFLATE);
+
+    private final AppenderIndex appenderIndex;
+    private IntSupplier deferred; // Guarded by PARSE_LOCK. Work of the execution set by doExecute.
+    private ReplayableStdin stdin; // Guarded by PARSE_LOCK. Stdin read before the parse. Nullable.
 
-    private final List<OptionAppender> optionAppenders;
+    /**
+     * Lock for parsing arguments. Options hold the values of the parsed arguments, and the options common to all paths,
+     * like {@literal --output-file}, are shared by all {@link RestCliSpec}s. So parsing is serialized across all RestCli objects.
+     */
+    private static final Object PARSE_LOCK = new Object();
 
-    private final List<HeaderAppender> headerAppenders;
     private static final OptionSpec generateBashAutoCompletionScriptOption = OptionSpec.builder("--generate-bash-auto-completion-script")
             .required(false)
             .arity("0..1")
@@ -295,6 +590,140 @@ public class RestCli {
             .type(String.class)
             .build();
 
+    private static final OptionSpec selectOptionSpec = OptionSpec.builder("--select")
+            .required(false)
+            .arity("1")
+            .description("Print only the values selected from the JSON response as NDJSON, while the response is received. "
+                    + "The selector is a JSON Pointer like /items/0/name, or a JSONPath like $.items[*].name with .name, ['name'], [0], [*] and .*. "
+                    + "A response with non-2xx status code is printed as is. Not applied with --paginate.")
+            .paramLabel("selector")
+            .type(String.class)
+            .build();
+
+    private static final OptionSpec batchOptionSpec = OptionSpec.builder("--batch")
+            .required(false)
+            .arity("1")
+            .description("Execute requests in NDJSON file and print results as NDJSON. '-' is stdin. "
+                    + "A line is like {\"path\": \"/users/{username}\", \"method\": \"get\", \"parameters\": {\"username\": \"octocat\"}}. "
+                    + "If --output-file is specified, the results are written to the file.")
+            .paramLabel("file")
+            .type(String.class)
+            .build();
+
+    private static final OptionSpec batchParallelismOptionSpec = OptionSpec.builder("--batch-parallelism")
+            .required(false)
+            .arity("1")
+            .description("Maximum number of concurrent requests in the batch.")
+            .paramLabel("n")
+            .type(Integer.class)
+            .defaultValue("8")
+            .build();
+
+    private static final OptionSpec paginateOptionSpec = OptionSpec.builder("--paginate")
+            .required(false)
+            .arity("0")
+            .description("Follow the Link header and print the items of all pages as NDJSON. "
+                    + "Every page must be received with 2xx status code. --assert-http-status-code is ignored.")
+            .type(Boolean.class)
+            .build();
+
+    private static final OptionSpec paginateParallelismOptionSpec = OptionSpec.builder("--paginate-parallelism")
+            .required(false)
+            .arity("1")
+            .description("Maximum number of pages fetched concurrently if the last page is known by the Link header.")
+            .paramLabel("n")
+            .type(Integer.class)
+            .defaultValue("4")
+            .build();
+
+    private static final OptionSpec fanOutOptionSpec = OptionSpec.builder("--fan-out")
+            .required(false)
+            .arity("1")
+            .description("Send a request per value of the parameter concurrently, like 'repo=flist,librestcli' or 'repo=@repos.txt' for a file with a value per line. "
+                    + "Do not give the option of the parameter. If --output-file is specified, the responses are written to the file. "
+                    + "The exit code is 1 if a request does not succeed with 2xx status code. --assert-http-status-code is ignored.")
+            .paramLabel("parameter=values")
+            .type(String.class)
+            .build();
+
+    private static final OptionSpec fanOutParallelismOptionSpec = OptionSpec.builder("--fan-out-parallelism")
+            .required(false)
+            .arity("1")
+            .description("Maximum number of concurrent requests of --fan-out, including the responses waiting to be written.")
+            .paramLabel("n")
+            .type(Integer.class)
+            .defaultValue("8")
+            .build();
+
+    private static final OptionSpec fanOutOrderOptionSpec = OptionSpec.builder("--fan-out-order")
+            .required(false)
+            .arity("1")
+            .description("'input' writes the response bodies in the order of the values. "
+                    + "'completion' writes an NDJSON line like {\"index\": 0, \"value\": \"flist\", \"status\": 200, \"body\": ...} per response as soon as it is received.")
+            .paramLabel("order")
+            .type(String.class)
+            .defaultValue("input")
+            .build();
+
+    private static final OptionSpec loadTestOptionSpec = OptionSpec.builder("--load-test")
+            .required(false)
+            .arity("0")
+            .description("Send the request repeatedly, and print the latency percentiles, the throughput, the status codes and the bytes as JSON. "
+                    + "If --output-file is specified, the report is written to the file. Default is 100 requests.")
+            .type(Boolean.class)
+            .build();
+
+    private static final OptionSpec loadTestRequestsOptionSpec = OptionSpec.builder("--load-test-requests")
+            .required(false)
+            .arity("1")
+            .description("Number of requests of the load test.")
+            .paramLabel("n")
+            .type(Long.class)
+            .build();
+
+    private static final OptionSpec loadTestDurationOptionSpec = OptionSpec.builder("--load-test-duration")
+            .required(false)
+            .arity("1")
+            .description("Duration of the load test in seconds. If --load-test-requests is also specified, the test ends by whichever comes first.")
+            .paramLabel("seconds")
+            .type(Long.class)
+            .build();
+
+    private static final OptionSpec loadTestConcurrencyOptionSpec = OptionSpec.builder("--load-test-concurrency")
+            .required(false)
+            .arity("1")
+            .description("Number of concurrent requests of the load test. With --load-test-rate, maximum number of requests in flight.")
+            .paramLabel("n")
+            .type(Integer.class)
+            .defaultValue("8")
+            .build();
+
+    private static final OptionSpec loadTestRateOptionSpec = OptionSpec.builder("--load-test-rate")
+            .required(false)
+            .arity("1")
+            .description("Send requests at the fixed rate per second, instead of sending the next request when a response is received. "
+                    + "Latencies are measured from the scheduled times, so they are corrected for coordinated omission.")
+            .paramLabel("rate")
+            .type(Double.class)
+            .build();
+
+    private static final OptionSpec compressRequestBodyOptionSpec = OptionSpec.builder("--compress-request-body")
+            .required(false)
+            .arity("0..1")
+            .description("Compress the request body from --input-file or --stdin by the content coding, and send it with Content-Encoding. "
+                    + "The operation must have a request body and the server must accept the coding. Default coding is gzip.")
+            .paramLabel("coding")
+            .type(String.class)
+            .fallbackValue("gzip")
+            .build();
+
+    private static final OptionSpec noCacheOptionSpec = OptionSpec.builder("--no-cache")
+            .required(false)
+            .arity("0")
+            .description("Do not use the HTTP cache. Neither read nor store responses.")
+            .type(Boolean.class)
+            .build();
+
     private static final OptionSpec assertHttpStatusCodeSpec = OptionSpec.builder("--assert-http-status-code", "--sc")
             .required(false)
             .arity("1")
@@ -308,9 +737,15 @@ public class RestCli {
         RestCliSpec restCliSpec;
         PrintWriter commandLineOut;
         PrintWriter commandLineErr;
-        Authorization authorization;
-        List<OptionAppender> optionAppenders = new LinkedList<>();
-        List<HeaderAppender> headerAppenders = new LinkedList<>();
+        Authorization authorization = new None();
+        Transport transport = Transport.shared();
+        RetryPolicy retryPolicy = RetryPolicy.NONE;
+        ServerSelector serverSelector;
+        MetricsListener metricsListener = MetricsRegistry.defaultRegistry();
+        HttpCache httpCache;
+        List<ContentCodec> contentCodecs = DEFAULT_CONTENT_CODECS;
+        List<OptionAppender> optionAppenders = new ArrayList<>();
+        List<HeaderAppender> headerAppenders = new ArrayList<>();
 
         public Builder(@NonNull RestCliSpec restCliSpec) {
             this.restCliSpec = restCliSpec;
@@ -331,6 +766,64 @@ public class RestCli {
             return this;
         }
 
+        /**
+         * Use the specified transport. If not specified, {@link Transport#shared()} is used.
+         * <p>
+         *     The transport is not closed by RestCli. The caller owns it.
+         */
+        public Builder transport(@NonNull Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * Retry requests failed by rate limits, server errors or I/O errors, and slow down before hitting the rate limits.
+         * If not specified, {@link RetryPolicy#NONE} is used.
+         * <p>
+         *     Bodies from --stdin of the retried methods are read before sending, into memory or a temporary file, so they can be sent again.
+         */
+        public Builder retryPolicy(@NonNull RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Send requests to the fastest healthy server of the servers in the specification, and fail over on connect errors.
+         * If not specified, requests are sent to the first server.
+         */
+        public Builder serverSelector(@NonNull ServerSelector serverSelector) {
+            this.serverSelector = serverSelector;
+            return this;
+        }
+
+        /**
+         * Report the metrics of HTTP exchanges to the listener. If not specified, {@link MetricsRegistry#defaultRegistry()} is used.
+         * Use {@link MetricsListener#NONE} to disable metrics.
+         */
+        public Builder metricsListener(@NonNull MetricsListener metricsListener) {
+            this.metricsListener = metricsListener;
+            return this;
+        }
+
+        /**
+         * Cache responses of GET and HEAD, and revalidate them by ETag and Last-Modified. If not specified, responses are not cached.
+         *
+         * @param httpCache For example, {@link HttpCache#defaultCache()}.
+         */
+        public Builder httpCache(@NonNull HttpCache httpCache) {
+            this.httpCache = httpCache;
+            return this;
+        }
+
+        /**
+         * Codecs of the content codings, in the order of preference. Their names are sent in Accept-Encoding, and the responses are decoded by them.
+         * If not specified, gzip and deflate are used. Specify no codec to disable compression.
+         */
+        public Builder contentCodecs(@NonNull ContentCodec... contentCodecs) {
+            this.contentCodecs = List.of(contentCodecs);
+            return this;
+        }
+
         public Builder optionAppender(@NonNull OptionAppender optionAppender) {
             this.optionAppenders.add(optionAppender);
             return this;
@@ -342,23 +835,37 @@ public class RestCli {
         }
 
         public RestCli build() {
-            return new RestCli(restCliSpec, authorization, commandLineOut, commandLineErr, optionAppenders, headerAppenders);
+            return new RestCli(restCliSpec, authorization, transport, retryPolicy, serverSelector, metricsListener, httpCache, contentCodecs, commandLineOut, commandLineErr, optionAppenders, headerAppenders);
         }
     }
 
-    private RestCli(@NonNull RestCliSpec restCliSpec, @NonNull Authorization authorization, PrintWriter commandLineOut, PrintWriter commandLineErr, List<OptionAppender> optionAppenders, List<HeaderAppender> headerAppenders) {
-        this.commandLine = new CommandLine(restCliSpec.commandSpec);
-        this.commandLine.setExecutionStrategy(this::doExecute);
-        if (commandLineOut != null) {
-            this.commandLine.setOut(commandLineOut);
-        }
-        if (commandLineErr != null) {
-            this.commandLine.setErr(commandLineErr);
-        }
-        this.openAPI = restCliSpec.openAPI;
+    private RestCli(@NonNull RestCliSpec restCliSpec, @NonNull Authorization authorization, @NonNull Transport transport, @NonNull RetryPolicy retryPolicy, ServerSelector serverSelector, @NonNull MetricsListener metricsListener, HttpCache httpCache, List<ContentCodec> contentCodecs, PrintWriter commandLineOut, PrintWriter commandLineErr, List<OptionAppender> optionAppenders, List<HeaderAppender> headerAppenders) {
+        this.restCliSpec = restCliSpec;
+        this.commandLine = restCliSpec.commandLine;
+        this.out = commandLineOut != null ? commandLineOut : new PrintWriter(System.out, true);
+        this.err = commandLineErr != null ? commandLineErr : new PrintWriter(System.err, true);
         this.authorization = authorization;
-        this.optionAppenders = List.copyOf(optionAppenders);
-        this.headerAppenders = List.copyOf(headerAppenders);
+        this.userInfo = userInfo(authorization);
+        this.userAgent = String.format("%s/%s", restCliSpec.commandSpec.name(), String.join(".", restCliSpec.commandSpec.version()));
+        this.retrier = new Retrier(transport, retryPolicy, serverSelector == null ? ServerSelector.Route.DIRECT : serverSelector.route(restCliSpec.apiModel.servers()));
+        this.metering = new Metering(metricsListener);
+        this.httpCache = httpCache;
+        this.compression = new Compression(contentCodecs);
+        this.appenderIndex = new AppenderIndex(restCliSpec.apiModel, optionAppenders, headerAppenders, !restCliSpec.lazy);
+    }
+
+    /**
+     * Configure the command tree shared by the RestCli objects of the {@link RestCliSpec} for this RestCli and the arguments. Call it under {@link #PARSE_LOCK}.
+     */
+    private void bind(String... args) {
+        commandLine.setExecutionStrategy(this::doExecute);
+        commandLine.setOut(out);
+        commandLine.setErr(err);
+        restCliSpec.attach(args);
+    }
+
+    RestCliSpec restCliSpec() {
+        return restCliSpec;
     }
 
     private int generateBashAutoCompletionScript(CommandLine.ParseResult parseResult) {
@@ -368,7 +875,7 @@ public class RestCli {
         if (Strings.isNullOrEmpty(autoCompletionFile)) { // If the option is specified without a value, `autoCompletionFile` is empty string (""), not null nor default value.
             System.out.println(bash);
         } else {
-            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(autoCompletionFile), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            try (BufferedWriter writer = Files.newBufferedWriter(Session.path(autoCompletionFile), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
                 writer.write(bash);
                 writer.flush();
             } catch (IOException e) {
@@ -379,56 +886,303 @@ public class RestCli {
         return 0;
     }
 
-    private int execute(String... args) {
-        return this.commandLine.execute(args);
-    }
-
     /**
      * Execute the command.
+     * <p>
+     *     RestCli object can execute commands repeatedly. Connections of its {@link Transport} are reused across executions.
      *
-     * @param restCliSpec   {@link RestCliSpec} object. Created by {@link #createRestCliSpec(String, String)}.
-     * @param authorization Authorization object.
-     * @param args          Command line arguments.
+     * @param args Command line arguments.
      * @return Exit code.
      */
-    public static int execute(RestCliSpec restCliSpec, Authorization authorization, String... args) {
-        RestCli restCli = new RestCli(restCliSpec, authorization, new PrintWriter(System.out), new PrintWriter(System.err), List.of(), List.of());
-        return restCli.execute(args);
+    public int execute(String... args) {
+        restCliSpec.materialize(args);
+        String[] fanOutArgs;
+        try {
+            fanOutArgs = fanOutArgs(args);
+        } catch (IOException | IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return CommandLine.ExitCode.USAGE;
+        }
+        return execute(appendOptions(fanOutArgs), null);
     }
 
-    public static int execute(RestCliSpec restCliSpec, Authorization authorization, PrintWriter commandLineOut, PrintWriter commandLineErr, String... args) {
-        RestCli restCli = new RestCli(restCliSpec, authorization, commandLineOut, commandLineErr, List.of(), List.of());
-        return restCli.execute(args);
+    /**
+     * @param stdin Body read from stdin for the request sent more than once. If null and the request needs it, stdin is read
+     *              after the parse lock is released, and the arguments are parsed again with it.
+     */
+    private int execute(String[] args, ReplayableStdin stdin) {
+        // Parsing changes the values of the options shared by all RestCli objects, so it is serialized.
+        // The request is sent after the lock is released, by the work deferred with the values read from the options.
+        int exitCode;
+        IntSupplier send;
+        synchronized (PARSE_LOCK) {
+            bind(args);
+            deferred = null;
+            this.stdin = stdin;
+            exitCode = this.commandLine.execute(args);
+            send = deferred;
+            deferred = null;
+            this.stdin = null;
+        }
+        if (send == null) {
+            return exitCode;
+        }
+        try {
+            return send.getAsInt();
+        } catch (RuntimeException e) {
+            e.printStackTrace(err);
+            return commandLine.getCommandSpec().exitCodeOnExecutionException();
+        }
     }
 
     /**
-     * Execute the command without authorization.
-     * It is same as {@link #execute(RestCliSpec, Authorization, String...)} with {@link RestCli.Authorization.None}.
+     * Defer the work which does not read the values of the options until the parse lock is released.
      *
-     * @param restCliSpec {@link RestCliSpec} object. Created by {@link #createRestCliSpec(String, String)}.
-     * @param args        Command line arguments.
-     * @return Exit code.
+     * @return Exit code of the parse. The exit code of the execution is returned by the work.
      */
-    public static int execute(RestCliSpec restCliSpec, String... args) {
-        return execute(restCliSpec, new None(), args);
+    private int defer(IntSupplier send) {
+        deferred = send;
+        return 0;
     }
 
-    private int doExecute(CommandLine.ParseResult parseResult) {
-        /*
-         * If `--help` option is specified, print the help message and exit.
-         * The exit code is 0.
-         */
-        Integer helpExitCode = CommandLine.executeHelpRequest(parseResult);
-        if (helpExitCode != null) {
-            return helpExitCode;
-        }
-
-        /*
-         * If `--generate-bash-auto-completion-script` option is specified, generate the script and exit.
-         * The exit code is 0.
-         */
-        if (parseResult.hasMatchedOption(generateBashAutoCompletionScriptOption)) {
-            return generateBashAutoCompletionScript(parseResult);
+    /**
+     * Append the option of the first value of {@literal --fan-out}, so the arguments are parsed and validated as a single request.
+     * The requests per value are built from them by {@link #runFanOut(CommandLine.ParseResult)}.
+     *
+     * @return Arguments with the appended option. The arguments as is if there is no {@literal --fan-out}.
+     */
+    private static String[] fanOutArgs(String[] args) throws IOException {
+        for (int i = 0; i < args.length && !args[i].equals("--"); i++) {
+            String spec = args[i].startsWith("--fan-out=") ? args[i].substring("--fan-out=".length())
+                    : args[i].equals("--fan-out") && i + 1 < args.length ? args[i + 1]
+                    : null;
+            if (spec != null) {
+                FanOut.Spec fanOutSpec = FanOut.Spec.parse(spec);
+                String[] appended = Arrays.copyOf(args, args.length + 1);
+                appended[args.length] = fanOutSpec.option(fanOutSpec.values().get(0));
+                return appended;
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Insert the options of the {@link OptionAppender}s just after the method, except the ones given by the user, so the options given by the user override them.
+     *
+     * @param args Command line arguments like {@literal ["--output-file=out.json", "/repos/{owner}/{repo}/issues", "get", "--owner=naoshi-higuchi"]}.
+     * @return Arguments with the appended options.
+     */
+    private String[] appendOptions(String[] args) {
+        if (!appenderIndex.hasOptionAppenders()) {
+            return args;
+        }
+        for (int i = 0; i + 1 < args.length; i++) {
+            ApiModel.PathModel pathModel = restCliSpec.apiModel.paths().get(args[i]);
+            if (pathModel != null && pathModel.operations().containsKey(args[i + 1])) {
+                CommandSpec methodSpec = restCliSpec.commandSpec.subcommands().get(args[i]).getSubcommands().get(args[i + 1]).getCommandSpec();
+                List<String> options = withoutGivenOptions(appenderIndex.appenders(args[i], args[i + 1]).options(), Arrays.asList(args).subList(i + 2, args.length), methodSpec);
+                if (options.isEmpty()) {
+                    return args;
+                }
+                String[] appended = new String[args.length + options.size()];
+                System.arraycopy(args, 0, appended, 0, i + 2);
+                for (int j = 0; j < options.size(); j++) {
+                    appended[i + 2 + j] = options.get(j);
+                }
+                System.arraycopy(args, i + 2, appended, i + 2 + options.size(), args.length - i - 2);
+                return appended;
+            }
+        }
+        return args;
+    }
+
+    /**
+     * @param options    Appended options like {@literal ["--per-page=100", "--sort", "created"]}.
+     * @param args       Arguments given by the user after the method.
+     * @param methodSpec Method sub-command.
+     * @return Appended options except the options given by the user and their parameters.
+     */
+    private static List<String> withoutGivenOptions(List<String> options, List<String> args, CommandSpec methodSpec) {
+        Set<OptionSpec> givenOptions = new HashSet<>();
+        for (String arg : args) {
+            if (arg.equals("--")) {
+                break;
+            }
+            OptionSpec option = option(methodSpec, arg);
+            if (option != null) {
+                givenOptions.add(option);
+            }
+        }
+        if (givenOptions.isEmpty()) {
+            return options;
+        }
+
+        List<String> remaining = new ArrayList<>();
+        for (int i = 0; i < options.size(); i++) {
+            OptionSpec option = option(methodSpec, options.get(i));
+            if (option == null || !givenOptions.contains(option)) {
+                remaining.add(options.get(i));
+                continue;
+            }
+            if (!options.get(i).contains("=")) { // Skip the parameters given as separate arguments.
+                for (int parameters = 0; parameters < option.arity().max() && i + 1 < options.size() && option(methodSpec, options.get(i + 1)) == null; parameters++) {
+                    i++;
+                }
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * @return Option of the argument like {@literal --per-page=100} or {@literal --per-page}. Null if the argument is not an option.
+     */
+    private static OptionSpec option(CommandSpec commandSpec, String arg) {
+        if (!arg.startsWith("-")) {
+            return null;
+        }
+        int equals = arg.indexOf('=');
+        return commandSpec.findOption(equals < 0 ? arg : arg.substring(0, equals));
+    }
+
+    /**
+     * Execute the command.
+     *
+     * @param restCliSpec   {@link RestCliSpec} object. Created by {@link #createRestCliSpec(String, String)}.
+     * @param authorization Authorization object.
+     * @param args          Command line arguments.
+     * @return Exit code.
+     */
+    public static int execute(RestCliSpec restCliSpec, Authorization authorization, String... args) {
+        RestCli restCli = new RestCli(restCliSpec, authorization, Transport.shared(), RetryPolicy.NONE, null, MetricsRegistry.defaultRegistry(), null, DEFAULT_CONTENT_CODECS, new PrintWriter(System.out), new PrintWriter(System.err), List.of(), List.of());
+        return restCli.execute(args);
+    }
+
+    public static int execute(RestCliSpec restCliSpec, Authorization authorization, PrintWriter commandLineOut, PrintWriter commandLineErr, String... args) {
+        RestCli restCli = new RestCli(restCliSpec, authorization, Transport.shared(), RetryPolicy.NONE, null, MetricsRegistry.defaultRegistry(), null, DEFAULT_CONTENT_CODECS, commandLineOut, commandLineErr, List.of(), List.of());
+        return restCli.execute(args);
+    }
+
+    /**
+     * Execute the command without authorization.
+     * It is same as {@link #execute(RestCliSpec, Authorization, String...)} with {@link RestCli.Authorization.None}.
+     *
+     * @param restCliSpec {@link RestCliSpec} object. Created by {@link #createRestCliSpec(String, String)}.
+     * @param args        Command line arguments.
+     * @return Exit code.
+     */
+    public static int execute(RestCliSpec restCliSpec, String... args) {
+        return execute(restCliSpec, new None(), args);
+    }
+
+    /**
+     * Response of {@link #executeAsync(String...)}.
+     * <p>
+     *     Close it, or read the body to the end and close the body, to release the connection.
+     *
+     * @param statusCode HTTP status code.
+     * @param headers    Response headers.
+     * @param body       Response body. It is read from the connection while the caller reads it.
+     * @param timings    Timings of the execution.
+     */
+    public record Response(int statusCode, HttpHeaders headers, InputStream body, Timings timings) implements AutoCloseable {
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+
+    /**
+     * Timings of an execution.
+     *
+     * @param start    When the execution started.
+     * @param prepare  Time to parse the arguments and build the request.
+     * @param response Time from sending the request to receiving the response headers.
+     */
+    public record Timings(Instant start, Duration prepare, Duration response) {
+    }
+
+    /**
+     * Execute the command asynchronously.
+     * <p>
+     *     Arguments are parsed and the request is built on the caller thread. The request is sent by {@link Transport#sendAsync},
+     *     so no thread waits for the response. The future completes when the response headers are received.
+     * <p>
+     *     Options for the output like {@literal --output-file} and {@literal --assert-http-status-code} are ignored. Check the response instead.
+     *
+     * @param args Command line arguments. A path and a method are required.
+     * @return Future of the response. It completes exceptionally with {@link CommandLine.ParameterException} if the arguments are invalid.
+     */
+    public CompletableFuture<Response> executeAsync(String... args) {
+        Instant start = Instant.now();
+        long begin = System.nanoTime();
+
+        PreparedRequest preparedRequest;
+        try {
+            preparedRequest = prepareRequest(args, null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        HttpRequest httpRequest = preparedRequest.httpRequest();
+        long sent = System.nanoTime();
+        log.info("Request: {}", httpRequest);
+        Metering.Timer timer = metering.start(preparedRequest.plan().path(), preparedRequest.plan().method(), httpRequest);
+        return retrier.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofInputStream(), timer)
+                .whenComplete((response, throwable) -> {
+                    if (throwable != null) {
+                        timer.failed();
+                    }
+                })
+                .thenApply(response -> {
+                    Timings timings = new Timings(start, Duration.ofNanos(sent - begin), Duration.ofNanos(System.nanoTime() - sent));
+                    log.info("Response code: {}", response.statusCode());
+                    return new Response(response.statusCode(), compression.decodedHeaders(response.headers()), compression.decode(response.headers(), timer.body(response)), timings);
+                });
+    }
+
+    /**
+     * Execute the command asynchronously. See {@link #executeAsync(String...)}.
+     *
+     * @param restCliSpec   {@link RestCliSpec} object. Created by {@link #createRestCliSpec(String, String)}.
+     * @param authorization Authorization object.
+     * @param args          Command line arguments.
+     * @return Future of the response.
+     */
+    public static CompletableFuture<Response> executeAsync(RestCliSpec restCliSpec, Authorization authorization, String... args) {
+        RestCli restCli = new RestCli(restCliSpec, authorization, Transport.shared(), RetryPolicy.NONE, null, MetricsRegistry.defaultRegistry(), null, DEFAULT_CONTENT_CODECS, null, null, List.of(), List.of());
+        return restCli.executeAsync(args);
+    }
+
+    private int doExecute(CommandLine.ParseResult parseResult) {
+        /*
+         * If `--help` option is specified, print the help message and exit.
+         * The exit code is 0.
+         */
+        Integer helpExitCode = CommandLine.executeHelpRequest(parseResult);
+        if (helpExitCode != null) {
+            return helpExitCode;
+        }
+
+        /*
+         * If `--generate-bash-auto-completion-script` option is specified, generate the script and exit.
+         * The exit code is 0.
+         */
+        if (parseResult.hasMatchedOption(generateBashAutoCompletionScriptOption)) {
+            return generateBashAutoCompletionScript(parseResult);
+        }
+
+        /*
+         * If `--batch` option is specified, execute the requests in the file instead of the path and method.
+         */
+        if (parseResult.hasMatchedOption(batchOptionSpec)) {
+            return defer(runBatch(parseResult));
+        }
+
+        /*
+         * If `--fan-out` option is specified, execute a request per value of the parameter.
+         */
+        if (parseResult.hasMatchedOption(fanOutOptionSpec)) {
+            return defer(runFanOut(parseResult));
         }
 
         /*
@@ -468,12 +1222,332 @@ public class RestCli {
         CommandLine.ParseResult methodCommand = methodCommands.get(methodCommands.size() - 1);
 
         try {
-            return doRestRequest(parseResult, pathCommand, methodCommand);
-        } catch (FileNotFoundException e) {
+            return defer(doRestRequest(parseResult, pathCommand, methodCommand));
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private IntSupplier runBatch(CommandLine.ParseResult topCommand) {
+        // Read the options before parsing the lines of the batch. Parsing resets the values of the options.
+        String batchFile = topCommand.matchedOptionValue(batchOptionSpec.longestName(), (String) null);
+        int parallelism = topCommand.matchedOptionValue(batchParallelismOptionSpec.longestName(), 8);
+        String outputFile = topCommand.matchedOptionValue(outputFileOptionSpec.longestName(), (String) null); // No default value.
+
+        BatchRunner batchRunner = new BatchRunner(this::prepareRequest, retrier, parallelism, metering, compression);
+        return () -> runBatch(batchRunner, batchFile, outputFile);
+    }
+
+    private int runBatch(BatchRunner batchRunner, String batchFile, String outputFile) {
+        try {
+            // Do not close stdin and stdout.
+            Closer closer = Closer.create();
+            try {
+                BufferedReader input = "-".equals(batchFile)
+                        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                        : closer.register(Files.newBufferedReader(Session.path(batchFile)));
+                Writer output = outputFile != null
+                        ? closer.register(Files.newBufferedWriter(Session.path(outputFile)))
+                        : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+                return batchRunner.run(input, output);
+            } catch (Throwable e) {
+                throw closer.rethrow(e, InterruptedException.class);
+            } finally {
+                closer.close();
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    private IntSupplier runFanOut(CommandLine.ParseResult topCommand) {
+        // Read the options before parsing the arguments per value. Parsing resets the values of the options.
+        String spec = topCommand.matchedOptionValue(fanOutOptionSpec.longestName(), (String) null);
+        int parallelism = topCommand.matchedOptionValue(fanOutParallelismOptionSpec.longestName(), 8);
+        String orderName = topCommand.matchedOptionValue(fanOutOrderOptionSpec.longestName(), "input");
+        String outputFile = topCommand.matchedOptionValue(outputFileOptionSpec.longestName(), (String) null); // No default value.
+        if (topCommand.hasMatchedOption(stdinOptionSpec) || topCommand.hasMatchedOption(paginateOptionSpec) || topCommand.hasMatchedOption(loadTestOptionSpec)) {
+            throw new CommandLine.ParameterException(commandLine, "--fan-out cannot be used with --stdin, --paginate nor --load-test.");
+        }
+        FanOut.Order order = switch (orderName.toLowerCase(Locale.ROOT)) {
+            case "input" -> FanOut.Order.INPUT;
+            case "completion" -> FanOut.Order.COMPLETION;
+            default -> throw new CommandLine.ParameterException(commandLine, "--fan-out-order must be 'input' or 'completion': " + orderName);
+        };
+        List<String> originalArgs = topCommand.originalArgs();
+        return () -> runFanOut(spec, parallelism, order, outputFile, originalArgs);
+    }
+
+    private int runFanOut(String spec, int parallelism, FanOut.Order order, String outputFile, List<String> originalArgs) {
+        try {
+            FanOut.Spec fanOutSpec = FanOut.Spec.parse(spec);
+
+            // The original arguments end with the option of the first value appended by fanOutArgs.
+            List<String> baseArgs = new ArrayList<>();
+            for (int i = 0; i < originalArgs.size() - 1; i++) {
+                String arg = originalArgs.get(i);
+                if (arg.equals("--fan-out")) {
+                    i++; // Skip the value.
+                } else if (!arg.startsWith("--fan-out=")) {
+                    baseArgs.add(arg);
+                }
+            }
+            List<String[]> argsList = fanOutSpec.values().stream()
+                    .map(value -> Stream.concat(baseArgs.stream(), Stream.of(fanOutSpec.option(value))).toArray(String[]::new))
+                    .toList();
+
+            FanOut fanOut = new FanOut(this::prepareRequest, retrier, parallelism, order, metering, compression);
+            if (outputFile != null) {
+                try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(Session.path(outputFile)))) {
+                    return fanOut.run(argsList, fanOutSpec.values(), outputStream);
+                }
+            }
+            return fanOut.run(argsList, fanOutSpec.values(), System.out); // Do not close stdout.
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    /**
+     * HTTP request built by the plan.
+     */
+    record PreparedRequest(OperationPlan plan, HttpRequest httpRequest) {
+    }
+
+    /**
+     * Parse the arguments of path and method sub-commands and build the HTTP request.
+     * <p>
+     *     Parsing arguments changes the values of the options shared by all RestCli objects.
+     *     So parsing and building are serialized. They are quick. The body from stdin is read before them if the request needs it.
+     *
+     * @param args          Arguments like {@literal ["/repos/{owner}/{repo}/issues", "get", "--owner=naoshi-higuchi", "--repo=flist"]}.
+     * @param bodyPublisher Request body. If null, the request body options in the arguments are used.
+     * @return HTTP request and its plan.
+     * @throws CommandLine.ParameterException If the arguments are invalid.
+     */
+    PreparedRequest prepareRequest(String[] args, HttpRequest.BodyPublisher bodyPublisher) {
+        restCliSpec.materialize(args);
+        String[] appendedArgs = appendOptions(args);
+        synchronized (PARSE_LOCK) {
+            bind(appendedArgs);
+            PreparedRequest preparedRequest = prepareRequest(commandLine.parseArgs(appendedArgs), bodyPublisher, null);
+            if (preparedRequest != null) {
+                return preparedRequest;
+            }
+        }
+
+        // Stdin may be long, so it is read after the parse lock is released. Then the arguments are parsed again with it.
+        ReplayableStdin stdin;
+        try {
+            stdin = readStdin();
+        } catch (IOException e) {
+            throw new CommandLine.ParameterException(commandLine, e.getMessage(), e, null, null);
+        }
+        synchronized (PARSE_LOCK) {
+            bind(appendedArgs);
+            return prepareRequest(commandLine.parseArgs(appendedArgs), bodyPublisher, stdin);
+        }
+    }
+
+    /**
+     * @param stdin Body read from stdin for the request sent more than once. Nullable.
+     * @return Null if the request needs the body from stdin and it is not read yet.
+     */
+    private PreparedRequest prepareRequest(CommandLine.ParseResult parseResult, HttpRequest.BodyPublisher bodyPublisher, ReplayableStdin stdin) {
+        List<CommandLine.ParseResult> pathCommands = parseResult.subcommands();
+        if (pathCommands.isEmpty()) {
+            throw new CommandLine.ParameterException(commandLine, "No path specified.");
+        }
+        CommandLine.ParseResult pathCommand = pathCommands.get(pathCommands.size() - 1);
+
+        List<CommandLine.ParseResult> methodCommands = pathCommand.subcommands();
+        if (methodCommands.isEmpty()) {
+            throw new CommandLine.ParameterException(commandLine, "No method specified.");
+        }
+        CommandLine.ParseResult methodCommand = methodCommands.get(methodCommands.size() - 1);
+
+        OperationPlan plan = restCliSpec.plan(pathCommand.commandSpec().name(), methodCommand.commandSpec().name());
+        if (bodyPublisher == null && stdin == null && readsStdin(parseResult, plan)) {
+            return null;
+        }
+        try {
+            RequestBody requestBody = bodyPublisher != null ? new RequestBody(bodyPublisher, plan.contentType()) : requestBody(parseResult, plan, methodCommand, stdin);
+            return new PreparedRequest(plan, buildRequest(plan, methodCommand, requestBody));
+        } catch (IOException e) {
+            throw new CommandLine.ParameterException(commandLine, e.getMessage(), e, null, null);
+        }
+    }
+
+    /**
+     * Request body and its content type.
+     *
+     * @param contentType     Nullable. It is not sent if a header parameter or a {@link HeaderAppender} gives Content-Type.
+     * @param contentEncoding Content coding applied to the body. Nullable.
+     */
+    private record RequestBody(HttpRequest.BodyPublisher publisher, String contentType, String contentEncoding) {
+        RequestBody(HttpRequest.BodyPublisher publisher, String contentType) {
+            this(publisher, contentType, null);
+        }
+    }
+
+    /**
+     * Body read from stdin, which can be sent again. It is in memory, or in the spill file if it is larger than {@link #SPILL_THRESHOLD}.
+     *
+     * @param spillFile Nullable. Delete it after the exchange.
+     */
+    private record ReplayableStdin(Callable<InputStream> source, HttpRequest.BodyPublisher publisher, Path spillFile) {
+    }
+
+    private static final int SPILL_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Read stdin to the end, so the body can be sent again by retries.
+     */
+    private static ReplayableStdin readStdin() throws IOException {
+        InputStream stdin = Session.stdin();
+        byte[] head = stdin.readNBytes(SPILL_THRESHOLD + 1);
+        if (head.length <= SPILL_THRESHOLD) {
+            return new ReplayableStdin(() -> new ByteArrayInputStream(head), HttpRequest.BodyPublishers.ofByteArray(head), null);
+        }
+        Path spillFile = Files.createTempFile("librestcli-stdin-", ".tmp");
+        spillFile.toFile().deleteOnExit(); // In case the request is not executed by execute, for example by executeAsync.
+        try (OutputStream outputStream = Files.newOutputStream(spillFile)) {
+            outputStream.write(head);
+            stdin.transferTo(outputStream);
+        } catch (IOException e) {
+            Files.deleteIfExists(spillFile);
+            throw e;
+        }
+        log.info("Spilled the request body from stdin to {} ({} bytes).", spillFile, Files.size(spillFile));
+        return new ReplayableStdin(() -> Files.newInputStream(spillFile), HttpRequest.BodyPublishers.ofFile(spillFile), spillFile);
+    }
+
+    /**
+     * Bodies larger than this, or of unknown length, are sent with {@literal Expect: 100-continue}.
+     * The server can reject the request by its headers before receiving the body, at the cost of a round trip.
+     */
+    private static final long EXPECT_CONTINUE_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Build the HTTP request from the plan and the parse result of the method sub-command.
+     */
+    private HttpRequest buildRequest(OperationPlan plan, CommandLine.ParseResult methodCommand, RequestBody requestBody) {
+        long contentLength = requestBody.publisher().contentLength();
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(plan.uri(methodCommand, userInfo))
+                .method(
+                        plan.method().toUpperCase(), // Do not forget to convert to upper case. It is a pitfall about OpenAPI spec.
+                        metering.meter(requestBody.publisher()))
+                .expectContinue(contentLength < 0 || contentLength >= EXPECT_CONTINUE_THRESHOLD);
+
+        Set<String> headerNames = new HashSet<>();
+        BiConsumer<String, String> header = (name, value) -> {
+            headerNames.add(name.toLowerCase(Locale.ROOT));
+            requestBuilder.header(name, value);
+        };
+        plan.forEachHeader(methodCommand, header);
+        appenderIndex.appenders(plan.path(), plan.method()).forEachHeader(header);
+        if (!headerNames.contains("content-type") && requestBody.contentType() != null && contentLength != 0) {
+            requestBuilder.header("Content-Type", requestBody.contentType());
+        }
+        if (requestBody.contentEncoding() != null) {
+            requestBuilder.header("Content-Encoding", requestBody.contentEncoding());
+        }
+        if (!headerNames.contains("idempotency-key") && retrier.policy().needsIdempotencyKey(plan.method())) {
+            requestBuilder.header("Idempotency-Key", UUID.randomUUID().toString()); // Same for the retries of this request.
+        }
+        if (!headerNames.contains("accept-encoding") && compression.acceptEncoding() != null) {
+            requestBuilder.header("Accept-Encoding", compression.acceptEncoding());
+        }
+
+        switch (authorization) {
+            case Authorization.AuthorizationHeader authorizationHeader -> requestBuilder.header("Authorization", authorizationHeader.authorizationHeader());
+            default -> {
+            }
+        }
+
+        return requestBuilder.header("User-Agent", userAgent)
+                .build();
+    }
+
+    /**
+     * Request body by the part options of {@literal multipart/form-data}, or by the request body options.
+     *
+     * @param stdin Body read from stdin. It is given if {@link #readsStdin} is true.
+     * @throws CommandLine.ParameterException If both of them are given.
+     */
+    private RequestBody requestBody(CommandLine.ParseResult topCommand, OperationPlan plan, CommandLine.ParseResult methodCommand, ReplayableStdin stdin) throws IOException {
+        Optional<Multipart> multipart = plan.multipart(methodCommand);
+        if (multipart.isEmpty()) {
+            String coding = topCommand.matchedOptionValue(compressRequestBodyOptionSpec.longestName(), (String) null);
+            if (coding != null) {
+                return compressedRequestBody(topCommand, plan, methodCommand, coding, stdin);
+            }
+            if (readsStdin(topCommand, plan)) {
+                return new RequestBody(stdin.publisher(), plan.contentType());
+            }
+            return new RequestBody(bodyPublisher(topCommand), plan.contentType());
+        }
+        if (topCommand.hasMatchedOption(requestBodyOptionSpec) || topCommand.hasMatchedOption(stdinOptionSpec) || topCommand.hasMatchedOption(inputFileOptionSpec)) {
+            throw new CommandLine.ParameterException(methodCommand.commandSpec().commandLine(),
+                    "Parts of multipart/form-data cannot be used with --request-body, --stdin nor --input-file.");
+        }
+        return new RequestBody(multipart.get().bodyPublisher(), multipart.get().contentType());
+    }
+
+    /**
+     * @return True if the request may be sent more than once, so the body from stdin must be read before sending.
+     */
+    private boolean replayable(CommandLine.ParseResult topCommand, OperationPlan plan) {
+        return retrier.retries(plan.method()) || topCommand.hasMatchedOption(loadTestOptionSpec);
+    }
+
+    /**
+     * @return True if the body from stdin is read to the end before the request is built, by {@link #readStdin}.
+     */
+    private boolean readsStdin(CommandLine.ParseResult topCommand, OperationPlan plan) {
+        return topCommand.hasMatchedOption(stdinOptionSpec) && replayable(topCommand, plan);
+    }
+
+    /**
+     * Request body from --input-file or --stdin, encoded while it is sent.
+     * If the body is given by other options or the operation has no request body, it is not compressed.
+     */
+    private RequestBody compressedRequestBody(CommandLine.ParseResult topCommand, OperationPlan plan, CommandLine.ParseResult methodCommand, String coding,
+                                              ReplayableStdin stdin) throws IOException {
+        ContentCodec codec = compression.codec(coding)
+                .orElseThrow(() -> new CommandLine.ParameterException(methodCommand.commandSpec().commandLine(), "Unknown content coding: " + coding));
+
+        Callable<InputStream> source = null;
+        String inputFilePath = topCommand.matchedOptionValue(inputFileOptionSpec.longestName(), (String) null); // No default value.
+        if (inputFilePath != null) {
+            Path inputFile = Session.path(inputFilePath);
+            if (!Files.isRegularFile(inputFile)) {
+                throw new FileNotFoundException(inputFilePath + " not found");
+            }
+            source = () -> Files.newInputStream(inputFile);
+        } else if (readsStdin(topCommand, plan)) {
+            source = stdin.source();
+        } else if (topCommand.hasMatchedOption(stdinOptionSpec)) {
+            InputStream input = Session.stdin(); // Read by a thread of the HTTP client.
+            source = () -> input;
+        }
+
+        if (source == null || !plan.hasRequestBody()) {
+            log.info("The request body is not compressed. Only the body of --input-file or --stdin for an operation with a request body is compressed.");
+            return new RequestBody(bodyPublisher(topCommand), plan.contentType());
+        }
+        return new RequestBody(compression.encode(codec, source), plan.contentType(), codec.name());
+    }
+
     private HttpRequest.BodyPublisher bodyPublisher(CommandLine.ParseResult methodCommand) throws FileNotFoundException {
         String requestBody = methodCommand.matchedOptionValue(requestBodyOptionSpec.longestName(), (String) null); // No default value.
         if (requestBody != null) {
@@ -482,176 +1556,278 @@ public class RestCli {
 
         String inputFilePath = methodCommand.matchedOptionValue(inputFileOptionSpec.longestName(), (String) null); // No default value.
         if (inputFilePath != null) {
-            return HttpRequest.BodyPublishers.ofFile(Paths.get(inputFilePath));
+            return HttpRequest.BodyPublishers.ofFile(Session.path(inputFilePath));
         }
 
         if (methodCommand.hasMatchedOption(stdinOptionSpec)) {
-            return HttpRequest.BodyPublishers.ofInputStream(() -> System.in);
+            InputStream stdin = Session.stdin(); // Read by a thread of the HTTP client.
+            return HttpRequest.BodyPublishers.ofInputStream(() -> stdin);
         }
 
         return HttpRequest.BodyPublishers.noBody();
     }
 
-    private int doRestRequest(CommandLine.ParseResult topCommand, CommandLine.ParseResult pathCommand, CommandLine.ParseResult methodCommand) throws FileNotFoundException {
-        HttpClient.Builder httpClientBuilder = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2) // Each request will attempt to upgrade to HTTP/2. If the upgrade fails, then the response will be handled using HTTP/1.1
-                .proxy(ProxySelector.getDefault()); // Use the system-wide proxy settings.
-
-        int exitCode = 0;
-
-        try (HttpClient httpClient = httpClientBuilder.build()) {
-            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                    .uri(createUri(pathCommand, methodCommand))
-                    .method(
-                            methodCommand.commandSpec().name().toUpperCase(), // Do not forget to convert to upper case. It is a pitfall about OpenAPI spec.
-                            bodyPublisher(topCommand));
-
-            Multimap<String, String> resolvedHeaders = resolveHeaderParameters(pathCommand.commandSpec().name(), methodCommand.commandSpec().name(), methodCommand);
-            resolvedHeaders.forEach(requestBuilder::header);
-
-            switch (authorization) {
-                case Authorization.AuthorizationHeader authorizationHeader -> requestBuilder.header("Authorization", authorizationHeader.authorizationHeader());
-                default -> {
+    /**
+     * Build the request, and read the options used to send it.
+     *
+     * @return Work sending the request. It does not read the values of the options.
+     */
+    private IntSupplier doRestRequest(CommandLine.ParseResult topCommand, CommandLine.ParseResult pathCommand, CommandLine.ParseResult methodCommand) throws IOException {
+        OperationPlan plan = restCliSpec.plan(pathCommand.commandSpec().name(), methodCommand.commandSpec().name());
+        if (stdin == null && readsStdin(topCommand, plan)) {
+            // Stdin may be long, so it is read after the parse lock is released. Then the arguments are parsed again with it.
+            String[] args = topCommand.originalArgs().toArray(String[]::new);
+            return () -> {
+                ReplayableStdin replayableStdin;
+                try {
+                    replayableStdin = readStdin();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-            }
+                try {
+                    return execute(args, replayableStdin);
+                } finally {
+                    deleteSpillFile(replayableStdin);
+                }
+            };
+        }
+        RequestBody requestBody = requestBody(topCommand, plan, methodCommand, stdin);
+        return doRestRequest(topCommand, methodCommand, plan, buildRequest(plan, methodCommand, requestBody));
+    }
 
-            String userAgent = String.format("%s/%s", topCommand.commandSpec().name(), String.join(".", topCommand.commandSpec().version()));
+    private static void deleteSpillFile(ReplayableStdin stdin) {
+        if (stdin.spillFile() == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(stdin.spillFile());
+        } catch (IOException e) {
+            log.warn("Failed to delete: {}", stdin.spillFile(), e);
+        }
+    }
 
-            HttpRequest httpRequest = requestBuilder.header("User-Agent", userAgent)
-                    .build();
+    private IntSupplier doRestRequest(CommandLine.ParseResult topCommand, CommandLine.ParseResult methodCommand, OperationPlan plan, HttpRequest httpRequest) {
+        log.info("Request: {}", httpRequest.toString());
+        log.info("URL: {}", httpRequest.uri());
+        log.info("Method: {}", httpRequest.method());
+        log.info("Headers: {}", httpRequest.headers().map().toString());
 
-            log.info("Request: {}", httpRequest.toString());
-            log.info("URL: {}", httpRequest.uri());
-            log.info("Method: {}", httpRequest.method());
-            log.info("Headers: {}", httpRequest.headers().map().toString());
+        if (topCommand.hasMatchedOption(paginateOptionSpec)) {
+            return paginate(topCommand, new PreparedRequest(plan, httpRequest));
+        }
+        if (topCommand.hasMatchedOption(loadTestOptionSpec)) {
+            return loadTest(topCommand, methodCommand, new PreparedRequest(plan, httpRequest));
+        }
+        JsonSelector selector = selector(topCommand, methodCommand);
+        String outputFile = topCommand.matchedOptionValue(outputFileOptionSpec.longestName(), (String) null); // No default value.
+        boolean noCache = topCommand.hasMatchedOption(noCacheOptionSpec);
+        Integer expectedStatusCode = topCommand.hasMatchedOption(assertHttpStatusCodeSpec)
+                ? topCommand.matchedOptionValue(assertHttpStatusCodeSpec.longestName(), (Integer) null)
+                : null;
+        return () -> send(plan, httpRequest, selector, outputFile, noCache, expectedStatusCode);
+    }
 
-            try {
-                HttpResponse<InputStream> send = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
-                log.info("Response code: {}", send.statusCode());
-                log.info("ResponseHeaders: {}", send.headers().map().toString());
-
-                if (topCommand.hasMatchedOption(assertHttpStatusCodeSpec)) {
-                    Integer expectedStatusCode = topCommand.matchedOptionValue(assertHttpStatusCodeSpec.longestName(), (Integer) null);
-                    if (expectedStatusCode != null && expectedStatusCode != send.statusCode()) {
-                        log.info("Expected HTTP status code: {}, but got {}.", expectedStatusCode, send.statusCode());
-                        exitCode = 1; // Do not return here. Consume the response body.
+    /**
+     * @param selector           Nullable.
+     * @param outputFile         Nullable.
+     * @param expectedStatusCode Nullable if the status code is not asserted.
+     */
+    private int send(OperationPlan plan, HttpRequest httpRequest, JsonSelector selector, String outputFile, boolean noCache, Integer expectedStatusCode) {
+        try (ResponseSinks.FileSink fileSink = outputFile == null ? null : ResponseSinks.FileSink.open(Session.path(outputFile), httpRequest)) {
+            // Selected values are not resumable, because they are not a range of the body.
+            Optional<HttpRequest> rangeRequest = fileSink == null || selector != null ? Optional.empty() : fileSink.rangeRequest(httpRequest);
+            HttpCache cache = noCache || rangeRequest.isPresent() ? null : httpCache;
+            Optional<HttpCache.Entry> cachedEntry = cache == null ? Optional.empty() : cache.lookup(httpRequest);
+
+            int statusCode;
+            if (fileSink != null && cache == null && selector == null) {
+                statusCode = download(plan, rangeRequest.orElse(httpRequest), httpRequest, fileSink);
+            } else {
+                HttpRequest sentRequest = cachedEntry.map(entry -> entry.conditional(httpRequest)).orElse(httpRequest);
+                Metering.Timer timer = metering.start(plan.path(), plan.method(), sentRequest);
+                InputStream body;
+                HttpHeaders headers;
+                try {
+                    if (cachedEntry.isPresent() && cachedEntry.get().isFresh(Instant.now())) {
+                        log.info("Fresh response in the cache: {}", cachedEntry.get().file());
+                        statusCode = cachedEntry.get().statusCode();
+                        headers = cachedEntry.get().headers();
+                        body = cache.open(cachedEntry.get());
+                    } else {
+                        HttpResponse<InputStream> send = retrier.send(sentRequest, HttpResponse.BodyHandlers.ofInputStream(), timer);
+                        log.info("Response code: {}", send.statusCode());
+                        log.info("ResponseHeaders: {}", send.headers().map().toString());
+
+                        if (send.statusCode() == 304 && cachedEntry.isPresent()) {
+                            log.info("Not modified. Serve the response in the cache: {}", cachedEntry.get().file());
+                            timer.body(send).close();
+                            HttpCache.Entry refreshed = cache.refresh(httpRequest, cachedEntry.get(), send.headers());
+                            statusCode = refreshed.statusCode();
+                            headers = refreshed.headers();
+                            body = cache.open(refreshed);
+                        } else {
+                            statusCode = send.statusCode();
+                            headers = send.headers();
+                            body = cache == null ? timer.body(send) : cache.store(httpRequest, send, timer.body(send));
+                        }
                     }
-                }
 
-                try (InputStream bodyInputStream = send.body()) {
-                    String outputFile = topCommand.matchedOptionValue(outputFileOptionSpec.longestName(), (String) null); // No default value.
-                    if (outputFile != null) {
-                        Files.copy(bodyInputStream, Paths.get(outputFile));
-                    } else {
-                        bodyInputStream.transferTo(System.out);
+                    try (InputStream bodyInputStream = compression.decode(headers, body)) { // The cache stores the body as received.
+                        if (selector != null && statusCode / 100 == 2) {
+                            long count = fileSink != null
+                                    ? selector.select(bodyInputStream, fileSink.outputStream(), false)
+                                    : selector.select(bodyInputStream, System.out, true); // Do not close stdout.
+                            log.info("Selected {} values by {}.", count, selector);
+                        } else if (fileSink != null) {
+                            fileSink.write(bodyInputStream);
+                        } else {
+                            ResponseSinks.toStdout(bodyInputStream);
+                        }
                     }
+                } catch (IOException | InterruptedException e) {
+                    timer.failed(); // Ignored if the exchange is already reported by closing the body.
+                    throw e;
                 }
-            } catch (IOException | InterruptedException e) {
-                System.err.println(e.getMessage());
+            }
+
+            if (fileSink != null) {
+                fileSink.commit();
+            }
+
+            if (expectedStatusCode != null && expectedStatusCode != statusCode) {
+                log.info("Expected HTTP status code: {}, but got {}.", expectedStatusCode, statusCode);
                 return 1;
             }
+            return 0;
+        } catch (IOException | InterruptedException e) {
+            System.err.println(e.getMessage());
+            return 1;
         }
+    }
 
-        return exitCode;
+    /**
+     * @return Selector of --select, or null if it is not specified.
+     */
+    private static JsonSelector selector(CommandLine.ParseResult topCommand, CommandLine.ParseResult methodCommand) {
+        String selector = topCommand.matchedOptionValue(selectOptionSpec.longestName(), (String) null); // No default value.
+        if (selector == null) {
+            return null;
+        }
+        try {
+            return JsonSelector.parse(selector);
+        } catch (IllegalArgumentException e) {
+            throw new CommandLine.ParameterException(methodCommand.commandSpec().commandLine(), e.getMessage());
+        }
     }
 
     /**
-     * Create URI from the path and method.
-     * <p>
-     * Insert userInfo to the URI if the authorization is {@link Authorization.UsernameAndPasswordInUriAuthority}.
+     * Download the body to the file. If the range request is not satisfiable, download the whole body again.
      *
-     * @param pathCommand
-     * @param methodCommand
-     * @return URI for the request.
+     * @param request     Request sent. It is a range request if the download is resumed.
+     * @param fullRequest Request without range.
+     * @return Status code.
      */
-    private URI createUri(CommandLine.ParseResult pathCommand, CommandLine.ParseResult methodCommand) {
-        Optional<Server> first = openAPI.getServers().stream().findFirst();
-        if (first.isEmpty()) {
-            throw new RuntimeException("No server specified in OpenAPI spec.");
+    private int download(OperationPlan plan, HttpRequest request, HttpRequest fullRequest, ResponseSinks.FileSink fileSink) throws IOException, InterruptedException {
+        Metering.Timer timer = metering.start(plan.path(), plan.method(), request);
+        try {
+            HttpResponse<Optional<InputStream>> response = retrier.send(request, fileSink.bodyHandler(compression), timer);
+            log.info("Response code: {}", response.statusCode());
+            log.info("ResponseHeaders: {}", response.headers().map().toString());
+            if (response.body().isPresent()) { // Encoded body.
+                try (InputStream body = compression.decode(response.headers(), timer.body(response.statusCode(), response.body().get()))) {
+                    fileSink.write(body);
+                }
+            } else {
+                timer.completed(response.statusCode(), fileSink.receivedBytes());
+            }
+
+            if (response.statusCode() == 416 && request != fullRequest) {
+                log.info("Range is not satisfiable. Download the whole body.");
+                fileSink.discardPartial();
+                return download(plan, fullRequest, fullRequest, fileSink);
+            }
+            return response.statusCode();
+        } catch (IOException | InterruptedException e) {
+            timer.failed();
+            throw e;
         }
+    }
 
-        String path = pathCommand.commandSpec().name();
-        String resolvedPath = resolvePathParameters(path, methodCommand);
-        Optional<String> optionalQuery = resolveQueryParameters(path, methodCommand.commandSpec().name(), methodCommand);
+    private IntSupplier loadTest(CommandLine.ParseResult topCommand, CommandLine.ParseResult methodCommand, PreparedRequest request) {
+        Long requests = topCommand.matchedOptionValue(loadTestRequestsOptionSpec.longestName(), (Long) null);
+        Long seconds = topCommand.matchedOptionValue(loadTestDurationOptionSpec.longestName(), (Long) null);
+        int concurrency = topCommand.matchedOptionValue(loadTestConcurrencyOptionSpec.longestName(), 8);
+        double rate = topCommand.matchedOptionValue(loadTestRateOptionSpec.longestName(), 0.0);
+        String outputFile = topCommand.matchedOptionValue(outputFileOptionSpec.longestName(), (String) null); // No default value.
 
-        String query = optionalQuery.map((value) -> String.format("?%s", value)).orElse("");
+        LoadTester loadTester;
+        try {
+            loadTester = new LoadTester(retrier, metering, concurrency,
+                    requests != null ? requests : seconds != null ? 0 : 100,
+                    seconds != null ? Duration.ofSeconds(seconds) : null,
+                    rate);
+        } catch (IllegalArgumentException e) {
+            throw new CommandLine.ParameterException(methodCommand.commandSpec().commandLine(), e.getMessage());
+        }
+        return () -> loadTest(loadTester, request, outputFile);
+    }
 
+    private static int loadTest(LoadTester loadTester, PreparedRequest request, String outputFile) {
         try {
-            String serverUrl = first.get().getUrl() + resolvedPath + query;
-            URIBuilder uriBuilder = new URIBuilder(serverUrl);
-            if (authorization instanceof Authorization.UsernameAndPasswordInUriAuthority usernameAndPasswordInUriAuthority) {
-                uriBuilder.setUserInfo(usernameAndPasswordInUriAuthority.username(), usernameAndPasswordInUriAuthority.password());
+            if (outputFile != null) {
+                try (Writer writer = Files.newBufferedWriter(Session.path(outputFile))) {
+                    return loadTester.run(request, writer);
+                }
             }
-            return uriBuilder.build();
-        } catch (URISyntaxException e) {
-            throw new RuntimeException(e);
+            return loadTester.run(request, new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))); // Do not close stdout.
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
         }
     }
 
-    private String resolvePathParameters(String path, CommandLine.ParseResult methodCommand) {
-        Pattern pathParamPattern = Pattern.compile("\\{([^}]+)}");
-        Matcher pathParamMatcher = pathParamPattern.matcher(path);
-
-        boolean providedAllPathParameters = pathParamMatcher.results().allMatch((matchResult) -> {
-            String paramName = matchResult.group(1);
-            Optional<String> paramValue = parameterValue(methodCommand, paramName, "path");
-            return paramValue.isPresent();
-        });
-
-        assert(providedAllPathParameters); // All path parameters are required. so, `providedAllPathParameters` must be true.
-
-        String resolvedPath = pathParamMatcher.replaceAll((matchResult) -> {
-            String paramName = matchResult.group(1);
-            return parameterValue(methodCommand, paramName, "path").map(Object::toString).get(); // The value is present because `providedAllPathParameters` is true.
-        });
+    private IntSupplier paginate(CommandLine.ParseResult topCommand, PreparedRequest firstRequest) {
+        int parallelism = topCommand.matchedOptionValue(paginateParallelismOptionSpec.longestName(), 4);
+        String outputFile = topCommand.matchedOptionValue(outputFileOptionSpec.longestName(), (String) null); // No default value.
 
-        return resolvedPath;
+        Paginator paginator = new Paginator(retrier, parallelism, metering, compression);
+        return () -> paginate(paginator, firstRequest, outputFile);
     }
 
-    private <T> Optional<T> parameterValue(CommandLine.ParseResult operationCommand, String parameterName, String location) {
-        String optionName = String.format("--%s", parameterName);
-        String optionNameWithLocation = String.format("--%s-in-%s", parameterName, location);
-        return Optional.ofNullable(operationCommand.matchedOptionValue(optionName, (T) null))
-                .or(() -> Optional.ofNullable(operationCommand.matchedOptionValue(optionNameWithLocation, (T) null)));
+    private static int paginate(Paginator paginator, PreparedRequest firstRequest, String outputFile) {
+        try {
+            if (outputFile != null) {
+                try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(Session.path(outputFile), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))) {
+                    return paginator.run(firstRequest, outputStream);
+                }
+            }
+            return paginator.run(firstRequest, System.out); // Do not close stdout.
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
     }
 
     /**
-     * Return empty list if the list is null.
-     * <p>
-     *     Some methods of Swagger parser return null instead of empty list.
-     * @param list
-     * @return
-     * @param <T>
-     */
-    private <T> List<T> toEmptyListIfNull(List<T> list) {
-        return list == null ? Collections.emptyList() : list;
-    }
-
-    private Optional<String> resolveQueryParameters(String path, String method, CommandLine.ParseResult methodCommand) {
-        Operation operation = openAPI.getPaths().get(path).readOperationsMap().get(PathItem.HttpMethod.valueOf(method.toUpperCase()));
-        List<Parameter> queryParameters = toEmptyListIfNull(operation.getParameters()).stream()
-                .filter(parameter -> parameter.getIn().equals("query"))
-                .toList();
-        String resolvedQuery = queryParameters.stream().flatMap(parameter -> {
-                    String parameterName = parameter.getName();
-                    return parameterValue(methodCommand, parameterName, "query").map(value -> String.format("%s=%s", parameterName, value)).stream();
-                })
-                .collect(Collectors.joining("&"));
-
-        return Strings.isNullOrEmpty(resolvedQuery) ? Optional.empty() : Optional.of(resolvedQuery);
-    }
-
-    private Multimap<String, String> resolveHeaderParameters(String path, String method, CommandLine.ParseResult methodCommand) {
-        Operation operation = openAPI.getPaths().get(path).readOperationsMap().get(PathItem.HttpMethod.valueOf(method.toUpperCase()));
-        List<Parameter> headerParameters = toEmptyListIfNull(operation.getParameters()).stream()
-                .filter(parameter -> parameter.getIn().equals("header"))
-                .toList();
-        Multimap<String, String> resolvedHeaders = LinkedListMultimap.create();
-        headerParameters.forEach(parameter -> {
-            String parameterName = parameter.getName();
-            parameterValue(methodCommand, parameterName, "header").map(Object::toString).ifPresent(value -> resolvedHeaders.put(parameterName, value));
-        });
-        return Multimaps.unmodifiableMultimap(resolvedHeaders);
+     * User information inserted into the URI authority if the authorization is {@link Authorization.UsernameAndPasswordInUriAuthority}.
+     *
+     * @return Percent-encoded user information, or null.
+     */
+    private static String userInfo(Authorization authorization) {
+        if (authorization instanceof Authorization.UsernameAndPasswordInUriAuthority usernameAndPasswordInUriAuthority) {
+            StringBuilder userInfo = new StringBuilder();
+            OperationPlan.appendEncoded(userInfo, usernameAndPasswordInUriAuthority.username());
+            userInfo.append(':');
+            OperationPlan.appendEncoded(userInfo, usernameAndPasswordInUriAuthority.password());
+            return userInfo.toString();
+        }
+        return null;
     }
 
     private static OpenAPI parseOpenApi(String openApiJsonOrYaml) {
@@ -665,13 +1841,14 @@ public class RestCli {
     }
 
     /**
-     * Create top level {@link CommandSpec} object and create nested sub-command & sub-sub-command objects.
+     * Create top level {@link CommandSpec} object and attach the path sub-commands.
      *
      * @param commandName Command name.
-     * @param openAPI OpenAPI specification.
+     * @param apiModel    API model created from OpenAPI specification.
+     * @param pathTrees   Sub-trees of the paths created by {@link #pathTrees(ApiModel, Map, boolean)}.
      * @return {@link CommandSpec} object.
      */
-    private static CommandSpec createCommandSpec(String commandName, OpenAPI openAPI) {
+    private static CommandSpec createCommandSpec(String commandName, ApiModel apiModel, Collection<PathTree> pathTrees) {
         CommandSpec spec = CommandSpec.create();
 
         /*
@@ -679,28 +1856,41 @@ public class RestCli {
          * The version is the value of the field "version" in the OpenAPI specification.
          */
         spec.name(commandName);
-        spec.version(openAPI.getInfo().getVersion());
+        spec.version(apiModel.version());
 
         spec.mixinStandardHelpOptions(true);
 
         spec.usageMessage()
-                .description(openAPI.getInfo().getSummary());
+                .description(apiModel.summary());
 
         spec.addOption(generateBashAutoCompletionScriptOption);
 
         spec.addArgGroup(requestBodyArgGroupSpec);
         spec.addOption(outputFileOptionSpec);
+        spec.addOption(selectOptionSpec);
 
-        spec.addOption(assertHttpStatusCodeSpec);
+        spec.addOption(batchOptionSpec);
+        spec.addOption(batchParallelismOptionSpec);
 
-        openAPI.getPaths().forEach((path, pathItem) -> {
-            CommandSpec pathSpec = pathSpec(path, pathItem);
-            methodSpecs(pathItem).forEach(methodSpec -> {
-                pathSpec.addSubcommand(methodSpec.name(), methodSpec);
-            });
+        spec.addOption(paginateOptionSpec);
+        spec.addOption(paginateParallelismOptionSpec);
 
-            spec.addSubcommand(path, pathSpec);
-        });
+        spec.addOption(fanOutOptionSpec);
+        spec.addOption(fanOutParallelismOptionSpec);
+        spec.addOption(fanOutOrderOptionSpec);
+
+        spec.addOption(loadTestOptionSpec);
+        spec.addOption(loadTestRequestsOptionSpec);
+        spec.addOption(loadTestDurationOptionSpec);
+        spec.addOption(loadTestConcurrencyOptionSpec);
+        spec.addOption(loadTestRateOptionSpec);
+
+        spec.addOption(compressRequestBodyOptionSpec);
+        spec.addOption(noCacheOptionSpec);
+
+        spec.addOption(assertHttpStatusCodeSpec);
+
+        pathTrees.forEach(pathTree -> spec.addSubcommand(pathTree.model().path(), pathTree.commandLine()));
 
         return spec;
     }
@@ -710,131 +1900,207 @@ public class RestCli {
      * <p>
      * <strong>This method is heavy.</strong> It may take about 1 second to parse very big API specification.
      * Reuse the returned {@link RestCliSpec} object as much as possible.
+     * Use {@link RestCliSpec.Builder#specCache(SpecCache)} to skip parsing on later starts.
      *
      * @param openApiJsonOrYaml OpenAPI specification in JSON or YAML format.
      * @return {@link RestCliSpec} object.
      */
     public static RestCliSpec createRestCliSpec(String commandName, String openApiJsonOrYaml) {
-        OpenAPI openApi = parseOpenApi(openApiJsonOrYaml);
-        CommandSpec commandSpec = createCommandSpec(commandName, openApi);
-        return new RestCliSpec(commandSpec, openApi);
+        return new RestCliSpec.Builder(commandName, openApiJsonOrYaml).build();
     }
 
     /**
-     * Create CommandSpec object for the path sub-command of picocli.
+     * Sub-tree of a path: the path sub-command and its method sub-sub-commands.
+     * <p>
+     *     At first, the sub-commands are placeholders without options. The options are built when the plans are got for the first time.
      *
-     * @param path     It is a field pattern of PathItem object of OpenAPI. It includes leading slash '/'.
-     * @param pathItem PathItem object of OpenAPI.
-     * @return CommandSpec object for the path sub-command of picocli.
+     * @param model       Path model.
+     * @param commandLine Path sub-command.
+     * @param operations  Map method -> sub-tree of the operation.
+     * @param plans       Build the options of the sub-commands only once, and get map method -> plan.
      */
-    private static CommandSpec pathSpec(String path, PathItem pathItem) {
-        CommandSpec pathSpec = CommandSpec.create();
-        pathSpec.name(path);
-        pathSpec.mixinStandardHelpOptions(true);
-        pathSpec.usageMessage()
-                .description(pathItem.getSummary());
+    private record PathTree(ApiModel.PathModel model, CommandLine commandLine, Map<String, OperationTree> operations, Supplier<Map<String, OperationPlan>> plans) {
+    }
 
-        return pathSpec;
+    /**
+     * Sub-tree of an operation.
+     *
+     * @param model       Operation model.
+     * @param commandLine Method sub-sub-command.
+     * @param plan        Build the options of the sub-command only once, and get the plan.
+     */
+    private record OperationTree(ApiModel.OperationModel model, CommandLine commandLine, Supplier<OperationPlan> plan) {
     }
 
-    private static Set<CommandSpec> methodSpecs(PathItem pathItem) {
-        Set<CommandSpec> methodSpecs = new HashSet<>();
+    /**
+     * Create the sub-trees of the paths. Equal paths and operations of the previous sub-trees are reused, including their built options.
+     *
+     * @param apiModel API model.
+     * @param previous Map path -> previous sub-tree. The server URL of the previous sub-trees must be same.
+     * @param parallel Create the sub-trees in parallel.
+     * @return Map path -> sub-tree in the order of the specification.
+     */
+    private static Map<String, PathTree> pathTrees(ApiModel apiModel, Map<String, PathTree> previous, boolean parallel) {
+        String serverUrl = apiModel.servers().stream().findFirst().map(server -> server.resolve(Map.of())).orElse(null);
+
+        Stream<ApiModel.PathModel> pathModels = parallel ? apiModel.paths().values().parallelStream() : apiModel.paths().values().stream();
+        List<PathTree> pathTrees = pathModels
+                .map(pathModel -> {
+                    PathTree previousPathTree = previous.get(pathModel.path());
+                    if (previousPathTree != null && previousPathTree.model().equals(pathModel)) {
+                        return previousPathTree;
+                    }
+                    return pathTree(serverUrl, pathModel, previousPathTree == null ? Map.of() : previousPathTree.operations());
+                })
+                .toList(); // In the encounter order, even if parallel.
+
+        return pathTrees.stream().collect(ImmutableMap.toImmutableMap(pathTree -> pathTree.model().path(), pathTree -> pathTree));
+    }
+
+    private static PathTree pathTree(String serverUrl, ApiModel.PathModel pathModel, Map<String, OperationTree> previousOperations) {
+        CommandSpec pathSpec = pathSpec(pathModel);
+
+        Map<String, OperationTree> operations = new LinkedHashMap<>();
+        pathModel.operations().forEach((method, operation) -> {
+            OperationTree previousOperation = previousOperations.get(method);
+            OperationTree operationTree = previousOperation != null && previousOperation.model().equals(operation)
+                    ? previousOperation
+                    : operationTree(serverUrl, pathModel.path(), operation);
+            pathSpec.addSubcommand(method, operationTree.commandLine());
+            operations.put(method, operationTree);
+        });
 
-        pathItem.readOperationsMap().forEach((method, operation) -> {
-            methodSpecs.add(methodSpec(method.toString().toLowerCase(), pathItem, operation));
+        Supplier<Map<String, OperationPlan>> plans = Suppliers.memoize(() -> {
+            pathSpec.mixinStandardHelpOptions(true);
+            Map<String, OperationPlan> operationPlans = new LinkedHashMap<>();
+            operations.forEach((method, operationTree) -> operationPlans.put(method, operationTree.plan().get()));
+            return Collections.unmodifiableMap(operationPlans);
         });
 
-        return methodSpecs;
+        return new PathTree(pathModel, new CommandLine(pathSpec), Collections.unmodifiableMap(operations), plans);
+    }
+
+    private static OperationTree operationTree(String serverUrl, String path, ApiModel.OperationModel operation) {
+        CommandSpec methodSpec = methodSpec(operation);
+        Supplier<OperationPlan> plan = Suppliers.memoize(() -> {
+            methodSpec.mixinStandardHelpOptions(true);
+            Map<ApiModel.ParameterModel, OptionSpec> options = addParameterOptions(methodSpec, operation);
+            Map<ApiModel.PartModel, OptionSpec> partOptions = addPartOptions(methodSpec, operation);
+            return OperationPlan.compile(serverUrl, path, operation, options, partOptions);
+        });
+        return new OperationTree(operation, new CommandLine(methodSpec), plan);
     }
 
     /**
-     * @param method    It is one of get, head, post, put, delete, options, trace, patch.
-     * @param pathItem  PathItem object of OpenAPI.
-     * @param operation Operation object of OpenAPI.
-     * @return CommandSpec object for the method sub-sub-command of picocli.
+     * Create CommandSpec object for the path sub-command of picocli.
+     * <p>
+     *     It is a placeholder without the standard help options. Creating them is not cheap.
+     *
+     * @param pathModel Path model. Its path is a field pattern of PathItem object of OpenAPI. It includes leading slash '/'.
+     * @return CommandSpec object for the path sub-command of picocli.
      */
-    private static CommandSpec methodSpec(String method, PathItem pathItem, Operation operation) {
-        CommandSpec methodSpec = CommandSpec.create();
-
-        methodSpec.mixinStandardHelpOptions(true);
+    private static CommandSpec pathSpec(ApiModel.PathModel pathModel) {
+        CommandSpec pathSpec = CommandSpec.create();
+        pathSpec.name(pathModel.path());
+        pathSpec.usageMessage()
+                .description(pathModel.summary());
 
-        methodSpec.name(method)
-                .usageMessage().description(operation.getSummary());
+        return pathSpec;
+    }
 
-        // name -> location -> parameter. location is one of "path", "query", "header", "cookie".
-        Map<String, Map<String, Parameter>> parameters = parameters(pathItem, operation);
-        parameters.forEach((name, locatedParameters) -> {
-            // If there are multiple parameters with same name but different location, the option name is like "--name-in-path" and "--name-in-query".
-            boolean locationRequired = locatedParameters.size() != 1;
+    /**
+     * Create CommandSpec object for the method sub-sub-command of picocli.
+     * <p>
+     *     It is a placeholder without the standard help options and the options for the parameters.
+     *
+     * @param operation Operation model. Its method is one of get, head, post, put, delete, options, trace, patch.
+     * @return CommandSpec object for the method sub-sub-command of picocli.
+     */
+    private static CommandSpec methodSpec(ApiModel.OperationModel operation) {
+        CommandSpec methodSpec = CommandSpec.create();
 
-            locatedParameters.forEach((location, parameter) -> {
-                String optionName = String.format("--%s", name);
-                if (locationRequired) {
-                    optionName = String.format("--%s-in-%s", optionName, location);
-                }
+        methodSpec.name(operation.method())
+                .usageMessage().description(operation.summary());
 
-                OptionSpec.Builder optionSpecBuilder = OptionSpec.builder(optionName)
-                        .description(parameter.getDescription())
-                        .required(parameter.getRequired() || "path".equals(location));
-
-                Optional<Schema> optionalSchema = Optional.ofNullable(parameter.getSchema());
-                optionalSchema.ifPresent(schema -> {
-                    Optional<String> optionalType = Optional.ofNullable(schema.getType());
-                    optionalType.ifPresent(type -> {
-                        Class clazz = switch (type) {
-                            case "string" -> String.class;
-                            case "integer" -> Integer.class;
-                            case "boolean" -> Boolean.class;
-                            case "array" -> List.class;
-                            default -> throw new IllegalStateException("Unexpected value: " + type);
-                        };
-                        optionSpecBuilder.type(clazz);
-                        optionSpecBuilder.paramLabel(type);
-                    });
-                });
+        return methodSpec;
+    }
 
-                methodSpec.addOption(optionSpecBuilder.build());
+    /**
+     * Add options for the parameters of the operation to the method sub-sub-command.
+     *
+     * @return Map parameter -> added option.
+     */
+    private static Map<ApiModel.ParameterModel, OptionSpec> addParameterOptions(CommandSpec methodSpec, ApiModel.OperationModel operation) {
+        // If there are multiple parameters with same name but different location, the option name is like "--name-in-path" and "--name-in-query".
+        Map<String, Long> locationCounts = operation.parameters().stream()
+                .collect(Collectors.groupingBy(ApiModel.ParameterModel::name, Collectors.counting()));
+
+        Map<ApiModel.ParameterModel, OptionSpec> options = new LinkedHashMap<>();
+        operation.parameters().forEach(parameter -> {
+            String name = parameter.name();
+            String location = parameter.location();
+            boolean locationRequired = locationCounts.get(name) != 1;
+
+            String optionName = locationRequired
+                    ? String.format("--%s-in-%s", name, location)
+                    : String.format("--%s", name);
+
+            OptionSpec.Builder optionSpecBuilder = OptionSpec.builder(optionName)
+                    .description(Strings.nullToEmpty(parameter.description()))
+                    .required(parameter.required() || "path".equals(location));
+
+            Optional.ofNullable(parameter.type()).ifPresent(type -> {
+                Class clazz = switch (type) {
+                    case "string" -> String.class;
+                    case "integer" -> Integer.class;
+                    case "boolean" -> Boolean.class;
+                    case "array" -> List.class;
+                    default -> throw new IllegalStateException("Unexpected value: " + type);
+                };
+                optionSpecBuilder.type(clazz);
+                optionSpecBuilder.paramLabel(type);
             });
-        });
 
-        return methodSpec;
-    }
+            OptionSpec optionSpec = optionSpecBuilder.build();
+            methodSpec.addOption(optionSpec);
+            options.put(parameter, optionSpec);
+        });
 
-    private static <T> List<T> emptyListIfNull(List<T> list) {
-        return list == null ? Collections.emptyList() : list;
+        return options;
     }
 
     /**
-     * Merge parameters for path-item and operation.
-     * Parameter has name and location.
-     * Location is one of "path", "query", "header", "cookie". (See <a href="https://spec.openapis.org/oas/v3.1.0#parameterIn">the OpenAPI spec</a>.)
+     * Add options for the parts of {@literal multipart/form-data} body to the method sub-sub-command.
+     * <p>
+     *     The option of a binary part takes a file path. If a parameter has the same name, the option name is like "--name-in-body".
      *
-     * @param pathItem
-     * @param operation
-     * @return Map name -> location -> parameter. For example, {"userId" -> {"path" -> paramUserIdInPath}, "isAdmin" -> {"query" -> paramIsAdminInQuery}}
+     * @return Map part -> added option.
      */
-    private static Map<String, Map<String, Parameter>> parameters(PathItem pathItem, Operation operation) {
-        List<Parameter> pathItemParameters = emptyListIfNull(pathItem.getParameters());
-        List<Parameter> operationParameters = emptyListIfNull(operation.getParameters());
-
-        Map<String, Map<String, Parameter>> mergedParameters = new HashMap<>();
+    private static Map<ApiModel.PartModel, OptionSpec> addPartOptions(CommandSpec methodSpec, ApiModel.OperationModel operation) {
+        if (operation.requestBody() == null || operation.requestBody().parts().isEmpty()) {
+            return Map.of();
+        }
 
-        pathItemParameters.forEach(parameter -> {
-            String name = parameter.getName();
-            Map<String, Parameter> locatedParameters = mergedParameters.computeIfAbsent(name, (_name) -> new HashMap<>());
-            locatedParameters.put(parameter.getIn(), parameter);
-        });
+        Map<ApiModel.PartModel, OptionSpec> options = new LinkedHashMap<>();
+        operation.requestBody().parts().forEach(part -> {
+            String optionName = String.format("--%s", part.name());
+            if (methodSpec.optionsMap().containsKey(optionName)) {
+                optionName = String.format("--%s-in-body", part.name());
+            }
 
-        /*
-         * A parameter for operation overrides a parameter for path-item if it has same name and location.
-         * See https://spec.openapis.org/oas/v3.1.0#fixed-fields-7
-         */
-        operationParameters.forEach(overridingParameter -> {
-            String name = overridingParameter.getName();
-            Map<String, Parameter> locatedParameters = mergedParameters.computeIfAbsent(name, (_name) -> new HashMap<>());
-            locatedParameters.put(overridingParameter.getIn(), overridingParameter);
+            String description = part.binary() ? "File of the part. " : "Value of the part. ";
+            OptionSpec optionSpec = OptionSpec.builder(optionName)
+                    .description(description + Strings.nullToEmpty(part.description()))
+                    .required(false) // Required parts are checked only if the body is multipart.
+                    .arity("1")
+                    .type(part.array() ? List.class : String.class)
+                    .auxiliaryTypes(String.class)
+                    .paramLabel(part.binary() ? "file" : "string")
+                    .build();
+            methodSpec.addOption(optionSpec);
+            options.put(part, optionSpec);
         });
 
-        return mergedParameters;
+        return options;
     }
 }
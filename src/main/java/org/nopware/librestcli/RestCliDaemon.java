@@ -0,0 +1,580 @@
+package org.nopware.librestcli;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import dev.dirs.ProjectDirectories;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Resident process executing commands on behalf of launchers, so each invocation does not start a JVM and parse the specification.
+ * <p>
+ *     The daemon listens on a Unix domain socket. {@link #forward(Path, String, String...)} sends the arguments and the working directory,
+ *     relays stdin, stdout and stderr, and returns the exit code. Each session runs on a virtual thread.
+ *     Specifications are parsed when they are first used and kept with their {@link RestCli}, so connections of the transport stay warm.
+ *     A specification file is checked at each session, and reloaded if it has been changed.
+ *     The daemon shuts down when no session has been active for the idle timeout.
+ * <p>
+ *     A launcher typically tries {@link #forward(Path, String, String...)} first, and executes the command in its own process if no daemon is running:
+ *     <pre>{@code
+ * try {
+ *     System.exit(RestCliDaemon.forward(socket, "kvscli", args));
+ * } catch (IOException e) {
+ *     System.exit(RestCli.execute(restCliSpec, args));
+ * }
+ *     }</pre>
+ *     Environment variables of the launcher are not sent. Authorization is what the daemon's {@link RestCli} has.
+ */
+@Slf4j
+public final class RestCliDaemon implements Closeable {
+    private static final int PROTOCOL_VERSION = 1;
+
+    // Frames from the launcher.
+    private static final byte START = 'S';
+    private static final byte STDIN = 'I';
+    // Frames from the daemon.
+    private static final byte STDOUT = 'O';
+    private static final byte STDERR = 'E';
+    private static final byte READ = 'R';
+    private static final byte EXIT = 'X';
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Connections waiting to be accepted. Launchers may start at once, for example by {@literal xargs -P}.
+     * A non-blocking connect beyond the backlog fails with EAGAIN instead of waiting. The default of the JDK is 50.
+     */
+    private static final int BACKLOG = 1024;
+
+    /**
+     * Command served by the daemon. Its {@link RestCli} is created when the command is first used, and again when the specification file changes.
+     */
+    private static final class Command {
+        private final String name;
+        private final Path openApiFile;
+        private final Function<RestCli.RestCliSpec, RestCli> restCliFactory;
+        private final SpecCache specCache;
+
+        private FileTime lastModifiedTime;
+        private long size = -1;
+        private HashCode fingerprint;
+        private RestCli restCli;
+
+        Command(String name, Path openApiFile, Function<RestCli.RestCliSpec, RestCli> restCliFactory, SpecCache specCache) {
+            this.name = name;
+            this.openApiFile = openApiFile;
+            this.restCliFactory = restCliFactory;
+            this.specCache = specCache;
+        }
+
+        synchronized RestCli restCli() throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(openApiFile, BasicFileAttributes.class);
+            if (restCli != null && attributes.lastModifiedTime().equals(lastModifiedTime) && attributes.size() == size) {
+                return restCli;
+            }
+
+            String openApiJsonOrYaml = Files.readString(openApiFile, StandardCharsets.UTF_8);
+            HashCode newFingerprint = Hashing.sha256().hashString(openApiJsonOrYaml, StandardCharsets.UTF_8);
+            if (!newFingerprint.equals(fingerprint)) {
+                log.info("{} the specification of {}: {}", restCli == null ? "Load" : "Reload", name, openApiFile);
+                RestCli.RestCliSpec.Builder builder = new RestCli.RestCliSpec.Builder(name, openApiJsonOrYaml).lazy(true);
+                if (specCache != null) {
+                    builder.specCache(specCache);
+                }
+                if (restCli != null) {
+                    builder.previous(restCli.restCliSpec()); // Rebuild only the changed paths.
+                }
+                restCli = restCliFactory.apply(builder.build());
+                fingerprint = newFingerprint;
+            }
+            lastModifiedTime = attributes.lastModifiedTime();
+            size = attributes.size();
+            return restCli;
+        }
+    }
+
+    public static class Builder {
+        Path socket;
+        Duration idleTimeout = Duration.ofMinutes(30);
+        SpecCache specCache;
+        Map<String, CommandSource> commands = new LinkedHashMap<>();
+
+        private record CommandSource(Path openApiFile, Function<RestCli.RestCliSpec, RestCli> restCliFactory) {
+        }
+
+        /**
+         * @param socket Path of the Unix domain socket. For example, {@link #defaultSocket(String)}.
+         *               Its directory is created accessible only by the user. If it exists, it must be so.
+         */
+        public Builder(@NonNull Path socket) {
+            this.socket = socket;
+        }
+
+        /**
+         * Shut down the daemon when no session has been active for the duration. Default is 30 minutes.
+         */
+        public Builder idleTimeout(@NonNull Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * Use the cache of compiled specifications, so a restarted daemon does not parse the specifications again.
+         */
+        public Builder specCache(@NonNull SpecCache specCache) {
+            this.specCache = specCache;
+            return this;
+        }
+
+        /**
+         * Serve the command by {@link RestCli} created with the default options.
+         *
+         * @param commandName Command name sent by launchers.
+         * @param openApiFile OpenAPI specification in JSON or YAML format.
+         */
+        public Builder command(@NonNull String commandName, @NonNull Path openApiFile) {
+            return command(commandName, openApiFile, restCliSpec -> new RestCli.Builder(restCliSpec).build());
+        }
+
+        /**
+         * Serve the command by {@link RestCli} created by the factory. The factory is called again when the specification file changes.
+         *
+         * @param commandName    Command name sent by launchers.
+         * @param openApiFile    OpenAPI specification in JSON or YAML format.
+         * @param restCliFactory For example, {@code restCliSpec -> new RestCli.Builder(restCliSpec).authorization(authorization).build()}.
+         */
+        public Builder command(@NonNull String commandName, @NonNull Path openApiFile, @NonNull Function<RestCli.RestCliSpec, RestCli> restCliFactory) {
+            this.commands.put(commandName, new CommandSource(openApiFile, restCliFactory));
+            return this;
+        }
+
+        public RestCliDaemon build() {
+            Map<String, Command> daemonCommands = new LinkedHashMap<>();
+            commands.forEach((name, source) -> daemonCommands.put(name, new Command(name, source.openApiFile(), source.restCliFactory(), specCache)));
+            return new RestCliDaemon(socket, idleTimeout, daemonCommands);
+        }
+    }
+
+    private final Path socket;
+    private final Duration idleTimeout;
+    private final Map<String, Command> commands;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private volatile long lastActivity = System.nanoTime();
+    private ServerSocketChannel serverChannel;
+
+    private RestCliDaemon(Path socket, Duration idleTimeout, Map<String, Command> commands) {
+        this.socket = socket;
+        this.idleTimeout = idleTimeout;
+        this.commands = Map.copyOf(commands);
+    }
+
+    /**
+     * Socket in the user runtime directory, or in the directory {@literal daemon} of the user cache directory if there is no runtime directory.
+     * For example, {@literal /run/user/1000/librestcli/kvscli.sock} on Linux.
+     */
+    public static Path defaultSocket(@NonNull String commandName) {
+        ProjectDirectories projectDirectories = ProjectDirectories.from("org", "nopware", "librestcli");
+        return projectDirectories.runtimeDir != null
+                ? Paths.get(projectDirectories.runtimeDir, commandName + ".sock")
+                : Paths.get(projectDirectories.cacheDir, "daemon", commandName + ".sock"); // The cache directory is shared with the caches.
+    }
+
+    /**
+     * Listen on the socket, and serve sessions until {@link #close()} or the idle timeout.
+     *
+     * @throws IOException If another daemon is listening on the socket, or the directory of the socket is accessible by other users.
+     */
+    public synchronized RestCliDaemon start() throws IOException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("Already started.");
+        }
+        createPrivateDirectory(socket.toAbsolutePath().getParent());
+        if (Files.exists(socket)) {
+            if (isListening(socket)) {
+                throw new IOException("Another daemon is listening on " + socket);
+            }
+            Files.delete(socket); // Left by a daemon which did not shut down.
+        }
+
+        Session.install();
+        serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        serverChannel.bind(UnixDomainSocketAddress.of(socket), BACKLOG);
+        log.info("Daemon listening on {}", socket);
+
+        Thread.ofPlatform().name("librestcli-daemon").start(this::acceptLoop);
+        Thread.ofVirtual().name("librestcli-daemon-idle").start(this::shutDownWhenIdle);
+        return this;
+    }
+
+    /**
+     * Sessions act with the authorization of the daemon, so only the user can reach the socket.
+     * The directory is private before the socket is bound, so the socket is never exposed by the umask.
+     */
+    private static void createPrivateDirectory(Path directory) throws IOException {
+        try {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(directory);
+            if (!Set.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE).containsAll(permissions)) {
+                throw new IOException("The directory of the socket is accessible by other users: " + directory + " (" + PosixFilePermissions.toString(permissions) + ")");
+            }
+        } catch (UnsupportedOperationException e) {
+            log.debug("POSIX file permissions are not supported: {}", directory);
+            Files.createDirectories(directory);
+        }
+    }
+
+    private static boolean isListening(Path socket) {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            return channel.isConnected();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Wait until the daemon shuts down.
+     */
+    public void awaitTermination() throws InterruptedException {
+        terminated.await();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * Stop accepting sessions. Sessions in progress continue.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverChannel != null && serverChannel.isOpen()) {
+            serverChannel.close();
+            Files.deleteIfExists(socket);
+            log.info("Daemon stopped: {}", socket);
+        }
+    }
+
+    private void acceptLoop() {
+        try {
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                activeSessions.incrementAndGet();
+                lastActivity = System.nanoTime();
+                Thread.ofVirtual().name("librestcli-session").start(() -> {
+                    try {
+                        serve(channel);
+                    } finally {
+                        lastActivity = System.nanoTime();
+                        activeSessions.decrementAndGet();
+                    }
+                });
+            }
+        } catch (ClosedChannelException e) {
+            log.debug("Daemon socket closed.");
+        } catch (IOException e) {
+            log.error("Failed to accept a session.", e);
+        } finally {
+            try {
+                close();
+            } catch (IOException e) {
+                log.warn("Failed to close the daemon.", e);
+            }
+            terminated.countDown();
+        }
+    }
+
+    private void shutDownWhenIdle() {
+        try {
+            while (serverChannel.isOpen()) {
+                long idle = System.nanoTime() - lastActivity;
+                if (activeSessions.get() == 0 && idle >= idleTimeout.toNanos()) {
+                    log.info("No session for {}. Shut down the daemon.", idleTimeout);
+                    close();
+                    return;
+                }
+                Thread.sleep(Duration.ofNanos(Math.max(idleTimeout.toNanos() - idle, TimeUnit.MILLISECONDS.toNanos(10))));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("Failed to close the daemon.", e);
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+            byte[] start = readFrame(in, START);
+            DataInputStream startIn = new DataInputStream(new ByteArrayInputStream(start));
+            int version = startIn.readInt();
+            String commandName = startIn.readUTF();
+            Path workingDirectory = Paths.get(startIn.readUTF());
+            String[] args = new String[startIn.readInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = new String(startIn.readNBytes(startIn.readInt()), StandardCharsets.UTF_8);
+            }
+
+            PrintStream stdout = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, STDOUT), CHUNK_SIZE), false, StandardCharsets.UTF_8);
+            PrintStream stderr = new PrintStream(new FrameOutputStream(out, STDERR), true, StandardCharsets.UTF_8);
+            Session session = new Session(workingDirectory, new FrameInputStream(in, out), stdout, stderr);
+
+            int exitCode = session.call(() -> {
+                if (version != PROTOCOL_VERSION) {
+                    System.err.printf("Unsupported protocol version %d. Restart the daemon.%n", version);
+                    return 1;
+                }
+                Command command = commands.get(commandName);
+                if (command == null) {
+                    System.err.printf("Unknown command: %s%n", commandName);
+                    return 1;
+                }
+                try {
+                    return command.restCli().execute(args);
+                } catch (IOException | RuntimeException e) {
+                    log.error("Failed to execute {}.", commandName, e);
+                    System.err.println(e.getMessage());
+                    return 1;
+                }
+            });
+            writeFrame(out, EXIT, intBytes(exitCode), 0, Integer.BYTES);
+            out.flush();
+        } catch (EOFException e) {
+            log.info("The launcher disconnected.");
+        } catch (Exception e) {
+            log.warn("Session failed.", e);
+        }
+    }
+
+    /**
+     * Execute the command by the daemon listening on the socket, with the standard streams and the working directory of this process.
+     *
+     * @param socket      Socket of the daemon.
+     * @param commandName Command name registered in the daemon.
+     * @param args        Command line arguments.
+     * @return Exit code.
+     * @throws IOException If no daemon is listening on the socket, or the connection is lost.
+     */
+    public static int forward(@NonNull Path socket, @NonNull String commandName, String... args) throws IOException {
+        return forward(socket, commandName, Paths.get("").toAbsolutePath(), System.in, System.out, System.err, args);
+    }
+
+    static int forward(Path socket, String commandName, Path workingDirectory, InputStream stdin, OutputStream stdout, OutputStream stderr, String... args) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+            ByteArrayOutputStream start = new ByteArrayOutputStream();
+            DataOutputStream startOut = new DataOutputStream(start);
+            startOut.writeInt(PROTOCOL_VERSION);
+            startOut.writeUTF(commandName);
+            startOut.writeUTF(workingDirectory.toString());
+            startOut.writeInt(args.length);
+            for (String arg : args) {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8); // writeUTF() is limited to 64 KiB.
+                startOut.writeInt(bytes.length);
+                startOut.write(bytes);
+            }
+            writeFrame(out, START, start.toByteArray(), 0, start.size());
+            out.flush();
+
+            byte[] buffer = new byte[CHUNK_SIZE];
+            while (true) {
+                byte type = in.readByte();
+                byte[] payload = in.readNBytes(in.readInt());
+                switch (type) {
+                    case STDOUT -> {
+                        stdout.write(payload);
+                        stdout.flush();
+                    }
+                    case STDERR -> {
+                        stderr.write(payload);
+                        stderr.flush();
+                    }
+                    case READ -> { // Read stdin only as requested, so the input after what the command reads is left to the next process.
+                        int n = stdin.read(buffer, 0, Math.min(buffer.length, intOf(payload)));
+                        writeFrame(out, STDIN, buffer, 0, Math.max(n, 0)); // Empty frame is EOF.
+                        out.flush();
+                    }
+                    case EXIT -> {
+                        return intOf(payload);
+                    }
+                    default -> throw new IOException("Unknown frame: " + type);
+                }
+            }
+        }
+    }
+
+    /**
+     * Launcher. Usage: {@literal RestCliDaemon <socket> <command> [<args>...]}
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: RestCliDaemon <socket> <command> [<args>...]");
+            System.exit(2);
+        }
+        List<String> commandArgs = new ArrayList<>(List.of(args).subList(2, args.length));
+        try {
+            System.exit(forward(Paths.get(args[0]), args[1], commandArgs.toArray(String[]::new)));
+        } catch (IOException e) {
+            System.err.printf("No daemon on %s: %s%n", args[0], e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void writeFrame(DataOutputStream out, byte type, byte[] payload, int offset, int length) throws IOException {
+        synchronized (out) {
+            out.writeByte(type);
+            out.writeInt(length);
+            out.write(payload, offset, length);
+        }
+    }
+
+    private static byte[] intBytes(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    private static int intOf(byte[] bytes) throws IOException {
+        if (bytes.length != Integer.BYTES) {
+            throw new IOException("Broken frame.");
+        }
+        return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+    }
+
+    private static byte[] readFrame(DataInputStream in, byte expectedType) throws IOException {
+        byte type = in.readByte();
+        byte[] payload = in.readNBytes(in.readInt());
+        if (type != expectedType) {
+            throw new IOException("Unexpected frame: " + type);
+        }
+        return payload;
+    }
+
+    /**
+     * Output of a session sent to the launcher as frames. Frames are flushed when the stream is flushed.
+     */
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                writeFrame(out, type, b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Stdin of a session. Bytes are requested from the launcher when the command reads them.
+     */
+    private static final class FrameInputStream extends InputStream {
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private byte[] buffer = new byte[0];
+        private int position;
+        private boolean eof;
+
+        FrameInputStream(DataInputStream in, DataOutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        private boolean fill() throws IOException {
+            if (position < buffer.length) {
+                return true;
+            }
+            if (eof) {
+                return false;
+            }
+            synchronized (out) {
+                writeFrame(out, READ, intBytes(CHUNK_SIZE), 0, Integer.BYTES);
+                out.flush();
+            }
+            buffer = readFrame(in, STDIN);
+            position = 0;
+            eof = buffer.length == 0;
+            return !eof;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            return fill() ? buffer[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.length - position);
+            System.arraycopy(buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public synchronized int available() {
+            return buffer.length - position;
+        }
+    }
+}
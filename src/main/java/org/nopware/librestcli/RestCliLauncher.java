@@ -0,0 +1,174 @@
+package org.nopware.librestcli;
+
+import lombok.extern.slf4j.Slf4j;
+import picocli.CommandLine;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Model.OptionSpec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Generic launcher of a CLI for an OpenAPI specification file, and the training run for class data sharing (AppCDS).
+ * <p>
+ *     Usage: {@literal RestCliLauncher [--spec-cache] [--train [--jvm-args-file=<file>]] <command> <spec-file> [<args>...]}
+ * <p>
+ *     {@code --train} runs the work of typical invocations without network access: parsing the specification, building the commands,
+ *     printing usage help, parsing arguments and building requests, and decoding JSON and gzip.
+ *     Run it with {@literal -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile=<archive>}, so the JVM dumps the classes it loaded into the archive at exit.
+ *     Later starts with the same options map the archive instead of loading and verifying the classes, and the JVM recreates the archive if it is stale.
+ *     {@code --jvm-args-file} writes these options and the class path to a file for {@literal java @<file>}.
+ *     See the {@code cds} profile of the pom.
+ */
+@Slf4j
+public final class RestCliLauncher {
+    /**
+     * Number of operations whose requests are built by the training run. Enough to load the classes, even for a big specification.
+     */
+    private static final int TRAINING_OPERATIONS = 50;
+
+    private RestCliLauncher() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String... args) {
+        boolean train = false;
+        boolean specCache = false;
+        Path jvmArgsFile = null;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            if (args[i].equals("--train")) {
+                train = true;
+            } else if (args[i].equals("--spec-cache")) {
+                specCache = true;
+            } else if (args[i].startsWith("--jvm-args-file=")) {
+                jvmArgsFile = Paths.get(args[i].substring("--jvm-args-file=".length()));
+            } else {
+                break;
+            }
+        }
+        if (args.length - i < 2) {
+            System.err.println("Usage: RestCliLauncher [--spec-cache] [--train [--jvm-args-file=<file>]] <command> <spec-file> [<args>...]");
+            return 2;
+        }
+        String commandName = args[i];
+        Path specFile = Paths.get(args[i + 1]);
+        String[] commandArgs = List.of(args).subList(i + 2, args.length).toArray(String[]::new);
+
+        String openApiJsonOrYaml;
+        try {
+            openApiJsonOrYaml = Files.readString(specFile, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Failed to read the specification: " + e.getMessage());
+            return 1;
+        }
+        RestCli.RestCliSpec.Builder specBuilder = new RestCli.RestCliSpec.Builder(commandName, openApiJsonOrYaml).lazy(!train);
+        if (specCache) {
+            specBuilder.specCache(SpecCache.defaultCache());
+        }
+        RestCli.RestCliSpec restCliSpec = specBuilder.build();
+
+        if (!train) {
+            return new RestCli.Builder(restCliSpec).build().execute(commandArgs);
+        }
+        try {
+            train(restCliSpec);
+            if (jvmArgsFile != null) {
+                writeJvmArgsFile(jvmArgsFile);
+            }
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Training failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Run the work of typical invocations, except sending requests.
+     */
+    static void train(RestCli.RestCliSpec restCliSpec) throws IOException {
+        PrintWriter discard = new PrintWriter(OutputStream.nullOutputStream());
+        RestCli restCli = new RestCli.Builder(restCliSpec)
+                .commandLineOut(discard)
+                .commandLineErr(discard)
+                .metricsListener(MetricsListener.NONE)
+                .build();
+        restCli.execute("--help");
+
+        int operations = 0;
+        for (CommandSpec pathSpec : restCliSpec.commandSpec().subcommands().values().stream().map(CommandLine::getCommandSpec).toList()) {
+            for (CommandSpec methodSpec : pathSpec.subcommands().values().stream().map(CommandLine::getCommandSpec).toList()) {
+                if (operations++ >= TRAINING_OPERATIONS) {
+                    break;
+                }
+                List<String> args = new ArrayList<>(List.of(pathSpec.name(), methodSpec.name()));
+                for (OptionSpec option : methodSpec.options()) {
+                    if (option.required()) {
+                        args.add(option.longestName() + "=1");
+                    }
+                }
+                try {
+                    restCli.prepareRequest(args.toArray(String[]::new), null);
+                } catch (CommandLine.ParameterException | IllegalArgumentException e) { // For example, a server URL with variables.
+                    log.debug("Skip {} {} in the training: {}", pathSpec.name(), methodSpec.name(), e.getMessage());
+                }
+            }
+            restCli.execute(pathSpec.name(), "--help");
+        }
+
+        Transport.shared(); // HTTP client.
+
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (OutputStream encoder = ContentCodec.GZIP.encode(gzip)) {
+            encoder.write("[{\"id\": 1, \"name\": \"librestcli\"}]".getBytes(StandardCharsets.UTF_8));
+        }
+        HttpHeaders headers = HttpHeaders.of(Map.of("Content-Encoding", List.of("gzip")), (name, value) -> true);
+        try (InputStream body = new Compression(List.of(ContentCodec.GZIP)).decode(headers, new ByteArrayInputStream(gzip.toByteArray()))) {
+            JsonSelector.parse("$[*].name").select(body, OutputStream.nullOutputStream(), false);
+        }
+    }
+
+    /**
+     * Write the options of this JVM for class data sharing, and the class path, as a {@literal java @<file>} argument file.
+     */
+    private static void writeJvmArgsFile(Path file) throws IOException {
+        List<String> jvmArgs = new ArrayList<>();
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith("-XX:SharedArchiveFile=")) {
+                jvmArgs.add("-XX:SharedArchiveFile=" + Paths.get(argument.substring("-XX:SharedArchiveFile=".length())).toAbsolutePath());
+            } else if (argument.equals("-XX:+AutoCreateSharedArchive") || argument.equals("--enable-preview")) {
+                jvmArgs.add(argument);
+            }
+        }
+        jvmArgs.add("-cp");
+        jvmArgs.add(quote(Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+                .map(entry -> Paths.get(entry).toAbsolutePath().toString()) // The archive is valid only for the same class path.
+                .collect(Collectors.joining(File.pathSeparator))));
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Files.write(file, jvmArgs, StandardCharsets.UTF_8);
+        log.info("Wrote the JVM options to {}. Run: java @{} <main-class> <args>...", file, file);
+    }
+
+    private static String quote(String argument) {
+        return "\"" + argument.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,225 @@
+package org.nopware.librestcli;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Send requests by the {@link Transport} with retries of the {@link RetryPolicy}.
+ * <p>
+ *     The body of a response to retry is discarded without being passed to the body handler, so the handler sees only the last response.
+ *     Quotas of the rate limits are tracked per origin by X-RateLimit-Limit, X-RateLimit-Remaining and X-RateLimit-Reset of the responses.
+ * <p>
+ *     The bodies of retried requests must be replayable, because the same {@link HttpRequest} is sent again.
+ */
+@Slf4j
+final class Retrier {
+    private final Transport transport;
+    private final RetryPolicy policy;
+    private final ServerSelector.Route route;
+    private final Map<String, RateLimit> rateLimits = new ConcurrentHashMap<>();
+
+    Retrier(Transport transport, RetryPolicy policy) {
+        this(transport, policy, ServerSelector.Route.DIRECT);
+    }
+
+    /**
+     * @param route Each attempt is sent to the server selected by the route, so a retry may go to another server.
+     */
+    Retrier(Transport transport, RetryPolicy policy, ServerSelector.Route route) {
+        this.transport = transport;
+        this.policy = policy;
+        this.route = route;
+    }
+
+    RetryPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * @return True if the requests of the method are retried, so their bodies must be replayable.
+     */
+    boolean retries(String method) {
+        return policy.retries(method);
+    }
+
+    /**
+     * Quota of a rate limit of an origin.
+     */
+    private static final class RateLimit {
+        private long limit; // Guarded by this.
+        private long remaining; // Guarded by this.
+        private Instant reset; // Guarded by this. Null if unknown.
+
+        synchronized void update(HttpHeaders headers) {
+            OptionalLong newLimit = RetryPolicy.longHeader(headers, "X-RateLimit-Limit");
+            OptionalLong newRemaining = RetryPolicy.longHeader(headers, "X-RateLimit-Remaining");
+            OptionalLong newReset = RetryPolicy.longHeader(headers, "X-RateLimit-Reset");
+            if (newLimit.isPresent() && newRemaining.isPresent() && newReset.isPresent()) {
+                limit = newLimit.getAsLong();
+                remaining = newRemaining.getAsLong();
+                reset = Instant.ofEpochSecond(newReset.getAsLong());
+            }
+        }
+
+        /**
+         * Take a request from the quota.
+         *
+         * @return Delay to spread the remaining requests until the reset. Zero if the quota is not low.
+         */
+        synchronized Duration acquire(double slowDownBelow, Instant now) {
+            if (reset == null || !now.isBefore(reset)) {
+                return Duration.ZERO;
+            }
+            if (remaining > limit * slowDownBelow) {
+                remaining--;
+                return Duration.ZERO;
+            }
+            Duration delay = Duration.between(now, reset).dividedBy(Math.max(1, remaining + 1));
+            remaining = Math.max(0, remaining - 1);
+            return delay;
+        }
+    }
+
+    /**
+     * Result of the body handler: whether the response is retried.
+     */
+    private static final class Attempt {
+        volatile Duration retryDelay; // Null if the response is not retried.
+    }
+
+    /**
+     * Send the request and retry it by the policy.
+     *
+     * @param timer The number of retries is reported to it.
+     */
+    <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, Metering.Timer timer) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            sleep(throttleDelay(request));
+            Attempt result = new Attempt();
+            Duration retryDelay;
+            try {
+                HttpResponse<T> response = route.send(transport, request, bodyHandler(request, bodyHandler, attempt, result));
+                if (result.retryDelay == null) {
+                    timer.retries(attempt);
+                    return response;
+                }
+                retryDelay = result.retryDelay;
+                log.info("Retry {} of {} {} in {} ms. Status code: {}", attempt + 1, request.method(), request.uri(), retryDelay.toMillis(), response.statusCode());
+            } catch (IOException e) {
+                if (!retriesFailure(request, attempt)) {
+                    timer.retries(attempt);
+                    throw e;
+                }
+                retryDelay = policy.backoff(attempt);
+                log.info("Retry {} of {} {} in {} ms. {}", attempt + 1, request.method(), request.uri(), retryDelay.toMillis(), e.toString());
+            }
+            sleep(retryDelay);
+        }
+    }
+
+    /**
+     * Send the request asynchronously and retry it by the policy. Delays do not block threads.
+     */
+    <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, Metering.Timer timer) {
+        return sendAsync(request, bodyHandler, timer, 0);
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, Metering.Timer timer, int attempt) {
+        Attempt result = new Attempt();
+        return after(throttleDelay(request))
+                .thenCompose(ignored -> route.sendAsync(transport, request, bodyHandler(request, bodyHandler, attempt, result)))
+                .<CompletableFuture<HttpResponse<T>>>handle((response, throwable) -> {
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                    Duration retryDelay;
+                    if (cause == null) {
+                        retryDelay = result.retryDelay;
+                    } else {
+                        retryDelay = cause instanceof IOException && retriesFailure(request, attempt) ? policy.backoff(attempt) : null;
+                    }
+                    if (retryDelay == null) {
+                        timer.retries(attempt);
+                        return cause == null ? CompletableFuture.completedFuture(response) : CompletableFuture.<HttpResponse<T>>failedFuture(cause);
+                    }
+                    log.info("Retry {} of {} {} in {} ms.", attempt + 1, request.method(), request.uri(), retryDelay.toMillis());
+                    return after(retryDelay).thenCompose(ignored -> sendAsync(request, bodyHandler, timer, attempt + 1));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private boolean retriesFailure(HttpRequest request, int attempt) {
+        return policy.retries(request.method()) && attempt < policy.maxRetries();
+    }
+
+    /**
+     * Body handler discarding the body if the response is retried.
+     */
+    private <T> HttpResponse.BodyHandler<T> bodyHandler(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, int attempt, Attempt result) {
+        boolean retries = policy.retries(request.method());
+        if (!retries && policy.slowDownBelow() == 0) {
+            return bodyHandler;
+        }
+        return responseInfo -> {
+            if (policy.slowDownBelow() > 0) {
+                rateLimit(request.uri()).update(responseInfo.headers());
+            }
+            if (retries) {
+                policy.retryDelay(responseInfo.statusCode(), responseInfo.headers(), attempt, Instant.now())
+                        .ifPresent(delay -> result.retryDelay = delay);
+            }
+            return result.retryDelay != null ? HttpResponse.BodySubscribers.<T>replacing(null) : bodyHandler.apply(responseInfo);
+        };
+    }
+
+    /**
+     * @return Delay before sending to keep the quota of the origin. Zero if it is longer than the max wait; the server will tell when to retry.
+     */
+    private Duration throttleDelay(HttpRequest request) {
+        if (policy.slowDownBelow() == 0) {
+            return Duration.ZERO;
+        }
+        Duration delay = rateLimit(request.uri()).acquire(policy.slowDownBelow(), Instant.now());
+        if (delay.compareTo(policy.maxWait()) > 0) {
+            return Duration.ZERO;
+        }
+        if (!delay.isZero()) {
+            log.info("Slow down by {} ms to keep the rate limit of {}.", delay.toMillis(), origin(request.uri()));
+        }
+        return delay;
+    }
+
+    private RateLimit rateLimit(URI uri) {
+        return rateLimits.computeIfAbsent(origin(uri), origin -> new RateLimit());
+    }
+
+    private static String origin(URI uri) {
+        return String.format("%s://%s:%d", uri.getScheme(), uri.getHost(), uri.getPort());
+    }
+
+    private static void sleep(Duration delay) throws InterruptedException {
+        if (!delay.isZero()) {
+            Thread.sleep(delay);
+        }
+    }
+
+    private static CompletableFuture<Void> after(Duration delay) {
+        if (delay.isZero()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS));
+    }
+}
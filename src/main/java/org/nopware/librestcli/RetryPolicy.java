@@ -0,0 +1,235 @@
+package org.nopware.librestcli;
+
+import lombok.NonNull;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Policy of retrying requests which failed by rate limits, server errors or I/O errors. Set it by {@link RestCli.Builder#retryPolicy(RetryPolicy)}.
+ * <p>
+ *     The following responses are retried.
+ *     <ul>
+ *         <li>429 Too Many Requests.</li>
+ *         <li>403 Forbidden with {@literal X-RateLimit-Remaining: 0} or Retry-After. GitHub returns it for the primary and secondary rate limits.</li>
+ *         <li>5xx except 501 Not Implemented and 505 HTTP Version Not Supported.</li>
+ *     </ul>
+ *     The delay is given by Retry-After (seconds or HTTP-date), by X-RateLimit-Reset (epoch seconds) if the remaining quota is 0,
+ *     or by exponential backoff with jitter. If the server asks to wait longer than {@link Builder#maxWait(Duration)}, the response is returned as is.
+ * <p>
+ *     Only the idempotent methods are retried by default. If non-idempotent methods like POST are retried,
+ *     an {@literal Idempotency-Key} header is attached to their requests, unless the request already has one.
+ * <p>
+ *     Before sending, the client slows down if the remaining quota of the origin is less than {@link Builder#slowDownBelow(double)} of the limit,
+ *     so the remaining requests are spread until the quota is reset.
+ */
+public final class RetryPolicy {
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("get", "head", "put", "delete", "options", "trace");
+
+    /**
+     * Never retry nor slow down. It is the default.
+     * It is declared after {@link #IDEMPOTENT_METHODS}, because the builder reads it during the class initialization.
+     */
+    public static final RetryPolicy NONE = new Builder().maxRetries(0).slowDownBelow(0).build();
+
+    private final int maxRetries;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final double multiplier;
+    private final Duration maxWait;
+    private final Set<String> methods;
+    private final double slowDownBelow;
+
+    private RetryPolicy(Builder builder) {
+        this.maxRetries = builder.maxRetries;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.multiplier = builder.multiplier;
+        this.maxWait = builder.maxWait;
+        this.methods = Set.copyOf(builder.methods);
+        this.slowDownBelow = builder.slowDownBelow;
+    }
+
+    public static class Builder {
+        int maxRetries = 3;
+        Duration initialBackoff = Duration.ofSeconds(1);
+        Duration maxBackoff = Duration.ofSeconds(60);
+        double multiplier = 2.0;
+        Duration maxWait = Duration.ofMinutes(5);
+        Set<String> methods = IDEMPOTENT_METHODS;
+        double slowDownBelow = 0.1;
+
+        /**
+         * Default is 3. 0 disables retries.
+         */
+        public Builder maxRetries(int maxRetries) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("Max retries must not be negative: " + maxRetries);
+            }
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Backoff before the first retry. It is multiplied by the multiplier for each retry, up to the max backoff.
+         * A random delay up to a half of the backoff is subtracted, so clients failed at the same time do not retry at the same time.
+         * Default is 1 second, multiplied by 2 up to 60 seconds.
+         */
+        public Builder backoff(@NonNull Duration initialBackoff, double multiplier, @NonNull Duration maxBackoff) {
+            if (initialBackoff.isNegative() || maxBackoff.compareTo(initialBackoff) < 0 || multiplier < 1) {
+                throw new IllegalArgumentException(String.format("Invalid backoff: %s * %s up to %s", initialBackoff, multiplier, maxBackoff));
+            }
+            this.initialBackoff = initialBackoff;
+            this.multiplier = multiplier;
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * Longest delay given by Retry-After or X-RateLimit-Reset to wait for. Default is 5 minutes.
+         */
+        public Builder maxWait(@NonNull Duration maxWait) {
+            this.maxWait = maxWait;
+            return this;
+        }
+
+        /**
+         * Methods retried. Default is GET, HEAD, PUT, DELETE, OPTIONS and TRACE.
+         * Requests of the other methods get an {@literal Idempotency-Key} header, so the server can detect the retried ones.
+         */
+        public Builder methods(@NonNull String... methods) {
+            this.methods = Arrays.stream(methods).map(method -> method.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+            return this;
+        }
+
+        /**
+         * Slow down if the remaining quota is less than the ratio of the limit. Default is 0.1. 0 disables slowing down.
+         */
+        public Builder slowDownBelow(double ratio) {
+            if (ratio < 0 || ratio > 1) {
+                throw new IllegalArgumentException("Ratio must be in [0, 1]: " + ratio);
+            }
+            this.slowDownBelow = ratio;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+
+    int maxRetries() {
+        return maxRetries;
+    }
+
+    double slowDownBelow() {
+        return slowDownBelow;
+    }
+
+    Duration maxWait() {
+        return maxWait;
+    }
+
+    /**
+     * @param method Method in any case.
+     */
+    boolean retries(String method) {
+        return maxRetries > 0 && methods.contains(method.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return True if the requests of the method need an Idempotency-Key to be retried safely.
+     */
+    boolean needsIdempotencyKey(String method) {
+        String lowerCase = method.toLowerCase(Locale.ROOT);
+        return retries(lowerCase) && !IDEMPOTENT_METHODS.contains(lowerCase);
+    }
+
+    static boolean isRetryable(int statusCode, HttpHeaders headers) {
+        return switch (statusCode) {
+            case 429 -> true;
+            case 403 -> headers.firstValue("Retry-After").isPresent()
+                    || headers.firstValue("X-RateLimit-Remaining").map(String::trim).filter("0"::equals).isPresent();
+            case 501, 505 -> false;
+            default -> statusCode >= 500 && statusCode < 600;
+        };
+    }
+
+    /**
+     * @param attempt 0 for the first request.
+     * @return Delay before the retry. Empty if the response must not be retried, or the server asks to wait longer than the max wait.
+     */
+    Optional<Duration> retryDelay(int statusCode, HttpHeaders headers, int attempt, Instant now) {
+        if (attempt >= maxRetries || !isRetryable(statusCode, headers)) {
+            return Optional.empty();
+        }
+        Optional<Duration> requested = retryAfter(headers, now).or(() -> rateLimitReset(headers, now));
+        if (requested.isPresent()) {
+            return requested.get().compareTo(maxWait) <= 0 ? requested : Optional.empty();
+        }
+        return Optional.of(backoff(attempt));
+    }
+
+    /**
+     * @return Exponential backoff with jitter for the attempt.
+     */
+    Duration backoff(int attempt) {
+        double nanos = Math.min(initialBackoff.toNanos() * Math.pow(multiplier, attempt), maxBackoff.toNanos());
+        long half = (long) (nanos / 2);
+        return Duration.ofNanos(half + (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0));
+    }
+
+    static Optional<Duration> retryAfter(HttpHeaders headers, Instant now) {
+        return headers.firstValue("Retry-After").map(String::trim).flatMap(value -> {
+            try {
+                return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(value))));
+            } catch (NumberFormatException e) {
+                try {
+                    Instant date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                    return Optional.of(nonNegative(Duration.between(now, date)));
+                } catch (DateTimeParseException ignored) {
+                    return Optional.empty();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return Time until X-RateLimit-Reset if the remaining quota is 0.
+     */
+    private static Optional<Duration> rateLimitReset(HttpHeaders headers, Instant now) {
+        OptionalLong remaining = longHeader(headers, "X-RateLimit-Remaining");
+        OptionalLong reset = longHeader(headers, "X-RateLimit-Reset");
+        if (remaining.isPresent() && remaining.getAsLong() == 0 && reset.isPresent()) {
+            return Optional.of(nonNegative(Duration.between(now, Instant.ofEpochSecond(reset.getAsLong()))));
+        }
+        return Optional.empty();
+    }
+
+    static OptionalLong longHeader(HttpHeaders headers, String name) {
+        Optional<String> value = headers.firstValue(name);
+        if (value.isEmpty()) {
+            return OptionalLong.empty();
+        }
+        try {
+            return OptionalLong.of(Long.parseLong(value.get().trim()));
+        } catch (NumberFormatException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    private static Duration nonNegative(Duration duration) {
+        return duration.isNegative() ? Duration.ZERO : duration;
+    }
+}
@@ -0,0 +1,507 @@
+package org.nopware.librestcli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.dirs.ProjectDirectories;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Select the fastest healthy server of the servers declared by the specification, and fail over to the next one on connect errors.
+ * Set it by {@link RestCli.Builder#serverSelector(ServerSelector)}.
+ * <p>
+ *     Each server is probed by a HEAD request to its URL. Any response means the server is healthy, and its latency is the time to the response headers.
+ *     The latencies of the requests sent to a server are tracked as a moving average. Requests are sent to the healthy server with the lowest latency.
+ *     If a request fails to connect, the server is marked unhealthy and the request is sent to the next server.
+ *     Unhealthy servers are tried last, because a failure to connect may be temporary.
+ * <p>
+ *     Only connect errors fail over. A server which accepts the connection but does not respond blocks the request,
+ *     unless {@link Builder#responseTimeout(Duration)} is set. A request timed out is not sent to another server, because the server may have processed it,
+ *     but the server is marked unhealthy, so the retries by {@link RetryPolicy} go to the next server.
+ * <p>
+ *     The health and the latency of the servers are kept in a small JSON state file, so the servers are probed only when their state is older than
+ *     {@link Builder#probeInterval(Duration)}. Several processes can share the state file. It is written atomically, and the newer state of a server wins.
+ * <p>
+ *     Variables in the server URLs, like {@literal https://{region}.api.example.com}, are substituted by {@link Builder#variable(String, String)} or their defaults.
+ * <p>
+ *     ServerSelector is thread-safe, and can be shared by {@link RestCli} objects of different specifications.
+ */
+@Slf4j
+public final class ServerSelector {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * Weight of a new latency in the moving average.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    private static final ServerState UNKNOWN = new ServerState(true, Long.MAX_VALUE, Instant.EPOCH);
+
+    /**
+     * State of a server.
+     *
+     * @param healthy      Whether the last probe or request connected to the server.
+     * @param latencyNanos Moving average of the latencies. {@link Long#MAX_VALUE} if unknown.
+     * @param checkedAt    When the server was last probed, or last failed to connect.
+     */
+    record ServerState(boolean healthy, long latencyNanos, Instant checkedAt) {
+        ServerState observed(long nanos) {
+            long average = latencyNanos == Long.MAX_VALUE ? nanos : (long) (latencyNanos * (1 - SMOOTHING) + nanos * SMOOTHING);
+            return new ServerState(true, average, checkedAt);
+        }
+    }
+
+    private final Path stateFile;
+    private final Duration probeInterval;
+    private final Duration probeTimeout;
+    private final Duration responseTimeout; // Nullable.
+    private final Map<String, String> variables;
+
+    private final Map<String, ServerState> states = new ConcurrentHashMap<>();
+    private boolean loaded; // Guarded by this.
+    private final Map<String, CompletableFuture<Void>> probes = new HashMap<>(); // Guarded by this. URL -> probe in flight.
+
+    private ServerSelector(Builder builder) {
+        this.stateFile = builder.stateFile;
+        this.probeInterval = builder.probeInterval;
+        this.probeTimeout = builder.probeTimeout;
+        this.responseTimeout = builder.responseTimeout;
+        this.variables = Map.copyOf(builder.variables);
+    }
+
+    public static class Builder {
+        Path stateFile = defaultStateFile();
+        Duration probeInterval = Duration.ofMinutes(10);
+        Duration probeTimeout = Duration.ofSeconds(3);
+        Duration responseTimeout;
+        Map<String, String> variables = new LinkedHashMap<>();
+
+        /**
+         * If not specified, the state is kept in the user cache directory. For example, {@literal ~/.cache/librestcli/servers.json} on Linux.
+         */
+        public Builder stateFile(@NonNull Path stateFile) {
+            this.stateFile = stateFile;
+            return this;
+        }
+
+        /**
+         * Servers are probed again when their state is older than this. Default is 10 minutes.
+         */
+        public Builder probeInterval(@NonNull Duration probeInterval) {
+            if (probeInterval.isNegative()) {
+                throw new IllegalArgumentException("Probe interval must not be negative: " + probeInterval);
+            }
+            this.probeInterval = probeInterval;
+            return this;
+        }
+
+        /**
+         * A server not responding to a probe in this duration is unhealthy. Default is 3 seconds.
+         */
+        public Builder probeTimeout(@NonNull Duration probeTimeout) {
+            if (probeTimeout.isNegative() || probeTimeout.isZero()) {
+                throw new IllegalArgumentException("Probe timeout must be positive: " + probeTimeout);
+            }
+            this.probeTimeout = probeTimeout;
+            return this;
+        }
+
+        /**
+         * Timeout until the response headers of a routed request are received. A request with its own timeout keeps it.
+         * If not specified, a request to a server which accepts the connection but does not respond waits forever.
+         */
+        public Builder responseTimeout(@NonNull Duration responseTimeout) {
+            if (responseTimeout.isNegative() || responseTimeout.isZero()) {
+                throw new IllegalArgumentException("Response timeout must be positive: " + responseTimeout);
+            }
+            this.responseTimeout = responseTimeout;
+            return this;
+        }
+
+        /**
+         * Value of a server variable. If not specified, the default of the variable in the specification is used.
+         */
+        public Builder variable(@NonNull String name, @NonNull String value) {
+            this.variables.put(name, value);
+            return this;
+        }
+
+        public ServerSelector build() {
+            return new ServerSelector(this);
+        }
+    }
+
+    private static Path defaultStateFile() {
+        ProjectDirectories projectDirectories = ProjectDirectories.from("org", "nopware", "librestcli");
+        return Paths.get(projectDirectories.cacheDir, "servers.json");
+    }
+
+    public Path stateFile() {
+        return stateFile;
+    }
+
+    /**
+     * @param servers Servers of a specification. The first one with the default variables is the base URL of its operation plans.
+     * @return Route of the requests to the servers.
+     */
+    Route route(List<ApiModel.ServerModel> servers) {
+        String baseUrl = servers.isEmpty() ? null : stripSlash(servers.get(0).resolve(Map.of()));
+        if (!isAbsolute(baseUrl)) {
+            return Route.DIRECT; // Requests without a server URL fail anyway.
+        }
+        List<String> urls = servers.stream()
+                .map(server -> stripSlash(server.resolve(variables)))
+                .filter(ServerSelector::isAbsolute) // Relative URLs are not supported.
+                .distinct()
+                .toList();
+        return urls.isEmpty() ? Route.DIRECT : new Route(this, baseUrl, urls);
+    }
+
+    private static boolean isAbsolute(String url) {
+        try {
+            return url != null && URI.create(url).getHost() != null;
+        } catch (IllegalArgumentException e) {
+            return false; // For example, a variable without default.
+        }
+    }
+
+    /**
+     * @return The servers in the order to try: healthy ones by latency, then unhealthy ones.
+     */
+    List<String> order(List<String> urls) {
+        Comparator<String> byHealthAndLatency = Comparator.<String, Boolean>comparing(url -> !state(url).healthy())
+                .thenComparingLong(url -> state(url).latencyNanos());
+        List<String> ordered = new ArrayList<>(urls);
+        ordered.sort(byHealthAndLatency); // Stable, so the order of the specification breaks ties.
+        return ordered;
+    }
+
+    ServerState state(String url) {
+        return states.getOrDefault(url, UNKNOWN);
+    }
+
+    /**
+     * Probe the servers whose state is older than the probe interval.
+     *
+     * @return Completed when the probes complete. Probes in flight are shared.
+     */
+    CompletableFuture<Void> refresh(Transport transport, List<String> urls) {
+        List<CompletableFuture<Void>> waiting = new ArrayList<>();
+        synchronized (this) {
+            if (!loaded) {
+                loaded = true;
+                merge(read());
+            }
+            Instant staleBefore = Instant.now().minus(probeInterval);
+            for (String url : urls) {
+                CompletableFuture<Void> probe = probes.get(url);
+                if (probe == null && state(url).checkedAt().isBefore(staleBefore)) {
+                    probe = probe(transport, url);
+                    probes.put(url, probe);
+                    probe.whenComplete((ignored, throwable) -> {
+                        synchronized (this) {
+                            probes.remove(url);
+                        }
+                    });
+                }
+                if (probe != null) {
+                    waiting.add(probe);
+                }
+            }
+        }
+        if (waiting.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.allOf(waiting.toArray(CompletableFuture[]::new)).thenRun(this::save);
+    }
+
+    private CompletableFuture<Void> probe(Transport transport, String url) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/"))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .timeout(probeTimeout)
+                .build();
+        long start = System.nanoTime();
+        return transport.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, throwable) -> {
+                    long latency = System.nanoTime() - start;
+                    if (throwable == null) {
+                        log.debug("Probed {}: {} ms.", url, latency / 1_000_000);
+                        states.put(url, new ServerState(true, latency, Instant.now()));
+                    } else {
+                        log.info("Server {} is unhealthy: {}", url, unwrap(throwable).toString());
+                        states.put(url, new ServerState(false, Long.MAX_VALUE, Instant.now()));
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Track the latency of a response of the server.
+     */
+    void succeeded(String url, long nanos) {
+        states.compute(url, (key, state) -> (state == null ? UNKNOWN : state).observed(nanos));
+    }
+
+    /**
+     * Mark the server unhealthy because a request failed to connect to it.
+     */
+    void failed(String url) {
+        states.put(url, new ServerState(false, Long.MAX_VALUE, Instant.now()));
+        save();
+    }
+
+    /**
+     * Merge the state file into the states, and write them atomically.
+     */
+    private synchronized void save() {
+        merge(read());
+        ObjectNode root = OBJECT_MAPPER.createObjectNode();
+        ObjectNode servers = root.putObject("servers");
+        states.forEach((url, state) -> {
+            ObjectNode server = servers.putObject(url);
+            server.put("healthy", state.healthy());
+            if (state.latencyNanos() != Long.MAX_VALUE) {
+                server.put("latencyMillis", state.latencyNanos() / 1e6);
+            }
+            server.put("checkedAt", state.checkedAt().toString());
+        });
+        Path tempFile = null;
+        try {
+            Files.createDirectories(stateFile.toAbsolutePath().getParent());
+            tempFile = Files.createTempFile(stateFile.toAbsolutePath().getParent(), "servers", ".tmp");
+            OBJECT_MAPPER.writeValue(tempFile.toFile(), root);
+            Files.move(tempFile, stateFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Failed to write the server state: {}", stateFile, e);
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    log.debug("Failed to delete: {}", tempFile, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return States in the state file. Empty if the file does not exist or is broken.
+     */
+    private Map<String, ServerState> read() {
+        Map<String, ServerState> read = new HashMap<>();
+        if (!Files.isRegularFile(stateFile)) {
+            return read;
+        }
+        try {
+            JsonNode servers = OBJECT_MAPPER.readTree(stateFile.toFile()).path("servers");
+            servers.fields().forEachRemaining(entry -> {
+                JsonNode server = entry.getValue();
+                long latencyNanos = server.has("latencyMillis") ? (long) (server.get("latencyMillis").asDouble() * 1e6) : Long.MAX_VALUE;
+                Instant checkedAt = Instant.parse(server.path("checkedAt").asText());
+                read.put(entry.getKey(), new ServerState(server.path("healthy").asBoolean(), latencyNanos, checkedAt));
+            });
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignore the broken server state: {}", stateFile, e);
+        }
+        return read;
+    }
+
+    /**
+     * The newer state of a server wins, so probes by other processes are shared.
+     */
+    private void merge(Map<String, ServerState> read) {
+        read.forEach((url, state) -> states.merge(url, state, (current, other) -> other.checkedAt().isAfter(current.checkedAt()) ? other : current));
+    }
+
+    private static String stripSlash(String url) {
+        return url != null && url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    /**
+     * @return True if the request was not sent because the connection failed.
+     */
+    static boolean isConnectFailure(Throwable throwable) {
+        for (Throwable cause = unwrap(throwable); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+
+    /**
+     * Route of the requests of a specification.
+     * <p>
+     *     Requests to the base URL of the operation plans are rewritten to the selected server. Other requests, like the next pages of the selected server, are sent as they are.
+     *     A request failed to connect is sent to the next server. It is safe even for non-idempotent methods, because nothing was sent.
+     */
+    static final class Route {
+        static final Route DIRECT = new Route(null, null, List.of());
+
+        private final ServerSelector selector; // Null for DIRECT.
+        private final URI base; // Null for DIRECT.
+        private final List<String> urls;
+
+        private Route(ServerSelector selector, String baseUrl, List<String> urls) {
+            this.selector = selector;
+            this.base = baseUrl == null ? null : URI.create(baseUrl);
+            this.urls = urls;
+        }
+
+        <T> HttpResponse<T> send(Transport transport, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+            if (!routes(request)) {
+                return transport.send(request, bodyHandler);
+            }
+            try {
+                selector.refresh(transport, urls).get();
+            } catch (ExecutionException e) {
+                log.warn("Failed to probe the servers.", e.getCause());
+            }
+            IOException failure = null;
+            for (String url : selector.order(urls)) {
+                HttpRequest routed = rewrite(request, url);
+                try {
+                    return transport.send(routed, timed(url, bodyHandler));
+                } catch (IOException e) {
+                    if (!isConnectFailure(e)) {
+                        if (e instanceof HttpTimeoutException) {
+                            log.warn("No response from {} in time. {}", url, e.toString());
+                            selector.failed(url);
+                        }
+                        throw e;
+                    }
+                    log.warn("Failed to connect to {}. Fail over to the next server. {}", url, e.toString());
+                    selector.failed(url);
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            throw failure;
+        }
+
+        <T> CompletableFuture<HttpResponse<T>> sendAsync(Transport transport, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+            if (!routes(request)) {
+                return transport.sendAsync(request, bodyHandler);
+            }
+            return selector.refresh(transport, urls)
+                    .exceptionally(throwable -> {
+                        log.warn("Failed to probe the servers.", throwable);
+                        return null;
+                    })
+                    .thenCompose(ignored -> sendAsync(transport, request, bodyHandler, selector.order(urls), 0));
+        }
+
+        private <T> CompletableFuture<HttpResponse<T>> sendAsync(Transport transport, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, List<String> ordered, int index) {
+            String url = ordered.get(index);
+            return transport.sendAsync(rewrite(request, url), timed(url, bodyHandler))
+                    .<CompletableFuture<HttpResponse<T>>>handle((response, throwable) -> {
+                        if (throwable == null) {
+                            return CompletableFuture.completedFuture(response);
+                        }
+                        if (!isConnectFailure(throwable) || index + 1 == ordered.size()) {
+                            if (isConnectFailure(throwable) || unwrap(throwable) instanceof HttpTimeoutException) {
+                                selector.failed(url);
+                            }
+                            return CompletableFuture.failedFuture(unwrap(throwable));
+                        }
+                        log.warn("Failed to connect to {}. Fail over to the next server. {}", url, unwrap(throwable).toString());
+                        selector.failed(url);
+                        return sendAsync(transport, request, bodyHandler, ordered, index + 1);
+                    })
+                    .thenCompose(Function.identity());
+        }
+
+        /**
+         * Record the latency of the server when the response headers arrive, so the transfer of the body, for example a download, is not counted.
+         */
+        private <T> HttpResponse.BodyHandler<T> timed(String url, HttpResponse.BodyHandler<T> bodyHandler) {
+            long start = System.nanoTime();
+            return responseInfo -> {
+                selector.succeeded(url, System.nanoTime() - start);
+                return bodyHandler.apply(responseInfo);
+            };
+        }
+
+        /**
+         * @return True if the request is to the base URL.
+         */
+        private boolean routes(HttpRequest request) {
+            if (selector == null) {
+                return false;
+            }
+            URI uri = request.uri();
+            String basePath = base.getRawPath() == null ? "" : base.getRawPath(); // No trailing slash.
+            String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+            return base.getScheme().equalsIgnoreCase(uri.getScheme())
+                    && base.getHost() != null && base.getHost().equalsIgnoreCase(uri.getHost())
+                    && base.getPort() == uri.getPort()
+                    && (path.equals(basePath) || path.startsWith(basePath + "/"));
+        }
+
+        /**
+         * @return The request to the server. The user information, the rest of the path, the query and the headers are kept.
+         */
+        private HttpRequest rewrite(HttpRequest request, String url) {
+            URI uri = request.uri();
+            URI server = URI.create(url);
+            String basePath = base.getRawPath() == null ? "" : base.getRawPath();
+            StringBuilder rewritten = new StringBuilder()
+                    .append(server.getScheme()).append("://");
+            if (uri.getRawUserInfo() != null) {
+                rewritten.append(uri.getRawUserInfo()).append('@');
+            }
+            rewritten.append(server.getRawAuthority().substring(server.getRawAuthority().indexOf('@') + 1));
+            if (server.getRawPath() != null) {
+                rewritten.append(server.getRawPath());
+            }
+            rewritten.append(uri.getRawPath().substring(basePath.length()));
+            if (uri.getRawQuery() != null) {
+                rewritten.append('?').append(uri.getRawQuery());
+            }
+            URI target = URI.create(rewritten.toString());
+            boolean timeout = selector.responseTimeout != null && request.timeout().isEmpty();
+            if (target.equals(uri) && !timeout) {
+                return request;
+            }
+            HttpRequest.Builder builder = HttpRequest.newBuilder(request, (name, value) -> true).uri(target);
+            if (timeout) {
+                builder.timeout(selector.responseTimeout);
+            }
+            return builder.build();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.nopware.librestcli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+
+/**
+ * Standard streams and working directory of an execution on behalf of another process, like a session of {@link RestCliDaemon}.
+ * <p>
+ *     {@link #install()} replaces {@link System#in}, {@link System#out} and {@link System#err} by streams routed to the session of the current thread.
+ *     Threads started in a session inherit it. Outside a session, they are the streams of this process.
+ */
+final class Session {
+    private static final InheritableThreadLocal<Session> CURRENT = new InheritableThreadLocal<>();
+
+    private static boolean installed;
+
+    private final Path workingDirectory;
+    private final InputStream in;
+    private final PrintStream out;
+    private final PrintStream err;
+    private volatile boolean closed;
+
+    Session(Path workingDirectory, InputStream in, PrintStream out, PrintStream err) {
+        this.workingDirectory = workingDirectory;
+        this.in = in;
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Run the task in the session. The session is closed when the task returns, so threads which outlive it fall back to the streams of this process.
+     */
+    <T> T call(Callable<T> task) throws Exception {
+        Session previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.call();
+        } finally {
+            out.flush();
+            err.flush();
+            closed = true;
+            CURRENT.set(previous);
+        }
+    }
+
+    private static Session current() {
+        Session session = CURRENT.get();
+        return session == null || session.closed ? null : session;
+    }
+
+    /**
+     * @return Path resolved against the working directory of the current session.
+     */
+    static Path path(String path) {
+        Session session = current();
+        return session == null ? Paths.get(path) : session.workingDirectory.resolve(path);
+    }
+
+    /**
+     * @return Stdin of the current session, for reading it in another thread which does not inherit the session.
+     */
+    static InputStream stdin() {
+        Session session = current();
+        return session == null ? System.in : session.in;
+    }
+
+    /**
+     * Route the standard streams by sessions. Idempotent.
+     */
+    static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        InputStream stdin = System.in;
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        System.setIn(new InputStream() {
+            private InputStream in() {
+                Session session = current();
+                return session == null ? stdin : session.in;
+            }
+
+            @Override
+            public int read() throws IOException {
+                return in().read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return in().read(b, off, len);
+            }
+
+            @Override
+            public int available() throws IOException {
+                return in().available();
+            }
+        });
+        System.setOut(new PrintStream(new RoutingOutputStream(stdout, false), false, stdout.charset()));
+        System.setErr(new PrintStream(new RoutingOutputStream(stderr, true), true, stderr.charset()));
+        installed = true;
+    }
+
+    private static final class RoutingOutputStream extends OutputStream {
+        private final PrintStream process;
+        private final boolean err;
+
+        RoutingOutputStream(PrintStream process, boolean err) {
+            this.process = process;
+            this.err = err;
+        }
+
+        private PrintStream out() {
+            Session session = current();
+            return session == null ? process : err ? session.err : session.out;
+        }
+
+        @Override
+        public void write(int b) {
+            out().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            out().write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            out().flush();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.nopware.librestcli;
+
+import com.google.common.hash.HashCode;
+import dev.dirs.ProjectDirectories;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * Cache of compiled OpenAPI specifications.
+ * <p>
+ *     Parsing a big OpenAPI specification is heavy.
+ *     SpecCache stores a binary snapshot of the parsed specification keyed by the fingerprint of its content,
+ *     and later {@link RestCli.RestCliSpec.Builder#build()} memory-maps the snapshot instead of parsing the specification.
+ * <p>
+ *     Several processes can share the same cache directory. Snapshots are written atomically.
+ */
+@Slf4j
+public final class SpecCache {
+    private final Path directory;
+
+    private SpecCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Cache in the user cache directory. For example, {@literal ~/.cache/librestcli/specs} on Linux.
+     *
+     * @return SpecCache object.
+     */
+    public static SpecCache defaultCache() {
+        ProjectDirectories projectDirectories = ProjectDirectories.from("org", "nopware", "librestcli");
+        return new SpecCache(Paths.get(projectDirectories.cacheDir, "specs"));
+    }
+
+    /**
+     * Cache in the specified directory.
+     *
+     * @param directory Cache directory. It is created if it does not exist.
+     * @return SpecCache object.
+     */
+    public static SpecCache of(@NonNull Path directory) {
+        return new SpecCache(directory);
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    /**
+     * @return Empty if there is no valid snapshot. Broken snapshots are ignored.
+     */
+    Optional<ApiModel> load(HashCode fingerprint) {
+        Path file = snapshotFile(fingerprint);
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+
+        try {
+            Optional<ApiModel> apiModel = SpecSnapshot.read(file, fingerprint.asBytes());
+            if (apiModel.isEmpty()) {
+                log.warn("Ignore invalid snapshot: {}", file);
+            }
+            return apiModel;
+        } catch (IOException e) {
+            log.warn("Failed to read snapshot: {}", file, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Store the snapshot. Failure is logged and ignored because the cache is optional.
+     */
+    void store(HashCode fingerprint, ApiModel apiModel) {
+        Path file = snapshotFile(fingerprint);
+        try {
+            SpecSnapshot.write(file, fingerprint.asBytes(), apiModel);
+        } catch (IOException e) {
+            log.warn("Failed to write snapshot: {}", file, e);
+        }
+    }
+
+    private Path snapshotFile(HashCode fingerprint) {
+        return directory.resolve(String.format("%s.v%d.rcls", fingerprint, SpecSnapshot.FORMAT_VERSION));
+    }
+}
@@ -0,0 +1,239 @@
+package org.nopware.librestcli;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Registry of {@link RestCli.RestCliSpec}s for several specifications, for example several versions of GitHub Enterprise Server.
+ * <p>
+ *     Specifications are registered by name and loaded on demand, in parallel by {@link #load(Collection)}.
+ *     Their models are interned by an interner shared in the registry, so the parameter names, descriptions, types, parameters, operations and paths
+ *     equal across specifications are stored once. The specifications are lazy by default, so the options of a path are built only when it is used.
+ * <p>
+ *     Options of the paths are not shared, because they hold the values of the parsed arguments. The options common to all paths
+ *     are shared by all specifications, so parsing is serialized across them.
+ * <p>
+ *     Loaded specifications are weighed by {@link RestCli.RestCliSpec#estimatedSize()}. If the total exceeds the memory budget,
+ *     the least recently used ones are evicted, and they are loaded again when they are used. A RestCliSpec in use is not affected by the eviction.
+ * <p>
+ *     SpecRegistry is thread-safe.
+ */
+@Slf4j
+public final class SpecRegistry {
+    /**
+     * Source of an OpenAPI specification in JSON or YAML format. It is read each time the specification is loaded.
+     */
+    @FunctionalInterface
+    public interface Source {
+        String read() throws IOException;
+    }
+
+    private record Registration(String commandName, Source source) {
+    }
+
+    private final Map<String, Registration> registrations = new ConcurrentHashMap<>();
+    private final Interner<Object> interner = Interners.newWeakInterner();
+    private final SpecCache specCache; // Nullable.
+    private final boolean lazy;
+    private final LoadingCache<String, RestCli.RestCliSpec> specs;
+
+    private SpecRegistry(long memoryBudget, SpecCache specCache, boolean lazy) {
+        this.specCache = specCache;
+        this.lazy = lazy;
+        this.specs = CacheBuilder.newBuilder()
+                .concurrencyLevel(1) // The budget is divided by the segments. One segment keeps it for all specifications.
+                .maximumWeight(memoryBudget)
+                .<String, RestCli.RestCliSpec>weigher((name, restCliSpec) -> (int) Math.min(Integer.MAX_VALUE, restCliSpec.estimatedSize()))
+                .removalListener(notification -> log.info("Evicted the specification {}: {}", notification.getKey(), notification.getCause()))
+                .build(CacheLoader.from(this::create));
+    }
+
+    public static class Builder {
+        long memoryBudget = Long.MAX_VALUE;
+        SpecCache specCache;
+        boolean lazy = true;
+
+        /**
+         * Evict the least recently used specifications if their estimated size exceeds the budget. If not specified, no specification is evicted.
+         *
+         * @param bytes Memory budget in bytes.
+         */
+        public Builder memoryBudget(long bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("Memory budget must not be negative: " + bytes);
+            }
+            this.memoryBudget = bytes;
+            return this;
+        }
+
+        /**
+         * See {@link RestCli.RestCliSpec.Builder#specCache(SpecCache)}.
+         */
+        public Builder specCache(@NonNull SpecCache specCache) {
+            this.specCache = specCache;
+            return this;
+        }
+
+        /**
+         * See {@link RestCli.RestCliSpec.Builder#lazy(boolean)}. Default is true.
+         */
+        public Builder lazy(boolean lazy) {
+            this.lazy = lazy;
+            return this;
+        }
+
+        public SpecRegistry build() {
+            return new SpecRegistry(memoryBudget, specCache, lazy);
+        }
+    }
+
+    /**
+     * Register a specification. If the name is already registered, the registration is replaced and the loaded specification is evicted.
+     *
+     * @param name        Name of the specification. For example, {@literal ghes-3.3}.
+     * @param commandName Command name.
+     * @param source      Source of the specification.
+     */
+    public void register(@NonNull String name, @NonNull String commandName, @NonNull Source source) {
+        registrations.put(name, new Registration(commandName, source));
+        specs.invalidate(name);
+    }
+
+    /**
+     * Register a specification file. The command name is the name.
+     */
+    public void register(@NonNull String name, @NonNull Path specFile) {
+        register(name, name, () -> Files.readString(specFile, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return Names of the registered specifications.
+     */
+    public Set<String> names() {
+        return Set.copyOf(registrations.keySet());
+    }
+
+    /**
+     * @return Names of the loaded specifications, which are not evicted.
+     */
+    public Set<String> loadedNames() {
+        return Set.copyOf(specs.asMap().keySet());
+    }
+
+    /**
+     * Get the specification. It is loaded if it is not loaded yet or evicted.
+     *
+     * @throws IllegalArgumentException If the name is not registered.
+     * @throws UncheckedIOException     If the source cannot be read.
+     */
+    public RestCli.RestCliSpec get(@NonNull String name) {
+        try {
+            return specs.getUnchecked(name);
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Load the specifications in parallel on virtual threads. Loaded ones are not loaded again.
+     *
+     * @return Map name -> specification in the order of the names.
+     * @throws IllegalArgumentException If a name is not registered.
+     * @throws UncheckedIOException     If a source cannot be read.
+     */
+    public Map<String, RestCli.RestCliSpec> load(@NonNull Collection<String> names) {
+        List<String> unregistered = names.stream().filter(name -> !registrations.containsKey(name)).toList();
+        if (!unregistered.isEmpty()) {
+            throw new IllegalArgumentException("Not registered: " + unregistered);
+        }
+
+        Map<String, Future<RestCli.RestCliSpec>> futures = new LinkedHashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String name : names) {
+                futures.put(name, executor.submit(() -> get(name)));
+            }
+        } // Wait for all.
+
+        Map<String, RestCli.RestCliSpec> loaded = new LinkedHashMap<>();
+        List<RuntimeException> failures = new ArrayList<>();
+        futures.forEach((name, future) -> {
+            try {
+                loaded.put(name, Futures.getDone(future));
+            } catch (ExecutionException e) {
+                failures.add(e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new IllegalStateException(e.getCause()));
+            }
+        });
+        if (!failures.isEmpty()) {
+            RuntimeException failure = failures.get(0);
+            failures.subList(1, failures.size()).forEach(failure::addSuppressed);
+            throw failure;
+        }
+        return loaded;
+    }
+
+    /**
+     * Evict the specification. It is loaded again when it is used.
+     */
+    public void evict(@NonNull String name) {
+        specs.invalidate(name);
+    }
+
+    /**
+     * @return Sum of the estimated sizes of the loaded specifications in bytes.
+     */
+    long estimatedSize() {
+        return specs.asMap().values().stream().mapToLong(RestCli.RestCliSpec::estimatedSize).sum();
+    }
+
+    private RestCli.RestCliSpec create(String name) {
+        Registration registration = registrations.get(name);
+        if (registration == null) {
+            throw new IllegalArgumentException("Not registered: " + name);
+        }
+
+        String openApiJsonOrYaml;
+        try {
+            openApiJsonOrYaml = registration.source().read();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the specification " + name, e);
+        }
+
+        long begin = System.nanoTime();
+        RestCli.RestCliSpec.Builder builder = new RestCli.RestCliSpec.Builder(registration.commandName(), openApiJsonOrYaml)
+                .lazy(lazy)
+                .interner(interner);
+        if (specCache != null) {
+            builder.specCache(specCache);
+        }
+        RestCli.RestCliSpec restCliSpec = builder.build();
+        log.info("Loaded the specification {} in {} ms.", name, (System.nanoTime() - begin) / 1_000_000);
+        return restCliSpec;
+    }
+}
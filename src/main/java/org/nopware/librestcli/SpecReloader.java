@@ -0,0 +1,173 @@
+package org.nopware.librestcli;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Holder of the current {@link RestCli} whose specification can be reloaded incrementally.
+ * <p>
+ *     {@link #reload(String)} builds a new {@link RestCli.RestCliSpec} with {@link RestCli.RestCliSpec.Builder#previous(RestCli.RestCliSpec)},
+ *     so only the sub-commands of the added or changed paths and operations are built. Then it swaps the current RestCli atomically.
+ *     Executions in flight keep using the RestCli they got by {@link #restCli()}.
+ * <p>
+ *     {@link #watch(Path)} reloads the specification when the file changes. A specification which fails to parse is ignored, and the current one is kept.
+ * <p>
+ *     SpecReloader is thread-safe.
+ */
+@Slf4j
+public final class SpecReloader implements Closeable {
+    /**
+     * Wait for further events after a change, because editors and copy commands write a file in several steps.
+     */
+    private static final long SETTLE_MILLIS = 200;
+
+    private final Function<RestCli.RestCliSpec, RestCli> restCliFactory;
+    private final SpecCache specCache; // Nullable.
+    private volatile RestCli restCli;
+
+    private WatchService watchService; // Guarded by this.
+
+    /**
+     * @param restCliSpec    Initial specification.
+     * @param restCliFactory Create RestCli for a specification. For example, {@literal spec -> new RestCli.Builder(spec).authorization(authorization).build()}.
+     */
+    public SpecReloader(@NonNull RestCli.RestCliSpec restCliSpec, @NonNull Function<RestCli.RestCliSpec, RestCli> restCliFactory) {
+        this(restCliSpec, restCliFactory, null);
+    }
+
+    /**
+     * @param specCache Cache of compiled specifications used for the reloaded ones. Nullable.
+     */
+    public SpecReloader(@NonNull RestCli.RestCliSpec restCliSpec, @NonNull Function<RestCli.RestCliSpec, RestCli> restCliFactory, SpecCache specCache) {
+        this.restCliFactory = restCliFactory;
+        this.specCache = specCache;
+        this.restCli = restCliFactory.apply(restCliSpec);
+    }
+
+    /**
+     * @return Current RestCli. Use the returned object through an execution, so the execution is not affected by reloads.
+     */
+    public RestCli restCli() {
+        return restCli;
+    }
+
+    /**
+     * @return Current specification.
+     */
+    public RestCli.RestCliSpec restCliSpec() {
+        return restCli.restCliSpec();
+    }
+
+    /**
+     * Reload the specification. The command name and the laziness are same as the current specification.
+     *
+     * @param openApiJsonOrYaml New OpenAPI specification in JSON or YAML format.
+     * @return False if the specification is not changed.
+     */
+    public synchronized boolean reload(@NonNull String openApiJsonOrYaml) {
+        RestCli.RestCliSpec current = restCli.restCliSpec();
+        RestCli.RestCliSpec.Builder builder = new RestCli.RestCliSpec.Builder(current.commandSpec().name(), openApiJsonOrYaml)
+                .lazy(current.lazy())
+                .previous(current);
+        if (specCache != null) {
+            builder.specCache(specCache);
+        }
+        RestCli.RestCliSpec reloaded = builder.build();
+        if (reloaded.equals(current)) {
+            return false;
+        }
+        restCli = restCliFactory.apply(reloaded);
+        return true;
+    }
+
+    /**
+     * Reload the specification from the file.
+     *
+     * @return False if the specification is not changed.
+     */
+    public boolean reload(@NonNull Path openApiFile) throws IOException {
+        return reload(Files.readString(openApiFile, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reload the specification when the file is modified, on a daemon thread. Stop it by {@link #close()}.
+     *
+     * @throws IllegalStateException If a file is already watched.
+     */
+    public synchronized void watch(@NonNull Path openApiFile) throws IOException {
+        if (watchService != null) {
+            throw new IllegalStateException("Already watching a file.");
+        }
+        Path file = openApiFile.toAbsolutePath();
+        WatchService service = FileSystems.getDefault().newWatchService();
+        file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchService = service;
+
+        Thread thread = new Thread(() -> watchLoop(service, file), "librestcli-spec-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching the specification: {}", file);
+    }
+
+    private void watchLoop(WatchService service, Path file) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = pollChanged(key, file);
+                // Drain the events of the following writes.
+                while ((key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= pollChanged(key, file);
+                }
+                if (changed && Files.isRegularFile(file)) {
+                    try {
+                        if (reload(file)) {
+                            log.info("Reloaded the specification: {}", file);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        log.warn("Failed to reload the specification {}. Keep the current one.", file, e);
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            log.debug("Stopped watching the specification: {}", file);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean pollChanged(WatchKey key, Path file) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Stop watching the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.nopware.librestcli;
+
+import com.google.common.collect.ImmutableMap;
+import org.nopware.librestcli.ApiModel.OperationModel;
+import org.nopware.librestcli.ApiModel.ParameterModel;
+import org.nopware.librestcli.ApiModel.PartModel;
+import org.nopware.librestcli.ApiModel.PathModel;
+import org.nopware.librestcli.ApiModel.RequestBodyModel;
+import org.nopware.librestcli.ApiModel.ServerModel;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Binary snapshot of {@link ApiModel}.
+ * <p>
+ *     Layout (big endian):
+ *     <pre>
+ *     int     magic "RCLS"
+ *     int     format version
+ *     byte[]  fingerprint (length-prefixed)
+ *     int     number of strings, then each string as int length and UTF-8 bytes
+ *     body    indices into the string table (-1 is null), counts and flags
+ *     </pre>
+ *     Strings are deduplicated, so parameter names and descriptions shared by many operations are stored once.
+ */
+class SpecSnapshot {
+    private static final int MAGIC = 0x52434C53; // "RCLS"
+    static final int FORMAT_VERSION = 3;
+
+    private SpecSnapshot() {
+    }
+
+    /**
+     * Write the snapshot atomically. A reader never sees a partially written file.
+     */
+    static void write(Path file, byte[] fingerprint, ApiModel apiModel) throws IOException {
+        StringTable strings = new StringTable();
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        try (DataOutputStream body = new DataOutputStream(bodyBytes)) {
+            body.writeInt(strings.index(apiModel.version()));
+            body.writeInt(strings.index(apiModel.summary()));
+            body.writeInt(apiModel.servers().size());
+            for (ServerModel server : apiModel.servers()) {
+                body.writeInt(strings.index(server.url()));
+                body.writeInt(server.variables().size());
+                for (Map.Entry<String, String> variable : server.variables().entrySet()) {
+                    body.writeInt(strings.index(variable.getKey()));
+                    body.writeInt(strings.index(variable.getValue()));
+                }
+            }
+            body.writeInt(apiModel.paths().size());
+            for (PathModel pathModel : apiModel.paths().values()) {
+                body.writeInt(strings.index(pathModel.path()));
+                body.writeInt(strings.index(pathModel.summary()));
+                body.writeInt(pathModel.operations().size());
+                for (OperationModel operationModel : pathModel.operations().values()) {
+                    body.writeInt(strings.index(operationModel.method()));
+                    body.writeInt(strings.index(operationModel.summary()));
+                    body.writeInt(operationModel.parameters().size());
+                    for (ParameterModel parameterModel : operationModel.parameters()) {
+                        body.writeInt(strings.index(parameterModel.name()));
+                        body.writeInt(strings.index(parameterModel.location()));
+                        body.writeInt(strings.index(parameterModel.description()));
+                        body.writeBoolean(parameterModel.required());
+                        body.writeInt(strings.index(parameterModel.type()));
+                    }
+                    RequestBodyModel requestBody = operationModel.requestBody();
+                    body.writeBoolean(requestBody != null);
+                    if (requestBody != null) {
+                        body.writeInt(requestBody.mediaTypes().size());
+                        for (String mediaType : requestBody.mediaTypes()) {
+                            body.writeInt(strings.index(mediaType));
+                        }
+                        body.writeInt(requestBody.parts().size());
+                        for (PartModel partModel : requestBody.parts()) {
+                            body.writeInt(strings.index(partModel.name()));
+                            body.writeInt(strings.index(partModel.description()));
+                            body.writeBoolean(partModel.required());
+                            body.writeBoolean(partModel.binary());
+                            body.writeBoolean(partModel.array());
+                        }
+                    }
+                }
+            }
+        }
+
+        Files.createDirectories(file.getParent());
+        Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(tempFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(fingerprint.length);
+                out.write(fingerprint);
+                strings.writeTo(out);
+                bodyBytes.writeTo(out);
+            }
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Read the snapshot by memory-mapping the file.
+     *
+     * @return Empty if the file is not a snapshot of the current format or its fingerprint is different.
+     */
+    static Optional<ApiModel> read(Path file, byte[] fingerprint) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            byte[] storedFingerprint = new byte[buffer.getInt()];
+            buffer.get(storedFingerprint);
+            if (!Arrays.equals(storedFingerprint, fingerprint)) {
+                return Optional.empty();
+            }
+
+            String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(buffer);
+            }
+
+            String version = string(strings, buffer.getInt());
+            String summary = string(strings, buffer.getInt());
+            int serverCount = buffer.getInt();
+            List<ServerModel> servers = new ArrayList<>(serverCount);
+            for (int i = 0; i < serverCount; i++) {
+                String url = string(strings, buffer.getInt());
+                int variableCount = buffer.getInt();
+                Map<String, String> variables = new LinkedHashMap<>();
+                for (int j = 0; j < variableCount; j++) {
+                    variables.put(string(strings, buffer.getInt()), string(strings, buffer.getInt()));
+                }
+                servers.add(new ServerModel(url, ImmutableMap.copyOf(variables)));
+            }
+
+            int pathCount = buffer.getInt();
+            Map<String, PathModel> paths = new LinkedHashMap<>();
+            for (int i = 0; i < pathCount; i++) {
+                String path = string(strings, buffer.getInt());
+                String pathSummary = string(strings, buffer.getInt());
+                int operationCount = buffer.getInt();
+                Map<String, OperationModel> operations = new LinkedHashMap<>();
+                for (int j = 0; j < operationCount; j++) {
+                    String method = string(strings, buffer.getInt());
+                    String operationSummary = string(strings, buffer.getInt());
+                    int parameterCount = buffer.getInt();
+                    List<ParameterModel> parameters = new ArrayList<>(parameterCount);
+                    for (int k = 0; k < parameterCount; k++) {
+                        parameters.add(new ParameterModel(
+                                string(strings, buffer.getInt()),
+                                string(strings, buffer.getInt()),
+                                string(strings, buffer.getInt()),
+                                buffer.get() != 0,
+                                string(strings, buffer.getInt())));
+                    }
+                    RequestBodyModel requestBody = null;
+                    if (buffer.get() != 0) {
+                        int mediaTypeCount = buffer.getInt();
+                        List<String> mediaTypes = new ArrayList<>(mediaTypeCount);
+                        for (int k = 0; k < mediaTypeCount; k++) {
+                            mediaTypes.add(string(strings, buffer.getInt()));
+                        }
+                        int partCount = buffer.getInt();
+                        List<PartModel> parts = new ArrayList<>(partCount);
+                        for (int k = 0; k < partCount; k++) {
+                            parts.add(new PartModel(
+                                    string(strings, buffer.getInt()),
+                                    string(strings, buffer.getInt()),
+                                    buffer.get() != 0,
+                                    buffer.get() != 0,
+                                    buffer.get() != 0));
+                        }
+                        requestBody = new RequestBodyModel(List.copyOf(mediaTypes), List.copyOf(parts));
+                    }
+                    operations.put(method, new OperationModel(method, operationSummary, List.copyOf(parameters), requestBody));
+                }
+                paths.put(path, new PathModel(path, pathSummary, ImmutableMap.copyOf(operations)));
+            }
+
+            return Optional.of(new ApiModel(version, summary, Collections.unmodifiableList(servers), ImmutableMap.copyOf(paths)));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+            return Optional.empty(); // Broken snapshot.
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String string = StandardCharsets.UTF_8.decode(buffer.slice(buffer.position(), length)).toString();
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    private static String string(String[] strings, int index) {
+        return index < 0 ? null : strings[index];
+    }
+
+    private static final class StringTable {
+        private final Map<String, Integer> indices = new LinkedHashMap<>();
+
+        int index(String string) {
+            if (string == null) {
+                return -1;
+            }
+            return indices.computeIfAbsent(string, (_string) -> indices.size());
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(indices.size());
+            for (String string : indices.keySet()) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.nopware.librestcli;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP transport shared by {@link RestCli} objects.
+ * <p>
+ *     Transport owns one {@link HttpClient}, so connections are kept alive and HTTP/2 streams are multiplexed across executions.
+ *     Creating a transport is heavy. Create it once and pass it to {@link RestCli.Builder#transport(Transport)}, or use {@link #shared()}.
+ * <p>
+ *     Transport is thread-safe. Close it when it is no longer used. {@link #shared()} is never closed.
+ */
+@Slf4j
+public final class Transport implements AutoCloseable {
+    /**
+     * Statistics of the transport.
+     * <p>
+     *     {@link HttpClient} does not expose its connection pool, so the statistics are about requests observed by the transport.
+     *     Responses by HTTP/2 share multiplexed connections. Each origin has at least one pooled connection.
+     *
+     * @param requests       Number of sent requests.
+     * @param failures       Number of requests failed without response.
+     * @param inFlight       Number of requests waiting for response headers now.
+     * @param peakInFlight   Maximum of {@code inFlight}.
+     * @param http2Responses Number of responses by HTTP/2.
+     * @param http11Responses Number of responses by HTTP/1.1.
+     * @param origins        Number of distinct origins (scheme, host and port) the transport has connected to.
+     */
+    public record Statistics(long requests, long failures, int inFlight, int peakInFlight,
+                             long http2Responses, long http11Responses, int origins) {
+    }
+
+    public static class Builder {
+        Duration connectTimeout = Duration.ofSeconds(10);
+        HttpClient.Version version = HttpClient.Version.HTTP_2;
+        Executor executor;
+
+        public Builder connectTimeout(@NonNull Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder version(@NonNull HttpClient.Version version) {
+            this.version = version;
+            return this;
+        }
+
+        /**
+         * Executor for asynchronous tasks of {@link HttpClient}. If not specified, the default executor of {@link HttpClient} is used.
+         */
+        public Builder executor(@NonNull Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Transport build() {
+            return new Transport(buildHttpClient(), false);
+        }
+
+        private HttpClient buildHttpClient() {
+            HttpClient.Builder httpClientBuilder = HttpClient.newBuilder()
+                    .version(version) // Each request will attempt to upgrade to HTTP/2. If the upgrade fails, then the response will be handled using HTTP/1.1
+                    .proxy(ProxySelector.getDefault()) // Use the system-wide proxy settings.
+                    .connectTimeout(connectTimeout);
+            if (executor != null) {
+                httpClientBuilder.executor(executor);
+            }
+            return httpClientBuilder.build();
+        }
+    }
+
+    private static final class SharedHolder {
+        private static final Transport SHARED = new Transport(new Builder().buildHttpClient(), true);
+    }
+
+    private final HttpClient httpClient;
+    private final boolean shared;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder http2Responses = new LongAdder();
+    private final LongAdder http11Responses = new LongAdder();
+    private final Set<String> origins = ConcurrentHashMap.newKeySet();
+
+    private Transport(HttpClient httpClient, boolean shared) {
+        this.httpClient = httpClient;
+        this.shared = shared;
+    }
+
+    /**
+     * Transport shared in the JVM. It is used when no transport is specified.
+     *
+     * @return Shared transport.
+     */
+    public static Transport shared() {
+        return SharedHolder.SHARED;
+    }
+
+    /**
+     * Send the request and wait for the response headers.
+     */
+    public <T> HttpResponse<T> send(@NonNull HttpRequest request, @NonNull HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        begin(request);
+        try {
+            HttpResponse<T> response = httpClient.send(request, bodyHandler);
+            completed(response);
+            return response;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            failures.increment();
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Send the request asynchronously.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(@NonNull HttpRequest request, @NonNull HttpResponse.BodyHandler<T> bodyHandler) {
+        begin(request);
+        return httpClient.sendAsync(request, bodyHandler)
+                .whenComplete((response, throwable) -> {
+                    inFlight.decrementAndGet();
+                    if (throwable != null) {
+                        failures.increment();
+                    } else {
+                        completed(response);
+                    }
+                });
+    }
+
+    public Statistics statistics() {
+        return new Statistics(requests.sum(), failures.sum(), inFlight.get(), peakInFlight.get(),
+                http2Responses.sum(), http11Responses.sum(), origins.size());
+    }
+
+    /**
+     * Close the underlying {@link HttpClient}. It waits for the requests in flight.
+     * <p>
+     *     Closing {@link #shared()} does nothing.
+     */
+    @Override
+    public void close() {
+        if (shared) {
+            log.debug("The shared transport is never closed.");
+            return;
+        }
+        httpClient.close();
+    }
+
+    private void begin(HttpRequest request) {
+        requests.increment();
+        int current = inFlight.incrementAndGet();
+        peakInFlight.accumulateAndGet(current, Math::max);
+        origins.add(String.format("%s://%s:%d", request.uri().getScheme(), request.uri().getHost(), request.uri().getPort()));
+    }
+
+    private void completed(HttpResponse<?> response) {
+        switch (response.version()) {
+            case HTTP_2 -> http2Responses.increment();
+            case HTTP_1_1 -> http11Responses.increment();
+        }
+    }
+}
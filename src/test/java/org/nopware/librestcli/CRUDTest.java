@@ -1,5 +1,8 @@
 package org.nopware.librestcli;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -8,15 +11,35 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.nopware.librestcli.kvs.Kvs;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @Slf4j
 /**
@@ -28,6 +51,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 public class CRUDTest {
     private static Kvs kvs;
     private static RestCli.RestCliSpec restCliSpec;
+    private static String apiDocs;
 
     @BeforeAll
     public static void beforeAll() {
@@ -53,7 +77,7 @@ public class CRUDTest {
                 }
             }
 
-            String apiDocs = response.body();
+            apiDocs = response.body();
             log.info("API docs: {}", apiDocs);
             restCliSpec = RestCli.createRestCliSpec("kvscli", apiDocs);
 
@@ -124,4 +148,569 @@ public class CRUDTest {
         actualValue = Files.readString(updatedValueFile);
         assertThat(actualValue).isEqualTo(updatedValue);
     }
+
+    @Test
+    public void testTransportIsReusedAcrossExecutions() {
+        try (Transport transport = new Transport.Builder().build()) {
+            RestCli restCli = new RestCli.Builder(restCliSpec)
+                    .transport(transport)
+                    .build();
+
+            for (int i = 0; i < 3; i++) {
+                assertThat(restCli.execute("--assert-http-status-code=200", "/", "get")).isZero();
+            }
+
+            Transport.Statistics statistics = transport.statistics();
+            assertThat(statistics.requests()).isEqualTo(3);
+            assertThat(statistics.failures()).isZero();
+            assertThat(statistics.inFlight()).isZero();
+            assertThat(statistics.origins()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void testBatch(@TempDir Path tempDir) throws IOException {
+        Path batchFile = tempDir.resolve("batch.ndjson");
+        Path resultFile = tempDir.resolve("result.ndjson");
+        Files.write(batchFile, List.of(
+                "{\"id\": \"a\", \"path\": \"/{key}\", \"method\": \"put\", \"parameters\": {\"key\": 0}, \"body\": \"foo\"}",
+                "{\"id\": \"b\", \"path\": \"/{key}\", \"method\": \"put\", \"parameters\": {\"key\": 1}, \"body\": \"bar\"}",
+                "",
+                "{\"id\": \"c\", \"path\": \"/{key}\", \"method\": \"put\", \"parameters\": {\"key\": 2}, \"body\": \"baz\", \"outputFile\": \"" + tempDir.resolve("c.txt") + "\"}"));
+
+        int exit = RestCli.execute(restCliSpec, "--batch=" + batchFile, "--batch-parallelism=2", "--output-file=" + resultFile);
+        assertThat(exit).isZero();
+
+        Map<String, JsonNode> results = readResults(resultFile);
+        assertThat(results).containsOnlyKeys("a", "b", "c");
+        assertThat(results.get("a").get("status").asInt()).isEqualTo(201);
+        assertThat(results.get("a").get("body").asText()).isEqualTo("foo");
+        assertThat(results.get("b").get("line").asInt()).isEqualTo(2);
+        assertThat(results.get("c").get("outputFile").asText()).isEqualTo(tempDir.resolve("c.txt").toString());
+        assertThat(tempDir.resolve("c.txt")).hasContent("baz");
+    }
+
+    @Test
+    public void testBatchWithFailures(@TempDir Path tempDir) throws IOException {
+        Path batchFile = tempDir.resolve("batch.ndjson");
+        Path resultFile = tempDir.resolve("result.ndjson");
+        Files.write(batchFile, List.of(
+                "{\"id\": \"missing\", \"path\": \"/{key}\", \"method\": \"get\", \"parameters\": {\"key\": 42}}",
+                "{\"id\": \"no-parameter\", \"path\": \"/{key}\", \"method\": \"get\"}",
+                "not json",
+                "{\"id\": \"ok\", \"path\": \"/\", \"method\": \"get\"}"));
+
+        int exit = RestCli.execute(restCliSpec, "--batch=" + batchFile, "--output-file=" + resultFile);
+        assertThat(exit).isEqualTo(1);
+
+        List<String> lines = Files.readAllLines(resultFile);
+        assertThat(lines).hasSize(4);
+
+        Map<String, JsonNode> results = readResults(resultFile);
+        assertThat(results.get("missing").get("status").asInt()).isEqualTo(404);
+        assertThat(results.get("no-parameter").has("error")).isTrue();
+        assertThat(results.get("ok").get("status").asInt()).isEqualTo(200);
+    }
+
+    @Test
+    public void testExecuteAsync() throws Exception {
+        List<CompletableFuture<RestCli.Response>> puts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            puts.add(RestCli.executeAsync(restCliSpec, new RestCli.Authorization.None(), "--request-body=value" + i, "/{key}", "put", "--key=" + i));
+        }
+        for (CompletableFuture<RestCli.Response> put : puts) {
+            try (RestCli.Response response = put.get(10, TimeUnit.SECONDS)) {
+                assertThat(response.statusCode()).isEqualTo(201);
+                assertThat(response.timings().response()).isPositive();
+            }
+        }
+
+        try (RestCli.Response response = RestCli.executeAsync(restCliSpec, new RestCli.Authorization.None(), "/{key}", "get", "--key=2").get(10, TimeUnit.SECONDS)) {
+            assertThat(response.statusCode()).isEqualTo(200);
+            assertThat(new String(response.body().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("value2");
+        }
+    }
+
+    @Test
+    public void testExecuteAsyncWithInvalidArguments() {
+        CompletableFuture<RestCli.Response> future = RestCli.executeAsync(restCliSpec, new RestCli.Authorization.None(), "/{key}", "get");
+        assertThat(future).isCompletedExceptionally();
+    }
+
+    @Test
+    public void testPaginate(@TempDir Path tempDir) throws IOException {
+        for (int i = 0; i < 10; i++) {
+            assertThat(RestCli.execute(restCliSpec, "--request-body=value" + i, "/{key}", "put", "--key=" + i)).isZero();
+        }
+        List<String> expected = List.of("\"0\"", "\"1\"", "\"2\"", "\"3\"", "\"4\"", "\"5\"", "\"6\"", "\"7\"", "\"8\"", "\"9\"");
+
+        // Pages 2 to 4 are known by the link "last" and fetched concurrently.
+        Path outputFile = tempDir.resolve("keys.ndjson");
+        int exit = RestCli.execute(restCliSpec, "--paginate", "--paginate-parallelism=2", "--output-file=" + outputFile, "/", "get", "--per_page=3");
+        assertThat(exit).isZero();
+        assertThat(Files.readAllLines(outputFile)).containsExactlyElementsOf(expected);
+
+        // The last page is the first page.
+        Path singlePageFile = tempDir.resolve("single.ndjson");
+        exit = RestCli.execute(restCliSpec, "--paginate", "--output-file=" + singlePageFile, "/", "get", "--per_page=20");
+        assertThat(exit).isZero();
+        assertThat(Files.readAllLines(singlePageFile)).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    public void testFanOut(@TempDir Path tempDir) throws IOException {
+        for (int i = 0; i < 5; i++) {
+            assertThat(RestCli.execute(restCliSpec, "--request-body=value" + i, "/{key}", "put", "--key=" + i)).isZero();
+        }
+
+        // Bodies in the order of the values.
+        Path keysFile = tempDir.resolve("keys.txt");
+        Files.write(keysFile, List.of("4", "0", "", "3", "1", "2"));
+        Path ordered = tempDir.resolve("ordered.txt");
+        int exit = RestCli.execute(restCliSpec, "--fan-out=key=@" + keysFile, "--fan-out-parallelism=2", "--output-file=" + ordered, "/{key}", "get");
+        assertThat(exit).isZero();
+        assertThat(Files.readAllLines(ordered)).containsExactly("value4", "value0", "value3", "value1", "value2");
+
+        // NDJSON tagged with the values. A missing key fails.
+        Path completed = tempDir.resolve("completed.ndjson");
+        exit = RestCli.execute(restCliSpec, "--fan-out", "key=1,42,2", "--fan-out-order=completion", "--output-file=" + completed, "/{key}", "get");
+        assertThat(exit).isEqualTo(1);
+        Map<String, JsonNode> lines = new HashMap<>();
+        for (String line : Files.readAllLines(completed)) {
+            JsonNode node = new ObjectMapper().readTree(line);
+            lines.put(node.get("value").asText(), node);
+        }
+        assertThat(lines).containsOnlyKeys("1", "42", "2");
+        assertThat(lines.get("1").get("status").asInt()).isEqualTo(200);
+        assertThat(lines.get("1").get("body").asText()).isEqualTo("value1");
+        assertThat(lines.get("42").get("status").asInt()).isEqualTo(404);
+        assertThat(lines.get("2").get("index").asInt()).isEqualTo(2);
+
+        // Invalid values are rejected before any request.
+        assertThat(RestCli.execute(restCliSpec, "--fan-out=key=a,b", "/{key}", "get")).isNotZero();
+        assertThat(RestCli.execute(restCliSpec, "--fan-out=key=", "/{key}", "get")).isEqualTo(2);
+    }
+
+    @Test
+    public void testLoadTest(@TempDir Path tempDir) throws IOException {
+        assertThat(RestCli.execute(restCliSpec, "--request-body=foo", "/{key}", "put", "--key=0")).isZero();
+
+        Path closedReport = tempDir.resolve("closed.json");
+        int exit = RestCli.execute(restCliSpec, "--load-test", "--load-test-requests=50", "--load-test-concurrency=4", "--output-file=" + closedReport, "/{key}", "get", "--key=0");
+        assertThat(exit).isZero();
+        JsonNode closed = new ObjectMapper().readTree(closedReport.toFile());
+        assertThat(closed.get("model").asText()).isEqualTo("closed");
+        assertThat(closed.get("requests").asLong()).isEqualTo(50);
+        assertThat(closed.get("statusCodes").get("200").asLong()).isEqualTo(50);
+        assertThat(closed.get("responseBytes").asLong()).isPositive();
+        JsonNode latency = closed.get("latencyMillis");
+        assertThat(latency.get("p50").asDouble()).isPositive().isLessThanOrEqualTo(latency.get("p99").asDouble());
+        assertThat(latency.get("p99.9").asDouble()).isLessThanOrEqualTo(latency.get("max").asDouble());
+
+        // Fixed arrival rate. Missing keys are errors.
+        Path openReport = tempDir.resolve("open.json");
+        exit = RestCli.execute(restCliSpec, "--load-test", "--load-test-requests=20", "--load-test-rate=200", "--output-file=" + openReport, "/{key}", "get", "--key=42");
+        assertThat(exit).isEqualTo(1);
+        JsonNode open = new ObjectMapper().readTree(openReport.toFile());
+        assertThat(open.get("model").asText()).isEqualTo("open");
+        assertThat(open.get("statusCodes").get("404").asLong()).isEqualTo(20);
+        assertThat(open.get("elapsedMillis").asLong()).isGreaterThanOrEqualTo(19 * 1000 / 200);
+        assertThat(open.get("latencyMillis").get("max").asDouble()).isGreaterThanOrEqualTo(open.get("serviceTimeMillis").get("max").asDouble());
+    }
+
+    @Test
+    public void testParseLinks() {
+        URI base = URI.create("https://api.github.com/repositories/1/issues?page=1");
+        Map<String, URI> links = Paginator.parseLinks(
+                "<https://api.github.com/repositories/1/issues?page=2>; rel=\"next\", </repositories/1/issues?page=5>; rel=\"last\"", base);
+        assertThat(links).containsEntry("next", URI.create("https://api.github.com/repositories/1/issues?page=2"));
+        assertThat(links).containsEntry("last", URI.create("https://api.github.com/repositories/1/issues?page=5"));
+
+        Paginator.PageRange pageRange = Paginator.PageRange.of(links.get("next"), links.get("last"));
+        assertThat(pageRange).isNotNull();
+        assertThat(pageRange.first()).isEqualTo(2);
+        assertThat(pageRange.last()).isEqualTo(5);
+        assertThat(pageRange.uri(3)).isEqualTo(URI.create("https://api.github.com/repositories/1/issues?page=3"));
+
+        assertThat(Paginator.PageRange.of(URI.create("https://example.com/items?cursor=abc"), URI.create("https://example.com/items?cursor=xyz"))).isNull();
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        RestCli restCli = new RestCli.Builder(restCliSpec)
+                .metricsListener(metricsRegistry)
+                .build();
+
+        assertThat(restCli.execute("--request-body=foo", "/{key}", "put", "--key=0")).isZero();
+        assertThat(restCli.execute("--request-body=bar", "/{key}", "put", "--key=0")).isZero();
+        assertThat(restCli.execute("--assert-http-status-code=404", "/{key}", "get", "--key=1")).isZero();
+        try (RestCli.Response response = restCli.executeAsync("/{key}", "get", "--key=0").get(10, TimeUnit.SECONDS)) {
+            assertThat(response.body().readAllBytes()).hasSize(3);
+        }
+
+        MetricsRegistry.OperationSnapshot put = metricsRegistry.snapshot("/{key}", "put").orElseThrow();
+        assertThat(put.count()).isEqualTo(2);
+        assertThat(put.statusCodes()).containsEntry(201, 1L).containsEntry(200, 1L);
+        assertThat(put.requestBytes()).isEqualTo(6);
+        assertThat(put.responseBytes()).isEqualTo(6);
+        assertThat(put.maxLatency()).isPositive();
+
+        MetricsRegistry.OperationSnapshot get = metricsRegistry.snapshot("/{key}", "get").orElseThrow();
+        assertThat(get.count()).isEqualTo(2);
+        assertThat(get.statusCodes()).containsEntry(404, 1L).containsEntry(200, 1L);
+
+        StringWriter json = new StringWriter();
+        metricsRegistry.writeJson(json);
+        JsonNode operations = new ObjectMapper().readTree(json.toString());
+        assertThat(operations).hasSize(2);
+        assertThat(operations.get(1).get("method").asText()).isEqualTo("put");
+        assertThat(operations.get(1).get("statusCodes").get("201").asLong()).isEqualTo(1);
+    }
+
+    @Test
+    public void testHttpCache(@TempDir Path tempDir) throws IOException {
+        assertThat(RestCli.execute(restCliSpec, "--request-body=foo", "/{key}", "put", "--key=0")).isZero();
+
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        RestCli restCli = new RestCli.Builder(restCliSpec)
+                .httpCache(HttpCache.of(tempDir.resolve("cache"), 1024 * 1024))
+                .metricsListener(metricsRegistry)
+                .build();
+
+        // ETag and no-cache: revalidated by If-None-Match, then served from the cache.
+        for (int i = 0; i < 3; i++) {
+            Path outputFile = tempDir.resolve("value" + i + ".txt");
+            assertThat(restCli.execute("--output-file=" + outputFile, "--assert-http-status-code=200", "/{key}", "get", "--key=0")).isZero();
+            assertThat(outputFile).hasContent("foo");
+        }
+        assertThat(metricsRegistry.snapshot("/{key}", "get").orElseThrow().statusCodes())
+                .containsEntry(200, 1L)
+                .containsEntry(304, 2L);
+
+        // Updated value is not served from the cache.
+        assertThat(RestCli.execute(restCliSpec, "--request-body=bar", "/{key}", "put", "--key=0")).isZero();
+        Path updatedFile = tempDir.resolve("updated.txt");
+        assertThat(restCli.execute("--output-file=" + updatedFile, "/{key}", "get", "--key=0")).isZero();
+        assertThat(updatedFile).hasContent("bar");
+
+        // max-age: served from the cache without request.
+        for (int i = 0; i < 2; i++) {
+            Path outputFile = tempDir.resolve("keys" + i + ".json");
+            assertThat(restCli.execute("--output-file=" + outputFile, "/", "get")).isZero();
+            assertThat(outputFile).hasContent("[\"0\"]");
+        }
+        assertThat(metricsRegistry.snapshot("/", "get").orElseThrow().count()).isEqualTo(1);
+
+        // --no-cache bypasses the cache.
+        assertThat(restCli.execute("--no-cache", "--output-file=" + tempDir.resolve("keys.json"), "/", "get")).isZero();
+        assertThat(metricsRegistry.snapshot("/", "get").orElseThrow().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void testAppenders(@TempDir Path tempDir) throws IOException {
+        assertThat(RestCli.execute(restCliSpec, "--request-body=foo", "/{key}", "put", "--key=0")).isZero();
+        assertThat(RestCli.execute(restCliSpec, "--request-body=bar", "/{key}", "put", "--key=1")).isZero();
+
+        RestCli restCli = new RestCli.Builder(restCliSpec)
+                .optionAppender(new RestCli.OptionAppender(RestCli.PathMatcher.string("/{key}"), Set.of("get"), (options) -> options.add("--key=0")))
+                .headerAppender(new RestCli.HeaderAppender(RestCli.PathMatcher.glob("/*"), Set.of("get", "put"), (headers) -> headers.put("X-Appended", "yes")))
+                .build();
+
+        Path appendedFile = tempDir.resolve("appended.txt");
+        assertThat(restCli.execute("--output-file=" + appendedFile, "/{key}", "get")).isZero();
+        assertThat(appendedFile).hasContent("foo");
+
+        // Options given by the user override the appended options.
+        Path overriddenFile = tempDir.resolve("overridden.txt");
+        assertThat(restCli.execute("--output-file=" + overriddenFile, "/{key}", "get", "--key=1")).isZero();
+        assertThat(overriddenFile).hasContent("bar");
+        Path separateFile = tempDir.resolve("separate.txt");
+        assertThat(restCli.execute("--output-file=" + separateFile, "/{key}", "get", "--key", "1")).isZero();
+        assertThat(separateFile).hasContent("bar");
+
+        assertThat(restCli.prepareRequest(new String[]{"/{key}", "get"}, null).httpRequest().headers().allValues("X-Appended"))
+                .containsExactly("yes");
+        assertThat(restCli.prepareRequest(new String[]{"--request-body=baz", "/", "post"}, null).httpRequest().headers().allValues("X-Appended"))
+                .isEmpty();
+    }
+
+    @Test
+    public void testDownloadIsAtomic(@TempDir Path tempDir) throws IOException {
+        assertThat(RestCli.execute(restCliSpec, "--request-body=foo", "/{key}", "put", "--key=0")).isZero();
+
+        Path outputFile = tempDir.resolve("value.txt");
+        assertThat(RestCli.execute(restCliSpec, "--output-file=" + outputFile, "/{key}", "get", "--key=0")).isZero();
+        assertThat(outputFile).hasContent("foo");
+        assertThat(tempDir.resolve("value.txt.part")).doesNotExist();
+
+        // The existing file is not overwritten.
+        assertThat(RestCli.execute(restCliSpec, "--output-file=" + outputFile, "/{key}", "get", "--key=0")).isEqualTo(1);
+        assertThat(outputFile).hasContent("foo");
+    }
+
+    @Test
+    public void testResumeDownload(@TempDir Path tempDir) throws IOException {
+        assertThat(RestCli.execute(restCliSpec, "--request-body=0123456789", "/{key}", "put", "--key=0")).isZero();
+        Path firstFile = tempDir.resolve("first.txt");
+        assertThat(RestCli.execute(restCliSpec, "--output-file=" + firstFile, "/{key}", "get", "--key=0")).isZero();
+        String etag = String.format("\"%08x\"", "0123456789".hashCode());
+
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        RestCli restCli = new RestCli.Builder(restCliSpec)
+                .metricsListener(metricsRegistry)
+                .build();
+
+        // Broken download of the same version: the rest is downloaded by a range request.
+        Path resumedFile = tempDir.resolve("resumed.txt");
+        Files.writeString(tempDir.resolve("resumed.txt.part"), "0123");
+        Files.writeString(tempDir.resolve("resumed.txt.part.meta"), "http://localhost:18080/0\n" + etag + "\n");
+        assertThat(restCli.execute("--output-file=" + resumedFile, "/{key}", "get", "--key=0")).isZero();
+        assertThat(resumedFile).hasContent("0123456789");
+        assertThat(tempDir.resolve("resumed.txt.part")).doesNotExist();
+        assertThat(tempDir.resolve("resumed.txt.part.meta")).doesNotExist();
+
+        // Broken download of an old version: the whole body is downloaded.
+        Path changedFile = tempDir.resolve("changed.txt");
+        Files.writeString(tempDir.resolve("changed.txt.part"), "abcd");
+        Files.writeString(tempDir.resolve("changed.txt.part.meta"), "http://localhost:18080/0\n\"old\"\n");
+        assertThat(restCli.execute("--output-file=" + changedFile, "/{key}", "get", "--key=0")).isZero();
+        assertThat(changedFile).hasContent("0123456789");
+
+        // Complete part file: the range is not satisfiable, so the whole body is downloaded again.
+        Path completeFile = tempDir.resolve("complete.txt");
+        Files.writeString(tempDir.resolve("complete.txt.part"), "0123456789");
+        Files.writeString(tempDir.resolve("complete.txt.part.meta"), "http://localhost:18080/0\n" + etag + "\n");
+        assertThat(restCli.execute("--output-file=" + completeFile, "/{key}", "get", "--key=0")).isZero();
+        assertThat(completeFile).hasContent("0123456789");
+
+        assertThat(metricsRegistry.snapshot("/{key}", "get").orElseThrow().statusCodes())
+                .containsEntry(206, 1L)
+                .containsEntry(200, 2L)
+                .containsEntry(416, 1L);
+    }
+
+    @Test
+    public void testMultipartUpload(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("hello \"world\".txt");
+        Files.writeString(file, "Hello, world!");
+
+        Path outputFile = tempDir.resolve("received.json");
+        assertThat(RestCli.execute(restCliSpec, "--output-file=" + outputFile, "/{key}/attachment", "post", "--key=0",
+                "--file=" + file, "--comment=greeting")).isZero();
+        JsonNode received = new ObjectMapper().readTree(outputFile.toFile());
+        assertThat(received.get("filename").asText()).isEqualTo("hello %22world%22.txt");
+        assertThat(received.get("size").asLong()).isEqualTo(13);
+        assertThat(received.get("comment").asText()).isEqualTo("greeting");
+        assertThat(received.get("expect").isNull()).isTrue(); // Small body.
+
+        Path valueFile = tempDir.resolve("value.txt");
+        assertThat(RestCli.execute(restCliSpec, "--output-file=" + valueFile, "/{key}", "get", "--key=0")).isZero();
+        assertThat(valueFile).hasContent("Hello, world!");
+
+        // Required part is missing.
+        assertThat(RestCli.execute(restCliSpec, "/{key}/attachment", "post", "--key=0", "--comment=greeting")).isEqualTo(2);
+        // Parts cannot be used with the request body options.
+        assertThat(RestCli.execute(restCliSpec, "--request-body=foo", "/{key}/attachment", "post", "--key=0", "--file=" + file)).isEqualTo(2);
+    }
+
+    @Test
+    public void testLargeUploadExpectsContinue(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("large.bin");
+        byte[] bytes = new byte[3 * 1024 * 1024];
+        Arrays.fill(bytes, (byte) 'a');
+        Files.write(file, bytes);
+
+        Path outputFile = tempDir.resolve("received.json");
+        assertThat(RestCli.execute(restCliSpec, "--input-file=" + file, "--output-file=" + outputFile, "/{key}/blob", "put", "--key=0")).isZero();
+        JsonNode received = new ObjectMapper().readTree(outputFile.toFile());
+        assertThat(received.get("size").asLong()).isEqualTo(bytes.length);
+        assertThat(received.get("contentType").asText()).isEqualTo("application/octet-stream");
+        assertThat(received.get("expect").asText()).isEqualToIgnoringCase("100-continue");
+    }
+
+    @Test
+    public void testCompressedResponse(@TempDir Path tempDir) throws Exception {
+        // The listing is compressed. A value is not, because Tomcat does not compress responses with a strong ETag.
+        for (int key = 0; key < 1000; key++) {
+            assertThat(RestCli.execute(restCliSpec, "--request-body=" + key, "/{key}", "put", "--key=" + key)).isZero();
+        }
+
+        // No codec: not compressed.
+        MetricsRegistry uncompressedMetricsRegistry = new MetricsRegistry();
+        RestCli uncompressedRestCli = new RestCli.Builder(restCliSpec)
+                .metricsListener(uncompressedMetricsRegistry)
+                .contentCodecs()
+                .build();
+        Path uncompressedFile = tempDir.resolve("uncompressed.json");
+        assertThat(uncompressedRestCli.execute("--output-file=" + uncompressedFile, "/", "get")).isZero();
+        String keys = Files.readString(uncompressedFile);
+        assertThat(uncompressedMetricsRegistry.snapshot("/", "get").orElseThrow().responseBytes()).isEqualTo(keys.length());
+
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        RestCli restCli = new RestCli.Builder(restCliSpec)
+                .metricsListener(metricsRegistry)
+                .build();
+
+        Path outputFile = tempDir.resolve("keys.json");
+        assertThat(restCli.execute("--output-file=" + outputFile, "/", "get")).isZero();
+        assertThat(outputFile).hasContent(keys);
+        assertThat(metricsRegistry.snapshot("/", "get").orElseThrow().responseBytes()).isLessThan(keys.length() / 2);
+
+        try (RestCli.Response response = restCli.executeAsync("/", "get").get(10, TimeUnit.SECONDS)) {
+            assertThat(response.headers().firstValue("Content-Encoding")).isEmpty();
+            assertThat(new String(response.body().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(keys);
+        }
+    }
+
+    @Test
+    public void testCompressRequestBody(@TempDir Path tempDir) throws IOException {
+        String value = "All work and no play makes Jack a dull boy. ".repeat(1000);
+        Path inputFile = tempDir.resolve("value.txt");
+        Files.writeString(inputFile, value);
+
+        Path outputFile = tempDir.resolve("received.json");
+        assertThat(RestCli.execute(restCliSpec, "--input-file=" + inputFile, "--compress-request-body", "--output-file=" + outputFile, "/{key}/blob", "put", "--key=0")).isZero();
+        JsonNode received = new ObjectMapper().readTree(outputFile.toFile());
+        assertThat(received.get("contentEncoding").asText()).isEqualTo("gzip");
+        assertThat(received.get("size").asLong()).isEqualTo(value.length());
+        assertThat(received.get("receivedBytes").asLong()).isLessThan(value.length() / 10);
+
+        Path valueFile = tempDir.resolve("stored.txt");
+        assertThat(RestCli.execute(restCliSpec, "--output-file=" + valueFile, "/{key}", "get", "--key=0")).isZero();
+        assertThat(valueFile).hasContent(value);
+
+        assertThat(RestCli.execute(restCliSpec, "--input-file=" + inputFile, "--compress-request-body=br", "/{key}/blob", "put", "--key=0")).isEqualTo(2);
+    }
+
+    @Test
+    public void testSelect(@TempDir Path tempDir) throws IOException {
+        for (int key = 0; key < 3; key++) {
+            assertThat(RestCli.execute(restCliSpec, "--request-body=" + key, "/{key}", "put", "--key=" + key)).isZero();
+        }
+
+        Path keysFile = tempDir.resolve("keys.ndjson");
+        assertThat(RestCli.execute(restCliSpec, "--select=$[*]", "--output-file=" + keysFile, "/", "get")).isZero();
+        assertThat(Files.readAllLines(keysFile)).containsExactly("\"0\"", "\"1\"", "\"2\"");
+
+        Path sizeFile = tempDir.resolve("size.ndjson");
+        assertThat(RestCli.execute(restCliSpec, "--request-body=value", "--select=/size", "--output-file=" + sizeFile, "/{key}/blob", "put", "--key=0")).isZero();
+        assertThat(sizeFile).hasContent("5");
+
+        // Not JSON, but not selected because of the status code.
+        Path notFoundFile = tempDir.resolve("not-found.txt");
+        assertThat(RestCli.execute(restCliSpec, "--select=$.size", "--output-file=" + notFoundFile, "--assert-http-status-code=404", "/{key}", "get", "--key=100")).isZero();
+
+        assertThat(RestCli.execute(restCliSpec, "--select=size", "/", "get")).isEqualTo(2);
+    }
+
+    @Test
+    public void testDaemon(@TempDir Path tempDir) throws Exception {
+        Path specFile = tempDir.resolve("kvs.json");
+        Files.writeString(specFile, apiDocs);
+        Path socket = tempDir.resolve("daemon").resolve("kvscli.sock");
+        Path workingDirectory = Files.createDirectory(tempDir.resolve("work"));
+
+        try (RestCliDaemon daemon = new RestCliDaemon.Builder(socket).command("kvscli", specFile).build().start()) {
+            assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(socket.getParent()))).isEqualTo("rwx------");
+
+            ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+            ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+            InputStream stdin = new ByteArrayInputStream("from stdin".getBytes(StandardCharsets.UTF_8));
+            assertThat(RestCliDaemon.forward(socket, "kvscli", workingDirectory, stdin, stdout, stderr, "--stdin", "/{key}", "put", "--key=0")).isZero();
+
+            // Relative to the working directory of the launcher.
+            assertThat(RestCliDaemon.forward(socket, "kvscli", workingDirectory, InputStream.nullInputStream(), stdout, stderr, "--output-file=value.txt", "/{key}", "get", "--key=0")).isZero();
+            assertThat(workingDirectory.resolve("value.txt")).hasContent("from stdin");
+
+            stdout.reset();
+            assertThat(RestCliDaemon.forward(socket, "kvscli", workingDirectory, InputStream.nullInputStream(), stdout, stderr, "/{key}", "get", "--key=0")).isZero();
+            assertThat(stdout.toString(StandardCharsets.UTF_8)).isEqualTo("from stdin");
+
+            assertThat(RestCliDaemon.forward(socket, "kvscli", workingDirectory, InputStream.nullInputStream(), stdout, stderr, "--assert-http-status-code=200", "/{key}", "get", "--key=100")).isEqualTo(1);
+            assertThat(RestCliDaemon.forward(socket, "kvscli", workingDirectory, InputStream.nullInputStream(), stdout, stderr, "/no-such-path", "get")).isEqualTo(2);
+            assertThat(RestCliDaemon.forward(socket, "unknown", workingDirectory, InputStream.nullInputStream(), stdout, stderr, "--help")).isEqualTo(1);
+
+            // A changed specification is reloaded.
+            ObjectMapper objectMapper = new ObjectMapper();
+            ObjectNode spec = (ObjectNode) objectMapper.readTree(apiDocs);
+            ((ObjectNode) spec.get("paths")).remove("/{key}/blob");
+            assertThat(RestCliDaemon.forward(socket, "kvscli", workingDirectory, InputStream.nullInputStream(), stdout, stderr, "--request-body=blob", "/{key}/blob", "put", "--key=0")).isZero();
+            Files.writeString(specFile, objectMapper.writeValueAsString(spec));
+            assertThat(RestCliDaemon.forward(socket, "kvscli", workingDirectory, InputStream.nullInputStream(), stdout, stderr, "--request-body=blob", "/{key}/blob", "put", "--key=0")).isEqualTo(2);
+
+            // Another daemon cannot listen on the same socket.
+            assertThatThrownBy(() -> new RestCliDaemon.Builder(socket).build().start()).isInstanceOf(IOException.class);
+        }
+        assertThat(socket).doesNotExist();
+        assertThatThrownBy(() -> RestCliDaemon.forward(socket, "kvscli", "--help")).isInstanceOf(IOException.class);
+
+        // The socket is not bound in a directory which other users can access.
+        Path shared = Files.createDirectory(tempDir.resolve("shared"));
+        Files.setPosixFilePermissions(shared, PosixFilePermissions.fromString("rwxr-xr-x"));
+        assertThatThrownBy(() -> new RestCliDaemon.Builder(shared.resolve("kvscli.sock")).build().start()).isInstanceOf(IOException.class);
+        assertThat(shared.resolve("kvscli.sock")).doesNotExist();
+    }
+
+    @Test
+    public void testDaemonConcurrentSessions(@TempDir Path tempDir) throws Exception {
+        int keys = 16;
+        for (int i = 0; i < keys; i++) {
+            assertThat(RestCli.execute(restCliSpec, "--request-body=value" + i, "/{key}", "put", "--key=" + i)).isZero();
+        }
+        Path specFile = tempDir.resolve("kvs.json");
+        Files.writeString(specFile, apiDocs);
+        Path socket = tempDir.resolve("kvscli.sock");
+        Path workingDirectory = Files.createDirectory(tempDir.resolve("work"));
+
+        // Sessions share the RestCli of the command. Each session must send the values of its own arguments.
+        try (RestCliDaemon daemon = new RestCliDaemon.Builder(socket).command("kvscli", specFile).build().start();
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Integer>> exitCodes = new ArrayList<>();
+            for (int round = 0; round < 4; round++) {
+                for (int i = 0; i < keys; i++) {
+                    String outputFile = String.format("value%d-%d.txt", round, i);
+                    String key = "--key=" + i;
+                    exitCodes.add(executor.submit(() -> RestCliDaemon.forward(socket, "kvscli", workingDirectory, InputStream.nullInputStream(),
+                            OutputStream.nullOutputStream(), OutputStream.nullOutputStream(), "--output-file=" + outputFile, "--assert-http-status-code=200", "/{key}", "get", key)));
+                }
+            }
+            for (Future<Integer> exitCode : exitCodes) {
+                assertThat(exitCode.get()).isZero();
+            }
+        }
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < keys; i++) {
+                assertThat(workingDirectory.resolve(String.format("value%d-%d.txt", round, i))).hasContent("value" + i);
+            }
+        }
+    }
+
+    @Test
+    public void testDaemonShutsDownWhenIdle(@TempDir Path tempDir) throws Exception {
+        Path specFile = tempDir.resolve("kvs.json");
+        Files.writeString(specFile, apiDocs);
+        Path socket = tempDir.resolve("kvscli.sock");
+
+        RestCliDaemon daemon = new RestCliDaemon.Builder(socket)
+                .command("kvscli", specFile)
+                .idleTimeout(Duration.ofMillis(500))
+                .build()
+                .start();
+        assertThat(RestCliDaemon.forward(socket, "kvscli", tempDir, InputStream.nullInputStream(), OutputStream.nullOutputStream(), OutputStream.nullOutputStream(), "/", "get")).isZero();
+        assertThat(daemon.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(socket).doesNotExist();
+    }
+
+    private static Map<String, JsonNode> readResults(Path resultFile) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, JsonNode> results = new HashMap<>();
+        for (String line : Files.readAllLines(resultFile)) {
+            JsonNode result = objectMapper.readTree(line);
+            if (result.has("id")) {
+                results.put(result.get("id").asText(), result);
+            }
+        }
+        return results;
+    }
 }
@@ -6,8 +6,11 @@ import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class GlobTest {
     @Test
@@ -23,4 +26,39 @@ public class GlobTest {
         PathMatcher pathMatcher3 = FileSystems.getDefault().getPathMatcher("glob:/repos/*/issues");
         assertThat(pathMatcher3.matches(path)).isFalse();
     }
+
+    @Test
+    public void testGlobPathMatcher() {
+        String path = "/repos/{owner}/{repo}/issues";
+
+        assertThat(RestCli.PathMatcher.glob("/repos/**").matches(path)).isTrue();
+        assertThat(RestCli.PathMatcher.glob("/repos/**").matches("/repos")).isFalse();
+        assertThat(RestCli.PathMatcher.glob("/repos/*/*/issues").matches(path)).isTrue();
+        assertThat(RestCli.PathMatcher.glob("/repos/*/issues").matches(path)).isFalse();
+        assertThat(RestCli.PathMatcher.glob("/repos/*/*/{issues,pulls}").matches(path)).isTrue();
+        assertThat(RestCli.PathMatcher.glob("/repos/*/*/{pulls,commits}").matches(path)).isFalse();
+        assertThat(RestCli.PathMatcher.glob("/repos/?owner?/*/issue[!x]").matches(path)).isTrue();
+        assertThat(RestCli.PathMatcher.glob("/repos/\\{owner}/*/issues").matches(path)).isTrue();
+    }
+
+    @Test
+    public void testGlobToRegexAgreesWithFileSystem() {
+        List<String> globs = List.of("/repos/**", "/repos/*/*/issues", "/repos/*/issues", "/repos/{owner}/*/{issues,pulls}",
+                "/repos/*/*/issue?", "/repos/*/*/[a-j]ssues", "/repos/*/*/[!a-j]ssues", "/**/issues", "/*");
+        List<String> paths = List.of("/repos/{owner}/{repo}/issues", "/repos/{owner}/issues", "/repos", "/user", "/repos/{owner}/{repo}/pulls");
+
+        for (String glob : globs) {
+            PathMatcher expected = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            RestCli.PathMatcher actual = RestCli.PathMatcher.glob(glob);
+            for (String path : paths) {
+                assertThat(actual.matches(path)).as("%s matches %s", glob, path).isEqualTo(expected.matches(Paths.get(path)));
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidGlob() {
+        assertThatThrownBy(() -> PathMatchers.globToRegex("/repos/[abc")).isInstanceOf(PatternSyntaxException.class);
+        assertThatThrownBy(() -> PathMatchers.globToRegex("/repos/{a,{b}}")).isInstanceOf(PatternSyntaxException.class);
+    }
 }
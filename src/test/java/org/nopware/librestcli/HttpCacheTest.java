@@ -0,0 +1,153 @@
+package org.nopware.librestcli;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HttpCacheTest {
+    @Test
+    public void testEvictLeastRecentlyUsed(@TempDir Path tempDir) throws IOException {
+        HttpCache httpCache = HttpCache.of(tempDir, 250);
+        Instant now = Instant.now();
+        for (int i = 0; i < 4; i++) {
+            Path entry = tempDir.resolve(i + ".entry");
+            Files.write(entry, new byte[100]);
+            Files.setLastModifiedTime(entry, FileTime.from(now.minusSeconds(60 - i)));
+        }
+        Files.setLastModifiedTime(tempDir.resolve("0.entry"), FileTime.from(now)); // Recently used.
+
+        httpCache.evict();
+
+        assertThat(tempDir.resolve("0.entry")).exists();
+        assertThat(tempDir.resolve("1.entry")).doesNotExist();
+        assertThat(tempDir.resolve("2.entry")).doesNotExist();
+        assertThat(tempDir.resolve("3.entry")).exists();
+    }
+
+    @Test
+    public void testFreshness() {
+        Instant storedAt = Instant.parse("2024-01-01T00:00:00Z");
+
+        HttpCache.Entry maxAge = entry(storedAt, Map.of("Cache-Control", List.of("private, max-age=60")));
+        assertThat(maxAge.isFresh(storedAt.plusSeconds(59))).isTrue();
+        assertThat(maxAge.isFresh(storedAt.plusSeconds(60))).isFalse();
+
+        HttpCache.Entry aged = entry(storedAt, Map.of("Cache-Control", List.of("max-age=60"), "Age", List.of("30")));
+        assertThat(aged.isFresh(storedAt.plusSeconds(29))).isTrue();
+        assertThat(aged.isFresh(storedAt.plusSeconds(30))).isFalse();
+
+        HttpCache.Entry noCache = entry(storedAt, Map.of("Cache-Control", List.of("no-cache, max-age=60")));
+        assertThat(noCache.isFresh(storedAt)).isFalse();
+
+        HttpCache.Entry etagOnly = entry(storedAt, Map.of("ETag", List.of("\"abc\"")));
+        assertThat(etagOnly.isFresh(storedAt)).isFalse();
+    }
+
+    @Test
+    public void testNotModifiedRefreshesEntry(@TempDir Path tempDir) throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/items", exchange -> {
+            try (exchange) {
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                if (requests.incrementAndGet() == 1) {
+                    byte[] body = "[1]".getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().add("Cache-Control", "max-age=0");
+                    exchange.sendResponseHeaders(200, body.length);
+                    exchange.getResponseBody().write(body);
+                } else {
+                    exchange.getResponseHeaders().add("Cache-Control", "max-age=3600");
+                    exchange.sendResponseHeaders(304, -1);
+                }
+            }
+        });
+        server.start();
+
+        try {
+            String spec = """
+                    {"openapi": "3.0.0", "info": {"title": "API", "version": "1.0.0"}, "servers": [{"url": "http://localhost:%d"}], "paths": {
+                      "/items": {"get": {}}
+                    }}""".formatted(server.getAddress().getPort());
+            RestCli restCli = new RestCli.Builder(RestCli.createRestCliSpec("api", spec))
+                    .httpCache(HttpCache.of(tempDir.resolve("cache"), 1024 * 1024))
+                    .commandLineErr(new PrintWriter(new StringWriter()))
+                    .build();
+
+            // Stored, revalidated with the new max-age, then served from the cache without request.
+            for (int i = 0; i < 3; i++) {
+                Path outputFile = tempDir.resolve("items" + i + ".json");
+                assertThat(restCli.execute("--output-file=" + outputFile, "/items", "get")).isZero();
+                assertThat(outputFile).hasContent("[1]");
+            }
+        } finally {
+            server.stop(0);
+        }
+        assertThat(requests.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testEncodedBodyIsStoredWhenDecodedToTheEnd(@TempDir Path tempDir) throws IOException, InterruptedException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(encoded)) {
+            out.write("[1, 2, 3]".getBytes(StandardCharsets.UTF_8));
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/items", exchange -> {
+            try (exchange) {
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                exchange.getResponseHeaders().add("Cache-Control", "max-age=3600");
+                exchange.sendResponseHeaders(200, encoded.size());
+                exchange.getResponseBody().write(encoded.toByteArray());
+            }
+        });
+        server.start();
+
+        try {
+            HttpCache httpCache = HttpCache.of(tempDir, 1024 * 1024);
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:%d/items".formatted(server.getAddress().getPort()))).build();
+            HttpResponse<byte[]> response = Transport.shared().send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+            // The end of the body has not arrived yet, so the decoder stops after the gzip trailer without reading it.
+            InputStream body = new ByteArrayInputStream(response.body()) {
+                @Override
+                public synchronized int available() {
+                    return 0;
+                }
+            };
+            try (InputStream decoded = new Compression(List.of(ContentCodec.GZIP)).decode(response.headers(), httpCache.store(request, response, body))) {
+                assertThat(decoded).hasContent("[1, 2, 3]");
+            }
+            assertThat(httpCache.lookup(request)).isPresent();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static HttpCache.Entry entry(Instant storedAt, Map<String, List<String>> headers) {
+        return new HttpCache.Entry(Path.of("unused"), 200, HttpHeaders.of(headers, (name, value) -> true), storedAt);
+    }
+}
@@ -0,0 +1,84 @@
+package org.nopware.librestcli;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JsonSelectorTest {
+    private static final String JSON = """
+            {"total": 2, "items": [{"name": "a", "tags": ["x", "y"]}, {"name": "b", "tags": []}], "a/b": {"~": 1}}
+            """;
+
+    private static String select(String selector, String json) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonSelector.parse(selector).select(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), output, false);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testJsonPointer() throws IOException {
+        assertThat(select("/total", JSON)).isEqualTo("2\n");
+        assertThat(select("/items/1/name", JSON)).isEqualTo("\"b\"\n");
+        assertThat(select("/items/0/tags", JSON)).isEqualTo("[\"x\",\"y\"]\n");
+        assertThat(select("/a~1b/~0", JSON)).isEqualTo("1\n");
+        assertThat(select("/missing", JSON)).isEmpty();
+        assertThat(select("", "[1, 2]")).isEqualTo("[1,2]\n");
+    }
+
+    @Test
+    public void testJsonPath() throws IOException {
+        assertThat(select("$.items[*].name", JSON)).isEqualTo("\"a\"\n\"b\"\n");
+        assertThat(select("$.items[0].tags[*]", JSON)).isEqualTo("\"x\"\n\"y\"\n");
+        assertThat(select("$['a/b']", JSON)).isEqualTo("{\"~\":1}\n");
+        assertThat(select("$.items.*.tags", JSON)).isEqualTo("[\"x\",\"y\"]\n[]\n");
+        assertThat(select("$[*]", "[1, {\"k\": null}]")).isEqualTo("1\n{\"k\":null}\n");
+    }
+
+    @Test
+    public void testSequenceOfValues() throws IOException {
+        assertThat(select("$.id", "{\"id\": 1}\n{\"id\": 2}\n{\"other\": 3}\n")).isEqualTo("1\n2\n");
+    }
+
+    @Test
+    public void testInvalidSelector() {
+        assertThatThrownBy(() -> JsonSelector.parse("items")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> JsonSelector.parse("$..name")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> JsonSelector.parse("$[?(@.a)]")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testValuesArePrintedWhileReading() throws Exception {
+        PipedOutputStream body = new PipedOutputStream();
+        InputStream received = new PipedInputStream(body);
+        PipedOutputStream output = new PipedOutputStream();
+        InputStream printed = new PipedInputStream(output);
+
+        CompletableFuture<Long> selected = CompletableFuture.supplyAsync(() -> {
+            try (output) {
+                return JsonSelector.parse("$[*].id").select(received, output, true);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        body.write("[{\"id\": 1}, ".getBytes(StandardCharsets.UTF_8));
+        body.flush();
+        assertThat(new String(printed.readNBytes(2), StandardCharsets.UTF_8)).isEqualTo("1\n"); // Before the body ends.
+
+        body.write("{\"id\": 2}]".getBytes(StandardCharsets.UTF_8));
+        body.close();
+        assertThat(new String(printed.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("2\n");
+        assertThat(selected.get(10, TimeUnit.SECONDS)).isEqualTo(2);
+    }
+}
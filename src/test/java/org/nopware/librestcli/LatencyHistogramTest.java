@@ -0,0 +1,58 @@
+package org.nopware.librestcli;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testBucketsAreContiguous() {
+        for (long value = 0; value < 100_000; value++) {
+            int index = LatencyHistogram.index(value);
+            assertThat(LatencyHistogram.upperBound(index)).isGreaterThanOrEqualTo(value);
+            if (index > 0) {
+                assertThat(LatencyHistogram.upperBound(index - 1)).isLessThan(value);
+            }
+        }
+        assertThat(LatencyHistogram.index(Long.MAX_VALUE)).isLessThan(64 << 3);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long millis = 1; millis <= 100; millis++) {
+            histogram.record(millis * 1_000_000);
+        }
+
+        assertThat(histogram.count()).isEqualTo(100);
+        assertThat(histogram.max()).isEqualTo(100_000_000);
+        assertThat(histogram.mean()).isEqualTo(50_500_000);
+        // Relative error is at most 1/8.
+        assertThat(histogram.percentile(50)).isBetween(50_000_000L, 50_000_000L * 9 / 8);
+        assertThat(histogram.percentile(99)).isBetween(99_000_000L, 100_000_000L);
+        assertThat(histogram.percentile(100)).isEqualTo(100_000_000);
+    }
+
+    @Test
+    public void testPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram(7);
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1_000);
+        }
+
+        // Relative error is at most 1/128.
+        assertThat(histogram.percentile(50)).isBetween(500_000L, 500_000L * 129 / 128);
+        assertThat(histogram.percentile(99.9)).isBetween(999_000L, 1_000_000L);
+        for (long value = 0; value < 100_000; value++) {
+            int index = LatencyHistogram.index(value, 7);
+            assertThat(LatencyHistogram.upperBound(index, 7)).isGreaterThanOrEqualTo(value);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.percentile(99)).isZero();
+        assertThat(histogram.mean()).isZero();
+    }
+}
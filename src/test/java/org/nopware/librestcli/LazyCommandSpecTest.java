@@ -0,0 +1,113 @@
+package org.nopware.librestcli;
+
+import com.google.common.io.Resources;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for {@link RestCli.RestCliSpec.Builder#lazy(boolean)}.
+ */
+@Slf4j
+public class LazyCommandSpecTest {
+    /*
+     * Let's use the GitHub Enterprise Server API as an example.
+     */
+    private static final String GHES_API_SPEC;
+    private static final RestCli.RestCliSpec EAGER_REST_CLI_SPEC;
+    private static final RestCli.RestCliSpec LAZY_REST_CLI_SPEC;
+
+    static {
+        try {
+            GHES_API_SPEC = Resources.toString(Resources.getResource("ghes-3.3.yaml"), StandardCharsets.UTF_8);
+            EAGER_REST_CLI_SPEC = new RestCli.RestCliSpec.Builder("ghes", GHES_API_SPEC).build();
+            LAZY_REST_CLI_SPEC = new RestCli.RestCliSpec.Builder("ghes", GHES_API_SPEC).lazy(true).build();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void testHelpIsSameAsEager() {
+        assertThat(run(LAZY_REST_CLI_SPEC, "--help")).isEqualTo(run(EAGER_REST_CLI_SPEC, "--help"));
+        assertThat(run(LAZY_REST_CLI_SPEC, "/repos/{owner}/{repo}/issues", "--help"))
+                .isEqualTo(run(EAGER_REST_CLI_SPEC, "/repos/{owner}/{repo}/issues", "--help"));
+        assertThat(run(LAZY_REST_CLI_SPEC, "/repos/{owner}/{repo}/issues", "get", "--help"))
+                .isEqualTo(run(EAGER_REST_CLI_SPEC, "/repos/{owner}/{repo}/issues", "get", "--help"));
+    }
+
+    @Test
+    public void testMissingPathParameterIsDetected() {
+        int exit = RestCli.execute(LAZY_REST_CLI_SPEC, "/repos/{owner}/{repo}/issues", "get", "--owner=naoshi-higuchi");
+        assertThat(exit).isNotZero();
+    }
+
+    @Test
+    public void testBashAutoCompletionScriptIsSameAsEager(@TempDir Path tempDir) throws IOException {
+        // Use another lazy spec because the auto-completion materializes all paths.
+        RestCli.RestCliSpec lazyRestCliSpec = new RestCli.RestCliSpec.Builder("ghes", GHES_API_SPEC).lazy(true).build();
+
+        Path lazyScript = tempDir.resolve("lazy.sh");
+        Path eagerScript = tempDir.resolve("eager.sh");
+        assertThat(RestCli.execute(lazyRestCliSpec, "--generate-bash-auto-completion-script=" + lazyScript)).isZero();
+        assertThat(RestCli.execute(EAGER_REST_CLI_SPEC, "--generate-bash-auto-completion-script=" + eagerScript)).isZero();
+
+        assertThat(Files.readString(lazyScript)).isEqualTo(Files.readString(eagerScript));
+    }
+
+    @Test
+    public void testParallelBuildIsSameAsSequential(@TempDir Path tempDir) throws IOException {
+        RestCli.RestCliSpec sequentialRestCliSpec = new RestCli.RestCliSpec.Builder("ghes", GHES_API_SPEC).parallel(false).build();
+
+        assertThat(run(EAGER_REST_CLI_SPEC, "--help")).isEqualTo(run(sequentialRestCliSpec, "--help"));
+
+        Path parallelScript = tempDir.resolve("parallel.sh");
+        Path sequentialScript = tempDir.resolve("sequential.sh");
+        assertThat(RestCli.execute(EAGER_REST_CLI_SPEC, "--generate-bash-auto-completion-script=" + parallelScript)).isZero();
+        assertThat(RestCli.execute(sequentialRestCliSpec, "--generate-bash-auto-completion-script=" + sequentialScript)).isZero();
+
+        assertThat(Files.readString(parallelScript)).isEqualTo(Files.readString(sequentialScript));
+    }
+
+    /**
+     * Measure the time and the allocation to create {@link RestCli.RestCliSpec} eagerly and lazily.
+     * The specification is loaded from {@link SpecCache}, so parsing it is not measured.
+     */
+    @Test
+    public void measureLazyCreateRestCliSpec(@TempDir Path cacheDir) {
+        SpecCache specCache = SpecCache.of(cacheDir);
+        new RestCli.RestCliSpec.Builder("ghes", GHES_API_SPEC).specCache(specCache).lazy(true).build();
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        for (boolean lazy : new boolean[]{false, true, false, true}) {
+            long allocatedBegin = threadMXBean.getThreadAllocatedBytes(threadId);
+            long begin = System.currentTimeMillis();
+            // Sequential, so the allocation is counted on this thread.
+            RestCli.RestCliSpec restCliSpec = new RestCli.RestCliSpec.Builder("ghes", GHES_API_SPEC).specCache(specCache).lazy(lazy).parallel(false).build();
+            long end = System.currentTimeMillis();
+            long allocatedEnd = threadMXBean.getThreadAllocatedBytes(threadId);
+
+            System.out.printf("Creating %s RestCliSpec took %d ms and allocated %d KiB.%n",
+                    lazy ? "lazy" : "eager", end - begin, (allocatedEnd - allocatedBegin) / 1024);
+            assertThat(restCliSpec).isEqualTo(LAZY_REST_CLI_SPEC);
+        }
+    }
+
+    private static String run(RestCli.RestCliSpec restCliSpec, String... args) {
+        StringWriter out = new StringWriter();
+        RestCli.execute(restCliSpec, new RestCli.Authorization.None(), new PrintWriter(out), new PrintWriter(new StringWriter()), args);
+        return out.toString();
+    }
+}
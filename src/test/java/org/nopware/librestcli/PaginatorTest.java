@@ -0,0 +1,76 @@
+package org.nopware.librestcli;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PaginatorTest {
+    @Test
+    public void testCredentialsAreNotSentToAnotherOrigin(@TempDir Path tempDir) throws IOException {
+        List<Headers> otherOriginHeaders = new CopyOnWriteArrayList<>();
+        HttpServer other = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        other.createContext("/items", exchange -> {
+            try (exchange) {
+                otherOriginHeaders.add(exchange.getRequestHeaders());
+                byte[] body = "[2]".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        other.start();
+
+        List<Headers> firstOriginHeaders = new CopyOnWriteArrayList<>();
+        HttpServer first = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        first.createContext("/items", exchange -> {
+            try (exchange) {
+                firstOriginHeaders.add(exchange.getRequestHeaders());
+                // Same host, but another port is another origin.
+                exchange.getResponseHeaders().add("Link", "<http://localhost:%d/items?page=2>; rel=\"next\"".formatted(other.getAddress().getPort()));
+                byte[] body = "[1]".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        first.start();
+
+        try {
+            String spec = """
+                    {"openapi": "3.0.0", "info": {"title": "API", "version": "1.0.0"}, "servers": [{"url": "http://localhost:%d"}], "paths": {
+                      "/items": {"get": {}}
+                    }}""".formatted(first.getAddress().getPort());
+            RestCli restCli = new RestCli.Builder(RestCli.createRestCliSpec("api", spec))
+                    .authorization(new RestCli.Authorization.AuthorizationHeader("Bearer secret"))
+                    .headerAppender(new RestCli.HeaderAppender(RestCli.PathMatcher.string("/items"), Set.of("get"), (headers) -> headers.put("X-Api-Key", "secret")))
+                    .build();
+
+            Path outputFile = tempDir.resolve("items.ndjson");
+            assertThat(restCli.execute("--paginate", "--output-file=" + outputFile, "/items", "get")).isZero();
+            assertThat(Files.readAllLines(outputFile)).containsExactly("1", "2");
+        } finally {
+            first.stop(0);
+            other.stop(0);
+        }
+
+        assertThat(firstOriginHeaders).singleElement().satisfies(headers -> {
+            assertThat(headers.getFirst("Authorization")).isEqualTo("Bearer secret");
+            assertThat(headers.getFirst("X-Api-Key")).isEqualTo("secret");
+        });
+        assertThat(otherOriginHeaders).singleElement().satisfies(headers -> {
+            assertThat(headers.containsKey("Authorization")).isFalse();
+            assertThat(headers.containsKey("X-Api-Key")).isFalse();
+            assertThat(headers.getFirst("User-Agent")).isEqualTo("api/1.0.0");
+        });
+    }
+}
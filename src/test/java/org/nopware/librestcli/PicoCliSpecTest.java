@@ -88,7 +88,7 @@ public class PicoCliSpecTest {
     public void testIfCommandSpecIsImmutable() {
         RestCli.RestCliSpec restCliSpec = RestCli.createRestCliSpec("librestcli", GITHUB_API_SPEC);
 
-        long hash = restCliSpec.hashCode(); // Objects.hash(commandSpec, openAPI);
+        long hash = restCliSpec.hashCode(); // Objects.hash(commandSpec.name(), fingerprint);
 
         int get = RestCli.execute(restCliSpec, "/repos/{owner}/{repo}/issues", "get", "--owner=naoshi-higuchi", "--repo=flist");
         assertThat(get).isZero();
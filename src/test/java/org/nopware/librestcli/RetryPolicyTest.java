@@ -0,0 +1,122 @@
+package org.nopware.librestcli;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetryPolicyTest {
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    @Test
+    public void testRetryDelay() {
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .backoff(Duration.ofSeconds(1), 2, Duration.ofSeconds(10))
+                .maxWait(Duration.ofMinutes(1))
+                .build();
+
+        assertThat(policy.retryDelay(429, headers(Map.of("Retry-After", "7")), 0, NOW)).contains(Duration.ofSeconds(7));
+        String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(NOW.plusSeconds(30).atOffset(ZoneOffset.UTC));
+        assertThat(policy.retryDelay(503, headers(Map.of("Retry-After", date)), 0, NOW)).contains(Duration.ofSeconds(30));
+        assertThat(policy.retryDelay(403, headers(Map.of("X-RateLimit-Remaining", "0", "X-RateLimit-Reset", String.valueOf(NOW.getEpochSecond() + 20))), 0, NOW))
+                .contains(Duration.ofSeconds(20));
+
+        // The server asks to wait longer than the max wait.
+        assertThat(policy.retryDelay(429, headers(Map.of("Retry-After", "3600")), 0, NOW)).isEmpty();
+        // Not retryable.
+        assertThat(policy.retryDelay(403, headers(Map.of()), 0, NOW)).isEmpty();
+        assertThat(policy.retryDelay(404, headers(Map.of()), 0, NOW)).isEmpty();
+        assertThat(policy.retryDelay(501, headers(Map.of()), 0, NOW)).isEmpty();
+        // No more retries.
+        assertThat(policy.retryDelay(503, headers(Map.of()), 3, NOW)).isEmpty();
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Duration backoff = policy.retryDelay(502, headers(Map.of()), attempt, NOW).orElseThrow();
+            long full = Math.min(1000L << attempt, 10_000);
+            assertThat(backoff.toMillis()).isBetween(full / 2, full);
+        }
+    }
+
+    @Test
+    public void testMethods() {
+        RetryPolicy policy = new RetryPolicy.Builder().build();
+        assertThat(policy.retries("GET")).isTrue();
+        assertThat(policy.retries("POST")).isFalse();
+        assertThat(policy.needsIdempotencyKey("POST")).isFalse();
+
+        RetryPolicy withPost = new RetryPolicy.Builder().methods("get", "post").build();
+        assertThat(withPost.retries("POST")).isTrue();
+        assertThat(withPost.needsIdempotencyKey("POST")).isTrue();
+        assertThat(withPost.needsIdempotencyKey("GET")).isFalse();
+
+        assertThat(RetryPolicy.NONE.retries("GET")).isFalse();
+    }
+
+    @Test
+    public void testPostFromStdinIsRetried() throws IOException {
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> bodies = new CopyOnWriteArrayList<>();
+        List<String> idempotencyKeys = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/items", exchange -> {
+            try (exchange) {
+                bodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+                idempotencyKeys.add(exchange.getRequestHeaders().getFirst("Idempotency-Key"));
+                if (attempts.incrementAndGet() < 3) {
+                    exchange.getResponseHeaders().add("Retry-After", "0");
+                    exchange.sendResponseHeaders(503, -1);
+                } else {
+                    byte[] body = "created".getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(201, body.length);
+                    exchange.getResponseBody().write(body);
+                }
+            }
+        });
+        server.start();
+
+        InputStream originalIn = System.in;
+        try {
+            String spec = """
+                    {"openapi": "3.0.0", "info": {"title": "API", "version": "1.0.0"}, "servers": [{"url": "http://localhost:%d"}], "paths": {
+                      "/items": {"post": {"requestBody": {"content": {"application/json": {"schema": {"type": "object"}}}}}}
+                    }}""".formatted(server.getAddress().getPort());
+            RestCli restCli = new RestCli.Builder(RestCli.createRestCliSpec("api", spec))
+                    .retryPolicy(new RetryPolicy.Builder().methods("post").build())
+                    .commandLineErr(new PrintWriter(new StringWriter()))
+                    .build();
+
+            System.setIn(new ByteArrayInputStream("{\"name\": \"a\"}".getBytes(StandardCharsets.UTF_8)));
+            assertThat(restCli.execute("--stdin", "--assert-http-status-code=201", "/items", "post")).isZero();
+        } finally {
+            System.setIn(originalIn);
+            server.stop(0);
+        }
+
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(bodies).containsOnly("{\"name\": \"a\"}");
+        assertThat(idempotencyKeys).doesNotContainNull();
+        assertThat(idempotencyKeys).containsOnly(idempotencyKeys.get(0));
+    }
+
+    private static HttpHeaders headers(Map<String, String> headers) {
+        return HttpHeaders.of(headers.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> List.of(entry.getValue()))), (name, value) -> true);
+    }
+}
@@ -0,0 +1,219 @@
+package org.nopware.librestcli;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServerSelectorTest {
+    private HttpServer server;
+    private int deadPort;
+    private final AtomicInteger probes = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        try (ServerSocket dead = new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            deadPort = dead.getLocalPort();
+        } // Connections to the closed port are refused.
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                if (exchange.getRequestMethod().equals("HEAD")) {
+                    probes.incrementAndGet();
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                requests.incrementAndGet();
+                byte[] body = "{\"id\": 1}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testResolve() {
+        ApiModel.ServerModel server = new ApiModel.ServerModel("https://{region}.api.example.com/{version}/{undeclared}", Map.of("region", "us", "version", "v1"));
+        assertThat(server.resolve(Map.of())).isEqualTo("https://us.api.example.com/v1/{undeclared}");
+        assertThat(server.resolve(Map.of("region", "eu", "undeclared", "x"))).isEqualTo("https://eu.api.example.com/v1/{undeclared}");
+    }
+
+    @Test
+    public void testProbeSelectsHealthyServer(@TempDir Path dir) throws IOException {
+        Path stateFile = dir.resolve("servers.json");
+        String spec = spec("http://localhost:%d".formatted(deadPort), "http://localhost:%d".formatted(server.getAddress().getPort()));
+
+        assertThat(execute(spec, new ServerSelector.Builder().stateFile(stateFile).build())).isZero();
+        assertThat(probes.get()).isEqualTo(1);
+        assertThat(requests.get()).isEqualTo(1);
+        assertThat(Files.readString(stateFile)).contains("\"healthy\" : false", "\"healthy\" : true");
+
+        // The state file is fresh, so the next invocation does not probe.
+        assertThat(execute(spec, new ServerSelector.Builder().stateFile(stateFile).build())).isZero();
+        assertThat(probes.get()).isEqualTo(1);
+        assertThat(requests.get()).isEqualTo(2);
+    }
+
+    @Test
+    @Timeout(30)
+    public void testFailOverOnConnectError(@TempDir Path dir) throws IOException {
+        Path stateFile = dir.resolve("servers.json");
+        String deadUrl = "http://localhost:%d".formatted(deadPort);
+        String liveUrl = "http://localhost:%d".formatted(server.getAddress().getPort());
+        // A stale state of another process says the dead server is the fastest.
+        Files.writeString(stateFile, """
+                {"servers": {
+                  "%s": {"healthy": true, "latencyMillis": 1.0, "checkedAt": "%s"},
+                  "%s": {"healthy": true, "latencyMillis": 50.0, "checkedAt": "%s"}
+                }}""".formatted(deadUrl, Instant.now(), liveUrl, Instant.now()));
+
+        ServerSelector serverSelector = new ServerSelector.Builder().stateFile(stateFile).probeInterval(Duration.ofHours(1)).build();
+        assertThat(execute(spec(deadUrl, liveUrl), serverSelector)).isZero();
+        assertThat(probes.get()).isZero();
+        assertThat(requests.get()).isEqualTo(1);
+        assertThat(serverSelector.order(List.of(deadUrl, liveUrl))).containsExactly(liveUrl, deadUrl);
+        assertThat(Files.readString(stateFile)).contains("\"healthy\" : false");
+    }
+
+    @Test
+    @Timeout(30)
+    public void testResponseTimeoutMarksServerUnhealthy(@TempDir Path dir) throws IOException {
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServer hung = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        hung.createContext("/", exchange -> {
+            try (exchange) {
+                release.await(); // Accepts the connection, but does not respond.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        hung.setExecutor(Executors.newCachedThreadPool());
+        hung.start();
+        try {
+            String hungUrl = "http://localhost:%d".formatted(hung.getAddress().getPort());
+            String liveUrl = "http://localhost:%d".formatted(server.getAddress().getPort());
+            Path stateFile = dir.resolve("servers.json");
+            Files.writeString(stateFile, """
+                    {"servers": {
+                      "%s": {"healthy": true, "latencyMillis": 1.0, "checkedAt": "%s"},
+                      "%s": {"healthy": true, "latencyMillis": 50.0, "checkedAt": "%s"}
+                    }}""".formatted(hungUrl, Instant.now(), liveUrl, Instant.now()));
+
+            ServerSelector serverSelector = new ServerSelector.Builder()
+                    .stateFile(stateFile)
+                    .probeInterval(Duration.ofHours(1))
+                    .responseTimeout(Duration.ofMillis(500))
+                    .build();
+            // The request may have been processed, so it does not fail over, but the next request goes to the other server.
+            assertThat(execute(spec(hungUrl, liveUrl), serverSelector)).isNotZero();
+            assertThat(requests.get()).isZero();
+            assertThat(serverSelector.order(List.of(hungUrl, liveUrl))).containsExactly(liveUrl, hungUrl);
+        } finally {
+            release.countDown();
+            hung.stop(0);
+        }
+    }
+
+    @Test
+    @Timeout(30)
+    public void testLatencyExcludesBodyTransfer(@TempDir Path dir) throws IOException {
+        HttpServer slowBody = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        slowBody.createContext("/", exchange -> {
+            try (exchange) {
+                byte[] body = "{\"id\": 1}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                Thread.sleep(1000); // The headers arrive, but the body does not yet.
+                exchange.getResponseBody().write(body);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        slowBody.start();
+        try {
+            String url = "http://localhost:%d".formatted(slowBody.getAddress().getPort());
+            Path stateFile = dir.resolve("servers.json");
+            Files.writeString(stateFile, """
+                    {"servers": {
+                      "%s": {"healthy": true, "latencyMillis": 1.0, "checkedAt": "%s"}
+                    }}""".formatted(url, Instant.now()));
+
+            ServerSelector serverSelector = new ServerSelector.Builder().stateFile(stateFile).probeInterval(Duration.ofHours(1)).build();
+            RestCli restCli = new RestCli.Builder(RestCli.createRestCliSpec("api", spec(url)))
+                    .serverSelector(serverSelector)
+                    .commandLineErr(new PrintWriter(new StringWriter()))
+                    .build();
+            Path outputFile = dir.resolve("item.json");
+            assertThat(restCli.execute("--output-file=" + outputFile, "/items/{id}", "get", "--id=1")).isZero();
+            assertThat(outputFile).hasContent("{\"id\": 1}");
+            // A fifth of the latency of the response, if it included the transfer of the body.
+            assertThat(serverSelector.state(url).latencyNanos()).isLessThan(Duration.ofMillis(100).toNanos());
+        } finally {
+            slowBody.stop(0);
+        }
+    }
+
+    @Test
+    public void testServerVariable(@TempDir Path dir) throws IOException {
+        String spec = """
+                {"openapi": "3.0.0", "info": {"title": "API", "version": "1.0.0"},
+                 "servers": [{"url": "http://localhost:{port}", "variables": {"port": {"default": "%d"}}}],
+                 "paths": {"/items/{id}": {"get": {"parameters": [{"name": "id", "in": "path", "required": true, "schema": {"type": "integer"}}]}}}
+                }""".formatted(deadPort);
+        ServerSelector serverSelector = new ServerSelector.Builder()
+                .stateFile(dir.resolve("servers.json"))
+                .variable("port", String.valueOf(server.getAddress().getPort()))
+                .build();
+
+        assertThat(execute(spec, serverSelector)).isZero();
+        assertThat(requests.get()).isEqualTo(1);
+    }
+
+    private static String spec(String... servers) {
+        StringBuilder serverList = new StringBuilder();
+        for (String url : servers) {
+            serverList.append(serverList.isEmpty() ? "" : ", ").append("{\"url\": \"").append(url).append("\"}");
+        }
+        return """
+                {"openapi": "3.0.0", "info": {"title": "API", "version": "1.0.0"}, "servers": [%s],
+                 "paths": {"/items/{id}": {"get": {"parameters": [{"name": "id", "in": "path", "required": true, "schema": {"type": "integer"}}]}}}
+                }""".formatted(serverList);
+    }
+
+    private static int execute(String spec, ServerSelector serverSelector) {
+        RestCli restCli = new RestCli.Builder(RestCli.createRestCliSpec("api", spec))
+                .serverSelector(serverSelector)
+                .commandLineOut(new PrintWriter(new StringWriter()))
+                .commandLineErr(new PrintWriter(new StringWriter()))
+                .build();
+        return restCli.execute("/items/{id}", "get", "--id=1");
+    }
+}
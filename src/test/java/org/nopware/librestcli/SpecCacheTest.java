@@ -0,0 +1,111 @@
+package org.nopware.librestcli;
+
+import com.google.common.io.Resources;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+public class SpecCacheTest {
+    /*
+     * Let's use the GitHub Enterprise Server API as an example.
+     */
+    private static final String GHES_API_SPEC;
+
+    static {
+        try {
+            GHES_API_SPEC = Resources.toString(Resources.getResource("ghes-2.18.yaml"), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void testSnapshotIsWrittenAndReused(@TempDir Path cacheDir) throws IOException {
+        SpecCache specCache = SpecCache.of(cacheDir);
+
+        long begin = System.currentTimeMillis();
+        RestCli.RestCliSpec parsed = new RestCli.RestCliSpec.Builder("ghes", GHES_API_SPEC)
+                .specCache(specCache)
+                .build();
+        long parsedEnd = System.currentTimeMillis();
+
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            assertThat(files.count()).isEqualTo(1);
+        }
+
+        RestCli.RestCliSpec cached = new RestCli.RestCliSpec.Builder("ghes", GHES_API_SPEC)
+                .specCache(specCache)
+                .build();
+        long cachedEnd = System.currentTimeMillis();
+
+        System.out.printf("Parsing took %d ms. Loading the snapshot took %d ms.%n", parsedEnd - begin, cachedEnd - parsedEnd);
+
+        assertThat(cached).isEqualTo(parsed);
+        assertThat(cached.hashCode()).isEqualTo(parsed.hashCode());
+        assertThat(help(cached, "/repos/{owner}/{repo}/issues", "get", "--help"))
+                .isEqualTo(help(parsed, "/repos/{owner}/{repo}/issues", "get", "--help"));
+        assertThat(help(cached, "--help")).isEqualTo(help(parsed, "--help"));
+    }
+
+    @Test
+    public void testBrokenSnapshotIsIgnored(@TempDir Path cacheDir) throws IOException {
+        SpecCache specCache = SpecCache.of(cacheDir);
+        RestCli.RestCliSpec parsed = new RestCli.RestCliSpec.Builder("ghes", GHES_API_SPEC)
+                .specCache(specCache)
+                .build();
+
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            Path snapshot = files.findFirst().orElseThrow();
+            Files.write(snapshot, new byte[]{0x52, 0x43, 0x4C, 0x53, 0, 0, 0});
+        }
+
+        RestCli.RestCliSpec reparsed = new RestCli.RestCliSpec.Builder("ghes", GHES_API_SPEC)
+                .specCache(specCache)
+                .build();
+        assertThat(reparsed).isEqualTo(parsed);
+    }
+
+    @Test
+    public void testOpenApiIsReleasedUnlessKept(@TempDir Path cacheDir) {
+        SpecCache specCache = SpecCache.of(cacheDir);
+        RestCli.RestCliSpec released = new RestCli.RestCliSpec.Builder("ghes", GHES_API_SPEC)
+                .specCache(specCache)
+                .build();
+        assertThat(released.openAPI()).isEmpty();
+
+        RestCli.RestCliSpec kept = new RestCli.RestCliSpec.Builder("ghes", GHES_API_SPEC)
+                .specCache(specCache) // The snapshot is not used.
+                .keepOpenApi(true)
+                .build();
+        assertThat(kept.openAPI()).isPresent();
+        assertThat(kept.openAPI().get().getPaths()).containsKey("/repos/{owner}/{repo}/issues");
+        assertThat(kept).isEqualTo(released);
+    }
+
+    @Test
+    public void testFingerprintDependsOnContentAndName() {
+        String simpleApiSpec = "{\"openapi\": \"3.0.0\", \"info\": {\"title\": \"API\", \"version\": \"1.0.0\"}, \"paths\": {}}";
+        RestCli.RestCliSpec a = RestCli.createRestCliSpec("a", simpleApiSpec);
+
+        assertThat(RestCli.createRestCliSpec("a", simpleApiSpec)).isEqualTo(a);
+        assertThat(RestCli.createRestCliSpec("b", simpleApiSpec)).isNotEqualTo(a);
+        assertThat(RestCli.createRestCliSpec("a", simpleApiSpec.replace("1.0.0", "1.0.1"))).isNotEqualTo(a);
+    }
+
+    private static String help(RestCli.RestCliSpec restCliSpec, String... args) {
+        StringWriter out = new StringWriter();
+        RestCli.execute(restCliSpec, new RestCli.Authorization.None(), new PrintWriter(out), new PrintWriter(new StringWriter()), args);
+        return out.toString();
+    }
+}
@@ -0,0 +1,130 @@
+package org.nopware.librestcli;
+
+import com.google.common.io.Resources;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SpecRegistryTest {
+    @Test
+    public void testEqualModelsAreShared() {
+        SpecRegistry registry = new SpecRegistry.Builder().build();
+        for (String version : List.of("2.18", "2.19")) {
+            registry.register("ghes-" + version, "ghes", () -> Resources.toString(Resources.getResource("ghes-" + version + ".yaml"), StandardCharsets.UTF_8));
+        }
+
+        Map<String, RestCli.RestCliSpec> specs = registry.load(List.of("ghes-2.18", "ghes-2.19"));
+        assertThat(specs.keySet()).containsExactly("ghes-2.18", "ghes-2.19");
+
+        ApiModel.ParameterModel owner218 = owner(specs.get("ghes-2.18"));
+        ApiModel.ParameterModel owner219 = owner(specs.get("ghes-2.19"));
+        assertThat(owner219).isEqualTo(owner218);
+        assertThat(owner219).isSameAs(owner218);
+
+        assertThat(registry.get("ghes-2.18")).isSameAs(specs.get("ghes-2.18"));
+        assertThat(RestCli.execute(specs.get("ghes-2.19"), "/repos/{owner}/{repo}/issues", "get", "--help")).isZero();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        String spec = "{\"openapi\": \"3.0.0\", \"info\": {\"title\": \"API\", \"version\": \"1.0.0\"}, \"servers\": [{\"url\": \"http://localhost\"}], "
+                + "\"paths\": {\"/users/{id}\": {\"get\": {\"parameters\": [{\"name\": \"id\", \"in\": \"path\", \"required\": true, \"schema\": {\"type\": \"integer\"}}]}}}}";
+        long size = RestCli.createRestCliSpec("a", spec).estimatedSize();
+
+        SpecRegistry registry = new SpecRegistry.Builder().memoryBudget(size * 2).build();
+        for (String name : List.of("a", "b", "c")) {
+            registry.register(name, name, () -> spec);
+        }
+
+        RestCli.RestCliSpec a = registry.get("a");
+        registry.get("b");
+        assertThat(registry.get("a")).isSameAs(a);
+        registry.get("c");
+
+        assertThat(registry.loadedNames()).containsExactlyInAnyOrder("a", "c");
+        assertThat(registry.estimatedSize()).isLessThanOrEqualTo(size * 2);
+        assertThat(registry.get("b")).isEqualTo(RestCli.createRestCliSpec("b", spec)); // Loaded again.
+    }
+
+    @Test
+    public void testUnregisteredAndUnreadable() {
+        SpecRegistry registry = new SpecRegistry.Builder().build();
+        registry.register("missing", Path.of("no-such-spec.yaml"));
+
+        assertThatThrownBy(() -> registry.get("unknown")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> registry.load(List.of("missing", "unknown"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> registry.get("missing")).isInstanceOf(UncheckedIOException.class);
+        assertThat(registry.loadedNames()).isEmpty();
+    }
+
+    @Test
+    public void testSpecsAreExecutedConcurrently(@TempDir Path tempDir) throws IOException, InterruptedException, ExecutionException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/echo", exchange -> {
+            try (exchange) {
+                byte[] body = exchange.getRequestBody().readAllBytes();
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+
+        String spec = """
+                {"openapi": "3.0.0", "info": {"title": "API", "version": "1.0.0"}, "servers": [{"url": "http://localhost:%d"}], "paths": {
+                  "/echo": {"post": {"requestBody": {"content": {"text/plain": {"schema": {"type": "string"}}}}}}
+                }}""".formatted(server.getAddress().getPort());
+        SpecRegistry registry = new SpecRegistry.Builder().build();
+        for (String name : List.of("a", "b")) {
+            registry.register(name, name, () -> spec);
+        }
+
+        // The options common to all paths are shared by the specifications, so the parsed values must not be mixed.
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Integer>> exitCodes = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                for (String name : List.of("a", "b")) {
+                    String value = name + i;
+                    exitCodes.add(executor.submit(() -> RestCli.execute(registry.get(name),
+                            "--request-body=" + value, "--output-file=" + tempDir.resolve(value + ".txt"), "/echo", "post")));
+                }
+            }
+            for (Future<Integer> exitCode : exitCodes) {
+                assertThat(exitCode.get()).isZero();
+            }
+        } finally {
+            server.stop(0);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            for (String name : List.of("a", "b")) {
+                assertThat(Files.readString(tempDir.resolve(name + i + ".txt"))).isEqualTo(name + i);
+            }
+        }
+    }
+
+    private static ApiModel.ParameterModel owner(RestCli.RestCliSpec restCliSpec) {
+        return restCliSpec.apiModel().operation("/repos/{owner}/{repo}/issues", "get").orElseThrow()
+                .parameters().stream()
+                .filter(parameter -> parameter.name().equals("owner"))
+                .findFirst()
+                .orElseThrow();
+    }
+}
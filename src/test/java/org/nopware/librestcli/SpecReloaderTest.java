@@ -0,0 +1,90 @@
+package org.nopware.librestcli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpecReloaderTest {
+    private static final String SPEC = """
+            {"openapi": "3.0.0", "info": {"title": "API", "version": "1.0.0"}, "servers": [{"url": "http://localhost"}], "paths": {
+              "/a": {"get": {"summary": "Get a.", "parameters": [{"name": "x", "in": "query", "schema": {"type": "string"}}]}},
+              "/b": {
+                "get": {"summary": "Get b.", "parameters": [{"name": "y", "in": "query", "schema": {"type": "string"}}]},
+                "delete": {"summary": "Delete b."}
+              }
+            }}""";
+
+    private static final String CHANGED_SPEC = """
+            {"openapi": "3.0.0", "info": {"title": "API", "version": "1.0.0"}, "servers": [{"url": "http://localhost"}], "paths": {
+              "/a": {"get": {"summary": "Get a.", "parameters": [{"name": "x", "in": "query", "schema": {"type": "string"}}]}},
+              "/b": {
+                "get": {"summary": "Get b.", "parameters": [{"name": "y", "in": "query", "schema": {"type": "string"}}]},
+                "delete": {"summary": "Delete b.", "parameters": [{"name": "force", "in": "query", "schema": {"type": "boolean"}}]}
+              },
+              "/c": {"get": {"summary": "Get c."}}
+            }}""";
+
+    @Test
+    public void testOnlyChangedPathsAndOperationsAreRebuilt() {
+        RestCli.RestCliSpec original = RestCli.createRestCliSpec("api", SPEC);
+        SpecReloader reloader = new SpecReloader(original, restCliSpec -> new RestCli.Builder(restCliSpec).build());
+        RestCli inFlight = reloader.restCli();
+
+        assertThat(reloader.reload(SPEC)).isFalse();
+        assertThat(reloader.restCli()).isSameAs(inFlight);
+
+        assertThat(reloader.reload(CHANGED_SPEC)).isTrue();
+        RestCli.RestCliSpec reloaded = reloader.restCliSpec();
+        assertThat(reloaded).isEqualTo(RestCli.createRestCliSpec("api", CHANGED_SPEC));
+
+        CommandLine originalB = original.commandSpec().subcommands().get("/b");
+        CommandLine reloadedB = reloaded.commandSpec().subcommands().get("/b");
+        assertThat(reloaded.commandSpec().subcommands().get("/a")).isSameAs(original.commandSpec().subcommands().get("/a"));
+        assertThat(reloadedB).isNotSameAs(originalB);
+        assertThat(reloadedB.getSubcommands().get("get")).isSameAs(originalB.getSubcommands().get("get"));
+        assertThat(reloadedB.getSubcommands().get("delete")).isNotSameAs(originalB.getSubcommands().get("delete"));
+        assertThat(reloaded.commandSpec().subcommands()).containsKey("/c");
+
+        // The RestCli in flight keeps the old specification.
+        assertThat(help(inFlight, "/a", "get", "--help")).contains("--x"); // The sub-tree is shared, and attached to the reloaded root too.
+        assertThat(help(inFlight, "/b", "delete", "--help")).doesNotContain("--force");
+        assertThat(help(reloader.restCli(), "/b", "delete", "--help")).contains("--force");
+        assertThat(help(reloader.restCli(), "/b", "get", "--help")).isEqualTo(help(inFlight, "/b", "get", "--help"));
+    }
+
+    @Test
+    public void testWatchedFileIsReloaded(@TempDir Path tempDir) throws IOException, InterruptedException {
+        Path specFile = tempDir.resolve("api.json");
+        Files.writeString(specFile, SPEC, StandardCharsets.UTF_8);
+
+        try (SpecReloader reloader = new SpecReloader(RestCli.createRestCliSpec("api", SPEC), restCliSpec -> new RestCli.Builder(restCliSpec).build())) {
+            reloader.watch(specFile);
+
+            Files.writeString(specFile, "{broken", StandardCharsets.UTF_8);
+            Thread.sleep(1000);
+            assertThat(reloader.restCliSpec().commandSpec().subcommands()).doesNotContainKey("/c");
+
+            Files.writeString(specFile, CHANGED_SPEC, StandardCharsets.UTF_8);
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!reloader.restCliSpec().commandSpec().subcommands().containsKey("/c") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertThat(reloader.restCliSpec().commandSpec().subcommands()).containsKey("/c");
+        }
+    }
+
+    private static String help(RestCli restCli, String... args) {
+        StringWriter out = new StringWriter();
+        new RestCli.Builder(restCli.restCliSpec()).commandLineOut(new PrintWriter(out)).build().execute(args);
+        return out.toString();
+    }
+}
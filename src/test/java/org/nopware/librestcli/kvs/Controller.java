@@ -1,13 +1,24 @@
 package org.nopware.librestcli.kvs;
 
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 @RestController
 @RequestMapping(path = "/")
@@ -24,8 +35,12 @@ public class Controller {
         return ResponseEntity.created(URI.create(String.format("/%d", key))).body(value);
     }
 
+    /**
+     * Read the value. The response has ETag and must be revalidated, so clients can use conditional requests.
+     * A range like {@literal bytes=<first>-} is served with If-Range, so clients can resume downloads.
+     */
     @GetMapping(path = "/{key}", produces = "text/plain")
-    public String read(@PathVariable(name = "key") Integer key) {
+    public ResponseEntity<String> read(@PathVariable(name = "key") Integer key, WebRequest webRequest) {
         String value = kvs.get(key);
 
         if (value == null) {
@@ -34,14 +49,68 @@ public class Controller {
                     String.format("Key %d not found.", key));
         }
 
-        return value;
+        String etag = String.format("\"%08x\"", value.hashCode());
+        if (webRequest.checkNotModified(etag)) {
+            return null; // 304 Not Modified.
+        }
+
+        String range = webRequest.getHeader("Range");
+        String ifRange = webRequest.getHeader("If-Range");
+        if (range != null && range.matches("bytes=\\d+-") && (ifRange == null || ifRange.equals(etag))) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int first = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            if (first >= bytes.length) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header("Content-Range", String.format("bytes */%d", bytes.length))
+                        .build();
+            }
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .eTag(etag)
+                    .header("Content-Range", String.format("bytes %d-%d/%d", first, bytes.length - 1, bytes.length))
+                    .body(new String(bytes, first, bytes.length - first, StandardCharsets.UTF_8));
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .body(value);
     }
 
+    /**
+     * Read all keys. If per_page is specified, the keys are paginated with Link header like GitHub API.
+     */
     @GetMapping(path = "/", produces = "application/json")
-    public List<String> readAll() {
-        return kvs.keySet().stream()
+    public ResponseEntity<List<String>> readAll(
+            @RequestParam(name = "page", required = false) Integer page,
+            @RequestParam(name = "per_page", required = false) Integer perPage) {
+        List<String> keys = kvs.keySet().stream()
+                .sorted()
                 .map(Object::toString)
                 .toList();
+        if (perPage == null) {
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.maxAge(60, TimeUnit.SECONDS).cachePrivate())
+                    .body(keys);
+        }
+
+        int currentPage = page == null ? 1 : page;
+        int lastPage = Math.max(1, (keys.size() + perPage - 1) / perPage);
+        List<String> links = new ArrayList<>();
+        if (currentPage < lastPage) {
+            links.add(String.format("<%s>; rel=\"next\"", pageUri(currentPage + 1)));
+        }
+        links.add(String.format("<%s>; rel=\"last\"", pageUri(lastPage)));
+
+        int from = Math.min(keys.size(), (currentPage - 1) * perPage);
+        int to = Math.min(keys.size(), from + perPage);
+        return ResponseEntity.ok()
+                .header("Link", String.join(", ", links))
+                .body(keys.subList(from, to));
+    }
+
+    private static String pageUri(int page) {
+        return ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("page", page)
+                .toUriString();
     }
 
     @PutMapping(path = "/{key}", produces = "text/plain")
@@ -60,4 +129,38 @@ public class Controller {
     public void deleteAll() {
         kvs.clear();
     }
+
+    /**
+     * Store the file as the value. The response describes what the server received.
+     */
+    @PostMapping(path = "/{key}/attachment", consumes = "multipart/form-data", produces = "application/json")
+    public Map<String, Object> attach(@PathVariable(name = "key") Integer key,
+                                      @RequestPart(name = "file") MultipartFile file,
+                                      @RequestPart(name = "comment", required = false) String comment,
+                                      WebRequest webRequest) throws IOException {
+        kvs.put(key, new String(file.getBytes(), StandardCharsets.UTF_8));
+        Map<String, Object> received = new HashMap<>();
+        received.put("filename", file.getOriginalFilename());
+        received.put("size", file.getSize());
+        received.put("comment", comment);
+        received.put("expect", webRequest.getHeader("Expect"));
+        return received;
+    }
+
+    /**
+     * Store the raw body as the value. A body compressed by gzip is decoded. The response describes what the server received.
+     */
+    @PutMapping(path = "/{key}/blob", consumes = "application/octet-stream", produces = "application/json")
+    public Map<String, Object> putBlob(@PathVariable(name = "key") Integer key, @RequestBody byte[] body, WebRequest webRequest) throws IOException {
+        String contentEncoding = webRequest.getHeader("Content-Encoding");
+        byte[] decoded = "gzip".equals(contentEncoding) ? new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes() : body;
+        kvs.put(key, new String(decoded, StandardCharsets.UTF_8));
+        Map<String, Object> received = new HashMap<>();
+        received.put("size", decoded.length);
+        received.put("receivedBytes", body.length);
+        received.put("contentEncoding", contentEncoding);
+        received.put("contentType", webRequest.getHeader("Content-Type"));
+        received.put("expect", webRequest.getHeader("Expect"));
+        return received;
+    }
 }
@@ -15,7 +15,8 @@ public class Kvs {
 
     public static Kvs start(int port) {
         String portOption = String.format("--server.port=%d", port);
-        ConfigurableApplicationContext ctx = SpringApplication.run(Kvs.class, portOption);
+        // Responses larger than 2 KiB are compressed if the client accepts it.
+        ConfigurableApplicationContext ctx = SpringApplication.run(Kvs.class, portOption, "--server.compression.enabled=true");
         ctx.registerShutdownHook();
         Kvs kvs = ctx.getBean(Kvs.class);
         kvs.atomicContext.set(ctx);